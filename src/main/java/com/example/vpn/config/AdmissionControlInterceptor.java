@@ -0,0 +1,54 @@
+package com.example.vpn.config;
+
+import com.example.vpn.service.AdmissionControlService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+
+/**
+ * Быстрый отказ на GET / до контроллера: без gRPC, QR кода и шаблона
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdmissionControlInterceptor implements HandlerInterceptor {
+    
+    private static final byte[] RATE_LIMITED_BODY = "Слишком много запросов, попробуйте позже"
+        .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OVERLOADED_BODY = "Сервер перегружен, попробуйте позже"
+        .getBytes(StandardCharsets.UTF_8);
+    
+    private final AdmissionControlService admissionControlService;
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        Principal principal = request.getUserPrincipal();
+        String key = principal != null ? principal.getName() : request.getRemoteAddr();
+        
+        AdmissionControlService.Decision decision = admissionControlService.tryAdmit(key);
+        if (decision == AdmissionControlService.Decision.ADMIT) {
+            return true;
+        }
+        
+        boolean rateLimited = decision == AdmissionControlService.Decision.RATE_LIMITED;
+        byte[] body = rateLimited ? RATE_LIMITED_BODY : OVERLOADED_BODY;
+        
+        response.setStatus(rateLimited ? HttpStatus.TOO_MANY_REQUESTS.value() : HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, rateLimited ? "10" : "5");
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        
+        log.debug("Запрос {} отклонён: {}", key, decision);
+        return false;
+    }
+}
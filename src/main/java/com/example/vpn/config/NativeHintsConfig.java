@@ -0,0 +1,71 @@
+package com.example.vpn.config;
+
+import com.example.vpn.model.XrayConfig;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Reachability metadata для Spring AOT и GraalVM native image
+ * Используется только при сборке с -Pnative / -Paot, на обычный запуск не влияет
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.VpnRuntimeHints.class)
+public class NativeHintsConfig {
+    
+    static class VpnRuntimeHints implements RuntimeHintsRegistrar {
+        
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            // Gson читает XrayConfig через рефлексию по полям (запись - XrayConfigTypeAdapterFactory)
+            for (Class<?> type : XrayConfig.class.getDeclaredClasses()) {
+                registerForGson(hints, type);
+            }
+            registerForGson(hints, XrayConfig.class);
+            
+            // Protobuf классы Xray API: FieldAccessorTable ищет get/set/has методы через рефлексию
+            registerProtobuf(hints, classLoader);
+            
+            // ZXing + ImageIO для PNG
+            hints.reflection().registerType(QRCodeWriter.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+            hints.reflection().registerType(MatrixToImageWriter.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+            hints.reflection().registerType(TypeReference.of("com.sun.imageio.plugins.png.PNGImageWriterSpi"),
+                MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+        
+        private void registerForGson(RuntimeHints hints, Class<?> type) {
+            hints.reflection().registerType(type,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                MemberCategory.ACCESS_DECLARED_FIELDS);
+        }
+        
+        private void registerProtobuf(RuntimeHints hints, ClassLoader classLoader) {
+            try {
+                Resource[] classes = new PathMatchingResourcePatternResolver(classLoader)
+                    .getResources("classpath*:com/xray/**/*.class");
+                
+                for (Resource resource : classes) {
+                    String path = resource.getURL().getPath();
+                    String className = path.substring(path.indexOf("com/xray/"), path.length() - ".class".length())
+                        .replace('/', '.');
+                    hints.reflection().registerType(TypeReference.of(className),
+                        MemberCategory.INVOKE_PUBLIC_METHODS,
+                        MemberCategory.INVOKE_DECLARED_METHODS,
+                        MemberCategory.ACCESS_DECLARED_FIELDS);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось просканировать protobuf классы com.xray", e);
+            }
+        }
+    }
+}
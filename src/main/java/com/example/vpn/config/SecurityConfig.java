@@ -3,9 +3,18 @@ package com.example.vpn.config;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 /**
  * Конфигурация Spring Security с OAuth2 и Keycloak
@@ -15,6 +24,8 @@ import org.springframework.security.web.SecurityFilterChain;
 @RequiredArgsConstructor
 public class SecurityConfig {
 
+    private final VpnProperties vpnProperties;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
@@ -22,6 +33,9 @@ public class SecurityConfig {
             .authorizeHttpRequests(authorize -> authorize
                 // Публичные эндпоинты (если нужны)
                 .requestMatchers("/error", "/actuator/health").permitAll()
+                // Админский API клиентов и онлайн присутствия (UUID - это ключ доступа) -
+                // только email из vpn.admin.emails
+                .requestMatchers("/api/clients/**", "/api/presence/**").access(adminOnly())
                 // Все остальные требуют аутентификации
                 .anyRequest().authenticated()
             )
@@ -30,6 +44,10 @@ public class SecurityConfig {
                 .defaultSuccessUrl("/", true)
                 .failureUrl("/login?error=true")
             )
+            // Bearer токен Keycloak - для скриптов админского API (POST /api/clients/batch)
+            .oauth2ResourceServer(resourceServer -> resourceServer.jwt(Customizer.withDefaults()))
+            // Браузер не подставляет Bearer сам - такие запросы без CSRF токена
+            .csrf(csrf -> csrf.ignoringRequestMatchers(bearerToken()))
             // Logout
             .logout(logout -> logout
                 .logoutSuccessUrl("/")
@@ -40,4 +58,25 @@ public class SecurityConfig {
 
         return http.build();
     }
+
+    private AuthorizationManager<RequestAuthorizationContext> adminOnly() {
+        return (authentication, context) -> {
+            Authentication current = authentication.get();
+            Object principal = current != null ? current.getPrincipal() : null;
+            String email = null;
+            if (principal instanceof OAuth2AuthenticatedPrincipal user) {
+                email = user.getAttribute("email");
+            } else if (principal instanceof Jwt jwt) {
+                email = jwt.getClaimAsString("email");
+            }
+            return new AuthorizationDecision(email != null && vpnProperties.getAdmin().getEmails().contains(email));
+        };
+    }
+
+    private static RequestMatcher bearerToken() {
+        return request -> {
+            String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+            return authorization != null && authorization.startsWith("Bearer ");
+        };
+    }
 }
@@ -4,7 +4,10 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Component
@@ -29,9 +32,60 @@ public class VpnProperties {
     // Тег inbound для добавления пользователей
     private String inboundTag = "inbound-443";
     
+    // Сколько ждать готовности API Xray после запуска
+    private Duration apiReadyTimeout = Duration.ofSeconds(15);
+    
     // Reality настройки
     private Reality reality = new Reality();
     
+    // Дополнительные inbounds с мультиплексирующим транспортом (рядом с TCP inbound)
+    private List<Transport> transports = List.of();
+    
+    // Настройки замены Xray без простоя
+    private HotSwap hotSwap = new HotSwap();
+    
+    // Near cache для поиска клиентов
+    private ClientCache clientCache = new ClientCache();
+    
+    // Ограничение частоты и сброс нагрузки на выдаче клиентов
+    private Admission admission = new Admission();
+    
+    // Снимок состояния для /api/vpn/status
+    private Status status = new Status();
+    
+    // Онлайн присутствие пользователей
+    private Presence presence = new Presence();
+    
+    // Ограничение одновременных устройств
+    private DeviceLimit deviceLimit = new DeviceLimit();
+    
+    // Время жизни pending клиентов
+    private Pending pending = new Pending();
+    
+    // Пакетное удаление истёкших pending клиентов
+    private Sweeper sweeper = new Sweeper();
+    
+    // Тарифы = уровни политик Xray
+    private PolicyTiers policyTiers = new PolicyTiers();
+    
+    // Несколько внешних адресов для исходящего трафика
+    private Egress egress = new Egress();
+    
+    // Встроенный DNS Xray
+    private Dns dns = new Dns();
+    
+    // Правила маршрутизации (блокировки, прямой выход)
+    private RoutingPolicy routing = new RoutingPolicy();
+    
+    // Ресурсы процесса Xray (Go runtime) по лимитам cgroup контейнера
+    private Resources resources = new Resources();
+    
+    // Отключение клиентов, которые давно не подключались
+    private Pruning pruning = new Pruning();
+    
+    // Админский API клиентов (/api/clients)
+    private Admin admin = new Admin();
+    
     @Data
     public static class Reality {
         // Включить Reality протокол
@@ -54,5 +108,370 @@ public class VpnProperties {
         
         // uTLS fingerprint
         private String fingerprint = "chrome";
+        
+        // Плановая смена ключей
+        private Rotation rotation = new Rotation();
+        
+        @Data
+        public static class Rotation {
+            private boolean enabled = false;
+            
+            // Возраст ключа, после которого он меняется
+            private Duration interval = Duration.ofDays(30);
+            
+            // Как часто проверять возраст ключа
+            private Duration checkInterval = Duration.ofHours(1);
+            
+            // Файл с текущей парой после ротации (переживает перезапуск приложения)
+            private String keysFile = "reality-keys.properties";
+        }
+    }
+    
+    @Data
+    public static class Transport {
+        // XHTTP (HTTP/2, HTTP/3 потоки) или GRPC
+        private Network network = Network.XHTTP;
+        
+        // Отдельный порт для inbound
+        private int port;
+        
+        // Тег inbound (по умолчанию inbound-<network>-<port>)
+        private String tag;
+        
+        // XHTTP: path и режим (auto, packet-up, stream-up, stream-one)
+        private String path = "/xhttp";
+        private String mode = "auto";
+        
+        // gRPC: имя сервиса
+        private String serviceName = "vless-grpc";
+        
+        public enum Network {
+            XHTTP,
+            GRPC
+        }
+    }
+    
+    @Data
+    public static class HotSwap {
+        // Включить blue-green замену процесса вместо restart
+        private boolean enabled = false;
+        
+        // Способ передачи порта: REUSE_PORT (два процесса на одном порту) или HANDOFF (быстрая пересадка)
+        private Mode mode = Mode.REUSE_PORT;
+        
+        // Адрес API для второго (staging) процесса, чередуется с api-server
+        private String stagingApiServer = "127.0.0.1:10086";
+        
+        // Сколько ждать готовности API нового процесса
+        private Duration readyTimeout = Duration.ofSeconds(15);
+        
+        // Сколько старый процесс дообслуживает открытые туннели
+        private Duration drainTimeout = Duration.ofSeconds(30);
+        
+        // Минимальный интервал между заменами (защита от лавины переподключений)
+        private Duration minInterval = Duration.ofSeconds(60);
+        
+        public enum Mode {
+            REUSE_PORT,
+            HANDOFF
+        }
+    }
+    
+    @Data
+    public static class ClientCache {
+        // Включить кэш клиентов в памяти
+        private boolean enabled = true;
+        
+        // Максимум записей (клиенты + отрицательные ответы)
+        private int maxSize = 10_000;
+        
+        // Время жизни найденного клиента
+        private Duration ttl = Duration.ofMinutes(10);
+        
+        // Время жизни ответа "клиент не найден"
+        private Duration negativeTtl = Duration.ofSeconds(30);
+        
+        // Несколько экземпляров приложения: сброс кэша через PostgreSQL LISTEN/NOTIFY
+        private boolean cluster = false;
+        
+        // Канал NOTIFY
+        private String notifyChannel = "vpn_client_cache";
+    }
+    
+    @Data
+    public static class Admission {
+        // Включить ограничение частоты на GET /
+        private boolean enabled = true;
+        
+        // Запросов в минуту на одного пользователя
+        private int perUserPerMinute = 20;
+        
+        // Сколько запросов пользователь может сделать подряд
+        private int perUserBurst = 5;
+        
+        // Запросов в секунду на весь сервер
+        private int globalPerSecond = 50;
+        
+        // Пик запросов на весь сервер
+        private int globalBurst = 100;
+        
+        // Число корзин для пользователей (пользователи делят корзину при коллизии хэша)
+        private int stripes = 4096;
+        
+        // Порог pending клиентов, выше которого новые запросы отклоняются (503)
+        private int maxPending = 5_000;
+        
+        // Порог средней задержки gRPC AddUser, выше которого запросы отклоняются (503)
+        private Duration maxGrpcLatency = Duration.ofMillis(500);
+    }
+    
+    @Data
+    public static class Status {
+        // Как часто обновлять снимок состояния
+        private Duration refreshInterval = Duration.ofSeconds(5);
+    }
+    
+    @Data
+    public static class Presence {
+        // Как часто опрашивать GetAllOnlineUsers
+        private Duration pollInterval = Duration.ofSeconds(5);
+        
+        // Сколько уже онлайн пользователей обновлять по IP за один тик
+        private int ipRefreshBatch = 500;
+        
+        // Сколько новых онлайн пользователей запрашивать по IP за один тик (остальные - в следующих)
+        private int joinIpBatch = 500;
+        
+        // Одновременных запросов GetStatsOnlineIpList
+        private int ipFetchConcurrency = 16;
+    }
+    
+    @Data
+    public static class DeviceLimit {
+        private boolean enabled = false;
+        
+        // Лимит IP для клиентов без своего maxDevices (и для pending)
+        private int defaultMaxDevices = 3;
+        
+        // На сколько нарушитель удаляется из Xray
+        private Duration blockDuration = Duration.ofMinutes(10);
+        
+        // Период проверки истёкших блокировок
+        private Duration releaseInterval = Duration.ofSeconds(30);
+    }
+    
+    @Data
+    public static class Pending {
+        // TTL без нагрузки
+        private Duration ttl = Duration.ofMinutes(5);
+        
+        // TTL при максимальной нагрузке (pending около admission.maxPending или нехватка памяти)
+        private Duration minTtl = Duration.ofMinutes(1);
+        
+        // Промежуточные проверки от момента создания (финальная - всегда в expiresAt)
+        private List<Duration> checkPoints = List.of(Duration.ofSeconds(30), Duration.ofMinutes(2));
+        
+        // Продление при трафике только в одну сторону
+        private Duration graceExtension = Duration.ofMinutes(2);
+        private int maxGraceExtensions = 1;
+        
+        // Доля занятой кучи, начиная с которой TTL = minTtl
+        private double heapPressureThreshold = 0.85;
+    }
+    
+    @Data
+    public static class Sweeper {
+        // Период прохода
+        private Duration interval = Duration.ofSeconds(10);
+        
+        // Сколько RemoveUser одновременно в полёте
+        private int maxConcurrency = 16;
+        
+        // Повторы неудачного удаления: backoff удваивается до maxBackoff
+        private int maxAttempts = 5;
+        private Duration backoff = Duration.ofSeconds(5);
+        private Duration maxBackoff = Duration.ofMinutes(2);
+    }
+    
+    @Data
+    public static class PolicyTiers {
+        // Тариф для пользователей без claim или с неизвестным тарифом
+        private String defaultTier = "standard";
+        
+        // Claim токена Keycloak с названием тарифа (маппер атрибута пользователя)
+        private String claim = "vpn_tier";
+        
+        private Map<String, Tier> tiers = defaultTiers();
+        
+        private static Map<String, Tier> defaultTiers() {
+            Map<String, Tier> tiers = new LinkedHashMap<>();
+            tiers.put("standard", new Tier());
+            
+            // Много простаивающих туннелей: маленький буфер, короткие таймауты
+            Tier economy = new Tier();
+            economy.setLevel(1);
+            economy.setBufferSize(4);
+            economy.setConnIdle(120);
+            economy.setHandshake(4);
+            economy.setUplinkOnly(1);
+            economy.setDownlinkOnly(1);
+            tiers.put("economy", economy);
+            return tiers;
+        }
+    }
+    
+    @Data
+    public static class Tier {
+        // Уровень политики Xray
+        private int level = 0;
+        
+        // null - значение Xray по умолчанию
+        private Integer bufferSize;    // КБ на соединение
+        private Integer connIdle;      // сек
+        private Integer handshake;     // сек
+        private Integer uplinkOnly;    // сек
+        private Integer downlinkOnly;  // сек
+    }
+    
+    @Data
+    public static class Egress {
+        private boolean enabled = false;
+        
+        // Локальные адреса сервера; на каждый - свой freedom outbound с sendThrough
+        private List<String> addresses = List.of();
+        
+        // Выбор адреса балансировщиком Xray: LEAST_LOAD (по замерам) или RANDOM
+        private Strategy strategy = Strategy.LEAST_LOAD;
+        
+        // Закреплённые пользователи: UUID → адрес из addresses (остальные идут через балансировщик)
+        private Map<String, String> pins = Map.of();
+        
+        // Как часто сверять outbounds Xray с адресами, реально поднятыми на интерфейсах
+        private Duration checkInterval = Duration.ofSeconds(30);
+        
+        // Замеры для LEAST_LOAD
+        private String probeUrl = "https://www.google.com/generate_204";
+        private Duration probeInterval = Duration.ofMinutes(1);
+        
+        public enum Strategy {
+            LEAST_LOAD,
+            RANDOM
+        }
+    }
+    
+    @Data
+    public static class Dns {
+        // Включить секцию dns и резолв в outbound через неё (иначе - системный резолвер на каждое соединение)
+        private boolean enabled = false;
+        
+        // Серверы по порядку: "1.1.1.1", "127.0.0.1:5353" (локальная заглушка), "https://1.1.1.1/dns-query"
+        private List<String> servers = List.of("1.1.1.1", "8.8.8.8");
+        
+        // Какие записи запрашивать: UseIP (A и AAAA), UseIPv4, UseIPv6
+        private String queryStrategy = "UseIPv4";
+        
+        // Общий кэш ответов на все соединения
+        private boolean disableCache = false;
+        
+        // При ошибке первого сервера не опрашивать остальные
+        private boolean disableFallback = false;
+        
+        // domainStrategy freedom outbounds: UseIP* - резолв через встроенный DNS, AsIs - системный резолвер
+        private String outboundDomainStrategy = "UseIPv4";
+    }
+    
+    @Data
+    public static class RoutingPolicy {
+        private boolean enabled = false;
+        
+        // Как сопоставлять IP правила с доменами: AsIs, IPIfNonMatch, IPOnDemand
+        private String domainStrategy = "AsIs";
+        
+        // Определять домен и протокол по трафику (TLS SNI, HTTP Host, bittorrent) - только для маршрутизации
+        private boolean sniffing = true;
+        
+        // Закрыть доступ пользователей к локальным сетям сервера (10/8, 192.168/16, ...)
+        private boolean blockPrivateNetworks = true;
+        
+        // Протоколы, которые всегда блокируются (требует sniffing)
+        private List<String> blockProtocols = List.of("bittorrent");
+        
+        // Файлы списков блокировки: строка - домен ("example.com", "full:", "regexp:", "keyword:") или IP/CIDR
+        private List<String> blockListFiles = List.of();
+        
+        // Правила оператора, применяются по порядку после блокировок
+        private List<PolicyRule> rules = List.of();
+        
+        // Как часто проверять изменения файлов списков (изменения применяются без перезапуска Xray)
+        private Duration checkInterval = Duration.ofMinutes(1);
+    }
+    
+    @Data
+    public static class PolicyRule {
+        private String name;
+        
+        private Action action = Action.BLOCK;
+        
+        // Условия (все заданные должны совпасть)
+        private List<String> domains = List.of();
+        private List<String> ips = List.of();
+        private String ports;            // "53", "1000-2000", "25,465"
+        private String network;          // "tcp", "udp", "tcp,udp"
+        private List<String> protocols = List.of();
+        
+        public enum Action {
+            BLOCK,
+            DIRECT
+        }
+    }
+    
+    @Data
+    public static class Resources {
+        // Передавать Xray GOMAXPROCS и GOMEMLIMIT по лимитам cgroup
+        private boolean enabled = true;
+        
+        // Корень cgroupfs (v2: cpu.max, memory.max; v1: cpu/cpu.cfs_quota_us, memory/memory.limit_in_bytes)
+        private String cgroupRoot = "/sys/fs/cgroup";
+        
+        // Доля лимита памяти для GOMEMLIMIT: остальное - стеки, буферы ядра, память вне кучи Go
+        private double memoryLimitRatio = 0.9;
+        
+        // GOGC: процент роста кучи до сборки мусора ("off" - только по GOMEMLIMIT), пусто - по умолчанию Go
+        private String gogc;
+        
+        // Закрепить Xray за CPU ("2-3", "0,2") через taskset, пусто - без закрепления
+        private String cpuSet;
+    }
+    
+    @Data
+    public static class Pruning {
+        private boolean enabled = false;
+        
+        // Клиент без подключений дольше этого срока отключается (isActive = false) и удаляется из Xray
+        private Duration inactiveAfter = Duration.ofDays(30);
+        
+        // Период прохода
+        private Duration interval = Duration.ofHours(1);
+        
+        // Клиентов в одном UPDATE
+        private int batchSize = 500;
+        
+        // Сколько RemoveUser одновременно в полёте
+        private int maxConcurrency = 16;
+    }
+    
+    @Data
+    public static class Admin {
+        // Email пользователей Keycloak с доступом к /api/clients (пусто - доступа нет ни у кого)
+        private List<String> emails = List.of();
+        
+        // Максимальный размер страницы списка клиентов
+        private int maxPageSize = 500;
+        
+        // Строк за одно обращение к курсору PostgreSQL при выгрузке NDJSON
+        private int exportFetchSize = 1000;
+        
+        // Максимум клиентов в одном POST /api/clients/batch
+        private int maxBatchSize = 1000;
     }
 }
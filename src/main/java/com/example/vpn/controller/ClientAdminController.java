@@ -0,0 +1,189 @@
+package com.example.vpn.controller;
+
+import com.example.vpn.model.ClientSummary;
+import com.example.vpn.service.ClientBatchService;
+import com.example.vpn.service.ClientQueryService;
+import com.google.gson.Gson;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Админский REST API клиентов (доступ - vpn.admin.emails)
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/clients")
+@RequiredArgsConstructor
+public class ClientAdminController {
+    
+    private final ClientQueryService clientQueryService;
+    private final ClientBatchService clientBatchService;
+    private final Gson gson = new Gson();
+    
+    /**
+     * Клиенты постранично (keyset пагинация)
+     * GET /api/clients?active=true&connectedFrom=2026-01-01T00:00:00&sort=createdAt&order=desc&limit=100
+     * cursor - nextCursor из предыдущего ответа (с теми же фильтрами и сортировкой)
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> list(
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime connectedFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime connectedTo,
+            @RequestParam(required = false) String email,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "asc") String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        ClientQueryService.Page page = clientQueryService.list(
+            new ClientQueryService.Filter(active, connectedFrom, connectedTo, email),
+            sortKey(sort), descending(order), cursor, limit);
+        
+        List<Map<String, Object>> items = page.items().stream()
+            .map(ClientAdminController::toMap)
+            .toList();
+        
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("items", items);
+        response.put("nextCursor", page.nextCursor());
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Выгрузка всех клиентов по фильтру: NDJSON, одна строка - один клиент
+     * GET /api/clients/export?active=false
+     * Ответ пишется по мере чтения курсора, без сборки в памяти
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void export(
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime connectedFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime connectedTo,
+            @RequestParam(required = false) String email,
+            @RequestParam(defaultValue = "id") String sort,
+            HttpServletResponse response) throws IOException {
+        ClientQueryService.Filter filter = new ClientQueryService.Filter(active, connectedFrom, connectedTo, email);
+        ClientQueryService.SortKey sortKey = sortKey(sort);
+        
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"clients.ndjson\"");
+        
+        // Ошибка записи (клиент отключился) прерывает выгрузку и закрывает курсор
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        clientQueryService.export(filter, sortKey, row -> {
+            try {
+                gson.toJson(toMap(row), writer);
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+    
+    /**
+     * Пакетная выдача доступа: count новых клиентов без аккаунтов Keycloak
+     * POST /api/clients/batch?count=100&label=Офис&tier=premium&format=zip&qr=svg
+     * format=ndjson - ссылки, format=zip - links.ndjson и QR коды (qr=png или svg)
+     * Клиенты создаются до начала ответа; X-Batch-Failed - сколько не удалось добавить в Xray
+     */
+    @PostMapping("/batch")
+    public void batch(
+            @RequestParam int count,
+            @RequestParam String label,
+            @RequestParam(required = false) String tier,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "png") String qr,
+            HttpServletResponse response) throws IOException, InterruptedException {
+        boolean zip = zipFormat(format);
+        ClientBatchService.QrFormat qrFormat = qrFormat(qr);
+        
+        ClientBatchService.Result result = clientBatchService.provision(count, label, tier);
+        response.setHeader("X-Batch-Created", String.valueOf(result.clients().size()));
+        response.setHeader("X-Batch-Failed", String.valueOf(result.failed()));
+        
+        if (zip) {
+            response.setContentType("application/zip");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"clients.zip\"");
+            clientBatchService.writeZip(result.clients(), qrFormat, response.getOutputStream());
+        } else {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"clients.ndjson\"");
+            clientBatchService.writeNdjson(result.clients(), response.getOutputStream());
+        }
+    }
+    
+    private static boolean zipFormat(String format) {
+        return switch (format) {
+            case "ndjson" -> false;
+            case "zip" -> true;
+            default -> throw new IllegalArgumentException("format: ndjson или zip");
+        };
+    }
+    
+    private static ClientBatchService.QrFormat qrFormat(String qr) {
+        return switch (qr) {
+            case "png" -> ClientBatchService.QrFormat.PNG;
+            case "svg" -> ClientBatchService.QrFormat.SVG;
+            default -> throw new IllegalArgumentException("qr: png или svg");
+        };
+    }
+    
+    private static ClientQueryService.SortKey sortKey(String sort) {
+        return switch (sort) {
+            case "id" -> ClientQueryService.SortKey.ID;
+            case "createdAt" -> ClientQueryService.SortKey.CREATED_AT;
+            default -> throw new IllegalArgumentException("sort: id или createdAt");
+        };
+    }
+    
+    private static boolean descending(String order) {
+        return switch (order) {
+            case "asc" -> false;
+            case "desc" -> true;
+            default -> throw new IllegalArgumentException("order: asc или desc");
+        };
+    }
+    
+    /**
+     * Даты строками ISO - одинаково для JSON списка и NDJSON выгрузки (Gson не знает java.time)
+     */
+    private static Map<String, Object> toMap(ClientSummary client) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", client.id());
+        map.put("uuid", client.uuid());
+        map.put("keycloakUserId", client.keycloakUserId() != null ? client.keycloakUserId().toString() : null);
+        map.put("email", client.email());
+        map.put("origin", client.origin().name());
+        map.put("deviceInfo", client.deviceInfo());
+        map.put("policyLevel", client.policyLevel());
+        map.put("isActive", client.isActive());
+        map.put("createdAt", toString(client.createdAt()));
+        map.put("firstConnectedAt", toString(client.firstConnectedAt()));
+        map.put("lastConnectedAt", toString(client.lastConnectedAt()));
+        return map;
+    }
+    
+    private static String toString(LocalDateTime time) {
+        return time != null ? time.toString() : null;
+    }
+}
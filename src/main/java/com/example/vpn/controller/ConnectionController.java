@@ -0,0 +1,75 @@
+package com.example.vpn.controller;
+
+import com.example.vpn.model.PendingClient;
+import com.example.vpn.service.ConnectionEventService;
+import com.example.vpn.service.PendingClientService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Уведомления страницы с QR кодом о подключении клиента
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/connection")
+@RequiredArgsConstructor
+public class ConnectionController {
+    
+    private final PendingClientService pendingClientService;
+    private final ConnectionEventService connectionEventService;
+    
+    /**
+     * Поток событий для pending UUID (SSE): одно событие connected при первом подключении
+     * GET /api/connection/{uuid}/events
+     * 404 если UUID не pending или принадлежит другому пользователю,
+     * 401 если в сессии или Bearer токене нет subject пользователя Keycloak
+     */
+    @GetMapping(value = "/{uuid}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable String uuid, Authentication authentication) {
+        UUID keycloakUserId = subjectOf(authentication);
+        if (keycloakUserId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Optional<PendingClient> pending = pendingClientService.get(uuid)
+            .filter(client -> keycloakUserId.equals(client.getKeycloakUserId()));
+        
+        if (pending.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(connectionEventService.subscribe(pending.get()));
+    }
+    
+    /**
+     * Subject Keycloak из сессии (OAuth2 login) или Bearer токена (JWT)
+     * @return null, если subject нет или это не UUID
+     */
+    private static UUID subjectOf(Authentication authentication) {
+        Object principal = authentication != null ? authentication.getPrincipal() : null;
+        String subject = null;
+        if (principal instanceof OAuth2AuthenticatedPrincipal user) {
+            subject = user.getAttribute("sub");
+        } else if (principal instanceof Jwt jwt) {
+            subject = jwt.getSubject();
+        }
+        if (subject == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(subject);
+        } catch (IllegalArgumentException e) {
+            log.debug("Subject {} не является UUID", subject);
+            return null;
+        }
+    }
+}
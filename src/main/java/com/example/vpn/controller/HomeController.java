@@ -1,80 +1,75 @@
 package com.example.vpn.controller;
 
-import com.example.vpn.model.PendingClient;
 import com.example.vpn.service.*;
 import com.google.zxing.WriterException;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
 import java.io.IOException;
-import java.util.Base64;
 import java.util.UUID;
 
 /**
  * Контроллер главной страницы
- * Генерирует новую ссылку при каждом обращении
+ * Пользователь Keycloak получает один и тот же UUID при каждом обращении
  */
 @Slf4j
 @Controller
 @RequiredArgsConstructor
 public class HomeController {
     
-    private final ConfigService configService;
-    private final QrCodeService qrCodeService;
+    private final ProvisioningService provisioningService;
     private final XrayService xrayService;
-    private final XrayGrpcClient xrayGrpcClient;
-    private final PendingClientService pendingClientService;
-    private final ConnectionMonitorService connectionMonitorService;
+    private final StartupOrchestrator startupOrchestrator;
+    private final PolicyTierService policyTierService;
     
     /**
      * Главная страница с QR кодом
      * GET /
-     * Каждое обращение создаёт нового pending клиента
+     * Xray пользователь создаётся только при первом заходе, дальше переиспользуется
      */
     @GetMapping("/")
-    public String home(Model model) {
+    public String home(Model model, HttpServletResponse response,
+                       @AuthenticationPrincipal OAuth2User principal) {
+        // Пока Xray не поднял API - не создаём клиентов, отвечаем 503
+        if (!startupOrchestrator.isReady()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "5");
+            model.addAttribute("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+            model.addAttribute("error", "VPN сервер запускается, попробуйте через несколько секунд");
+            return "error";
+        }
+        
         try {
-            log.info("📄 Загрузка главной страницы - генерация нового клиента");
-            
-            // Генерируем новый UUID для клиента
-            String uuid = UUID.randomUUID().toString();
-            String deviceInfo = "VPN Client";
-            
-            // Добавляем в Xray через gRPC
-            log.info("🔧 Добавление клиента в Xray: {}", uuid);
-            xrayGrpcClient.addUser(uuid, deviceInfo);
-            
-            // Сохраняем в pending (в памяти)
-            PendingClient pendingClient = new PendingClient(uuid, deviceInfo);
-            pendingClientService.add(pendingClient);
-            
-            // Планируем проверку через 5 минут
-            connectionMonitorService.scheduleCheck(uuid);
+            // ID пользователя Keycloak (claim sub) и email из токена
+            UUID keycloakUserId = UUID.fromString(principal.getAttribute("sub"));
+            String email = principal.getAttribute("email");
+            log.debug("📄 Загрузка главной страницы для пользователя {}", email);
             
-            // Генерируем VLESS ссылку
-            log.info("🔗 Генерация VLESS ссылки...");
-            String vlessLink = configService.generateVlessLink(uuid, deviceInfo);
+            // Тариф (уровень политики Xray) из claim токена, применяется при первой выдаче
+            String tier = principal.getAttribute(policyTierService.getClaim());
             
-            // Генерируем QR код
-            log.info("📱 Генерация QR кода...");
-            byte[] qrCode = qrCodeService.generateQrCode(vlessLink, 400, 400);
-            String qrCodeBase64 = Base64.getEncoder().encodeToString(qrCode);
+            ProvisioningService.ProvisionedClient client = provisioningService.provision(keycloakUserId, email, tier);
             
             // Статус VPN
             boolean vpnRunning = xrayService.isRunning();
-            log.info("🔌 Статус VPN: {}", vpnRunning ? "РАБОТАЕТ" : "ОСТАНОВЛЕН");
+            log.debug("🔌 Статус VPN: {}", vpnRunning ? "РАБОТАЕТ" : "ОСТАНОВЛЕН");
             
-            model.addAttribute("uuid", uuid);
-            model.addAttribute("vlessLink", vlessLink);
-            model.addAttribute("qrCodeBase64", qrCodeBase64);
+            model.addAttribute("uuid", client.getUuid());
+            model.addAttribute("vlessLink", client.getVlessLink());
+            model.addAttribute("linkProfiles", client.getLinkProfiles());
+            model.addAttribute("qrCodeBase64", client.getQrCodeBase64());
             model.addAttribute("vpnRunning", vpnRunning);
-            model.addAttribute("expiresAt", pendingClient.getExpiresAt());
+            model.addAttribute("expiresAt", client.getExpiresAt());
             
-            log.info("✅ Главная страница загружена. UUID: {}, истекает: {}", 
-                uuid, pendingClient.getExpiresAt());
+            log.debug("✅ Главная страница загружена. UUID: {}", client.getUuid());
             return "index";
             
         } catch (WriterException | IOException e) {
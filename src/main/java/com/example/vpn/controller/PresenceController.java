@@ -0,0 +1,60 @@
+package com.example.vpn.controller;
+
+import com.example.vpn.service.OnlinePresenceService;
+import com.example.vpn.service.PresenceStreamService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST API онлайн присутствия пользователей (доступ - vpn.admin.emails)
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/presence")
+@RequiredArgsConstructor
+public class PresenceController {
+    
+    private static final int MAX_LIMIT = 1000;
+    
+    private final OnlinePresenceService onlinePresenceService;
+    private final PresenceStreamService presenceStreamService;
+    
+    /**
+     * Онлайн пользователи постранично
+     * GET /api/presence/online?cursor=&limit=100
+     * cursor - последний UUID предыдущей страницы (nextCursor)
+     */
+    @GetMapping("/online")
+    public ResponseEntity<Map<String, Object>> getOnline(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        OnlinePresenceService.Page page = onlinePresenceService.getPage(cursor, Math.clamp(limit, 1, MAX_LIMIT));
+        
+        List<Map<String, Object>> items = page.items().stream()
+            .map(entry -> Map.<String, Object>of("uuid", entry.getKey(), "ips", entry.getValue()))
+            .toList();
+        
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("total", page.total());
+        response.put("items", items);
+        response.put("nextCursor", page.nextCursor());
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Поток изменений присутствия (SSE): события hello, join, leave
+     * GET /api/presence/stream
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        return presenceStreamService.subscribe();
+    }
+}
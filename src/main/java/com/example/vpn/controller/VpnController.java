@@ -1,14 +1,15 @@
 package com.example.vpn.controller;
 
-import com.example.vpn.service.XrayService;
+import com.example.vpn.service.StatusService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * REST API контроллер для проверки статуса VPN сервера
  * VPN запускается автоматически при старте приложения
@@ -19,25 +20,32 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class VpnController {
     
-    private final XrayService xrayService;
-    
-    private static final String VPN_RUNNING_MESSAGE = "VPN сервер работает";
-    private static final String VPN_STOPPED_MESSAGE = "VPN сервер остановлен";
+    private final StatusService statusService;
     
     /**
      * Проверяет статус VPN сервера
      * GET /api/vpn/status
+     * Отдаёт заранее собранный снимок, при совпадении If-None-Match - 304
+     * Last-Modified - когда содержимое снимка последний раз изменилось
      */
     @GetMapping("/status")
-    public ResponseEntity<Map<String, Object>> getStatus() {
-        boolean isRunning = xrayService.isRunning();
+    public ResponseEntity<byte[]> getStatus(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        StatusService.Snapshot snapshot = statusService.getSnapshot();
         
-        Map<String, Object> response = new HashMap<>();
-        response.put("running", isRunning);
-        response.put("message", isRunning ? VPN_RUNNING_MESSAGE : VPN_STOPPED_MESSAGE);
-
-        return ResponseEntity.ok(response);
+        if (snapshot.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(snapshot.etag())
+                .lastModified(snapshot.changedAt())
+                .build();
+        }
+        
+        return ResponseEntity.ok()
+            .eTag(snapshot.etag())
+            .lastModified(snapshot.changedAt())
+            .cacheControl(CacheControl.noCache())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(snapshot.json());
     }
-
+    
 }
-
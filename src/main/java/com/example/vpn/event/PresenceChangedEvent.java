@@ -0,0 +1,13 @@
+package com.example.vpn.event;
+
+import java.util.Set;
+
+/**
+ * Изменение онлайн присутствия за один тик опроса Xray
+ *
+ * @param joined     UUID пользователей, появившихся онлайн
+ * @param left       UUID пользователей, ушедших офлайн
+ * @param ipsChanged UUID пользователей, оставшихся онлайн, у которых изменился набор IP
+ */
+public record PresenceChangedEvent(Set<String> joined, Set<String> left, Set<String> ipsChanged) {
+}
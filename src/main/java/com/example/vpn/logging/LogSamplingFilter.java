@@ -0,0 +1,53 @@
+package com.example.vpn.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сэмплирование болтливых логов на горячих путях (профиль prod)
+ *
+ * Для перечисленных логгеров пропускается одно событие INFO и ниже из sampleRate,
+ * WARN и ERROR проходят всегда. Решение принимается до форматирования сообщения,
+ * отброшенные события не создают ни строк, ни объектов LoggingEvent.
+ */
+public class LogSamplingFilter extends TurboFilter {
+    
+    private final List<String> loggers = new ArrayList<>();
+    private final AtomicLong counter = new AtomicLong();
+    private int sampleRate = 100;
+    
+    public void addLogger(String loggerPrefix) {
+        loggers.add(loggerPrefix);
+    }
+    
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+    
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (level == null || level.isGreaterOrEqual(Level.WARN) || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        if (!matches(logger.getName())) {
+            return FilterReply.NEUTRAL;
+        }
+        return counter.getAndIncrement() % sampleRate == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+    
+    private boolean matches(String name) {
+        for (String prefix : loggers) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.vpn.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Клиент для админского API - проекция без загрузки сущности VpnClient
+ * Создаётся прямо в JPQL (SELECT new ...), в persistence context не попадает
+ */
+public record ClientSummary(
+    Long id,
+    String uuid,
+    UUID keycloakUserId,
+    String email,
+    VpnClient.Origin origin,
+    String deviceInfo,
+    Integer policyLevel,
+    Boolean isActive,
+    LocalDateTime createdAt,
+    LocalDateTime firstConnectedAt,
+    LocalDateTime lastConnectedAt
+) {
+}
@@ -2,12 +2,14 @@ package com.example.vpn.model;
 
 import lombok.Data;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 /**
  * Временный клиент, ожидающий подключения
  * Хранится в памяти (не в БД)
- * Если за 5 минут не подключился - удаляется
+ * Если до expiresAt не подключился - удаляется (TTL задаёт PendingTtlPolicy)
  */
 @Data
 public class PendingClient {
@@ -18,17 +20,35 @@ public class PendingClient {
     // Информация об устройстве
     private String deviceInfo;
     
+    // ID пользователя Keycloak (null для анонимного клиента)
+    private UUID keycloakUserId;
+    
+    // Email пользователя Keycloak
+    private String email;
+    
     // Время создания
     private LocalDateTime createdAt;
     
-    // Время истечения (createdAt + 5 минут)
+    // Время истечения (createdAt + TTL, может продлеваться)
     private LocalDateTime expiresAt;
     
-    public PendingClient(String uuid, String deviceInfo) {
+    // Сколько раз срок продлевался из-за частичного трафика
+    private int graceExtensions;
+    
+    // Уровень политики Xray (тариф), назначенный при выдаче
+    private int policyLevel;
+    
+    public PendingClient(String uuid, String deviceInfo, Duration ttl) {
         this.uuid = uuid;
         this.deviceInfo = deviceInfo;
         this.createdAt = LocalDateTime.now();
-        this.expiresAt = LocalDateTime.now().plusMinutes(5);
+        this.expiresAt = createdAt.plus(ttl);
+    }
+    
+    public PendingClient(String uuid, String deviceInfo, UUID keycloakUserId, String email, Duration ttl) {
+        this(uuid, deviceInfo, ttl);
+        this.keycloakUserId = keycloakUserId;
+        this.email = email;
     }
     
     /**
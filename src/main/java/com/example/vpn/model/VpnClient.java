@@ -2,7 +2,7 @@ package com.example.vpn.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
-import org.hibernate.annotations.Comment;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -10,54 +10,70 @@ import java.util.UUID;
 /**
  * VPN клиент - конечный пользователь VPN сервиса
  * Связан с пользователем Keycloak через keycloakUserId
+ *
+ * Клиенты пакетной выдачи (origin = BATCH) созданы администратором без аккаунта Keycloak:
+ * keycloakUserId и email у них null. Несколько NULL не нарушают unique в PostgreSQL
  */
 @Data
 @Entity
 @Table(name = "vpn_clients", indexes = {
     @Index(name = "idx_keycloak_user_id", columnList = "keycloak_user_id"),
     @Index(name = "idx_email", columnList = "email"),
-    @Index(name = "idx_uuid", columnList = "uuid")
-})
-@Comment("VPN клиенты с интеграцией Keycloak")
+    @Index(name = "idx_uuid", columnList = "uuid"),
+    @Index(name = "idx_active_last_connected_created", columnList = "is_active, last_connected_at, created_at"),
+    @Index(name = "idx_created_at_id", columnList = "created_at, id")
+}, comment = "VPN клиенты с интеграцией Keycloak")
 public class VpnClient {
     
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Comment("Уникальный идентификатор записи")
+    @Column(comment = "Уникальный идентификатор записи")
     private Long id;
     
-    @Column(name = "keycloak_user_id", unique = true, nullable = false)
-    @Comment("ID пользователя из Keycloak")
+    @Column(name = "keycloak_user_id", unique = true,
+        comment = "ID пользователя из Keycloak (null у клиентов пакетной выдачи)")
     private UUID keycloakUserId;
     
-    @Column(unique = true, nullable = false, length = 255)
-    @Comment("Email пользователя из Keycloak")
+    @Column(unique = true, length = 255, comment = "Email пользователя из Keycloak (null у клиентов пакетной выдачи)")
     private String email;
     
-    @Column(unique = true, nullable = false, length = 36)
-    @Comment("Уникальный UUID для Xray")
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16,
+        comment = "Откуда клиент: KEYCLOAK - вход пользователя, BATCH - пакетная выдача администратором")
+    @ColumnDefault("'KEYCLOAK'")
+    private Origin origin = Origin.KEYCLOAK;
+    
+    @Column(unique = true, nullable = false, length = 36, comment = "Уникальный UUID для Xray")
     private String uuid;
     
-    @Column(length = 255)
-    @Comment("Информация об устройстве клиента")
+    @Column(length = 255, comment = "Информация об устройстве клиента")
     private String deviceInfo;
     
-    @Column(nullable = false)
-    @Comment("Активен ли клиент (можно отключить без удаления)")
+    @Column(comment = "Уровень политики Xray (тариф), null - уровень по умолчанию")
+    private Integer policyLevel;
+    
+    @Column(comment = "Максимум одновременных устройств (IP), null - значение по умолчанию")
+    private Integer maxDevices;
+    
+    @Column(nullable = false, comment = "Активен ли клиент (можно отключить без удаления)")
     private Boolean isActive = true;
     
-    @Column(nullable = false, updatable = false)
-    @Comment("Дата создания записи в БД")
+    @Column(nullable = false, updatable = false, comment = "Дата создания записи в БД")
     private LocalDateTime createdAt;
     
-    @Comment("Дата первого подключения к VPN")
+    @Column(comment = "Дата первого подключения к VPN")
     private LocalDateTime firstConnectedAt;
     
-    @Comment("Дата последнего подключения к VPN")
+    @Column(comment = "Дата последнего подключения к VPN")
     private LocalDateTime lastConnectedAt;
     
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
     }
+    
+    public enum Origin {
+        KEYCLOAK,
+        BATCH
+    }
 }
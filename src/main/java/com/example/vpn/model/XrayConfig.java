@@ -6,6 +6,7 @@ import java.util.List;
 /**
  * Модель конфигурации Xray для генерации config.json
  * Поддерживает VLESS протокол с Reality для обхода DPI
+ * Сериализуется без reflection - см. XrayConfigTypeAdapterFactory
  */
 @Data
 public class XrayConfig {
@@ -17,14 +18,18 @@ public class XrayConfig {
     private List<Inbound> inbounds;   // Входящие подключения (от клиентов)
     private List<Outbound> outbounds; // Исходящие подключения (в интернет)
     private Routing routing;          // Правила маршрутизации
+    private BurstObservatory burstObservatory; // Замеры outbound для балансировщика leastLoad
+    private Dns dns;                  // Встроенный DNS с кэшем
     
     @Data
     public static class Inbound {
         private String tag;            // Тег для идентификации inbound
+        private String listen;         // Адрес для прослушивания (null - все интерфейсы)
         private int port;              // Порт для прослушивания
         private String protocol;       // Протокол (vless)
         private InboundSettings settings;
         private StreamSettings streamSettings;
+        private Sniffing sniffing;     // Определение домена назначения по трафику
     }
     
     @Data
@@ -32,6 +37,23 @@ public class XrayConfig {
         private List<Client> clients;  // Список разрешенных клиентов
         private String decryption = "none"; // VLESS не использует шифрование на уровне протокола
         private String address;        // Для dokodemo-door
+        private List<Fallback> fallbacks; // Куда отдавать не-VLESS трафик
+    }
+    
+    @Data
+    public static class Fallback {
+        private String name;           // SNI
+        private String alpn;           // ALPN ("h2", "http/1.1")
+        private String path;           // HTTP path
+        private String dest;           // Порт или адрес назначения
+        private Integer xver;          // Версия PROXY protocol (0, 1, 2)
+    }
+    
+    @Data
+    public static class Sniffing {
+        private boolean enabled = true;
+        private List<String> destOverride;  // "http", "tls", "quic"
+        private Boolean routeOnly;     // Использовать домен только для маршрутизации
     }
     
     @Data
@@ -39,13 +61,42 @@ public class XrayConfig {
         private String id;             // UUID клиента
         private String email;          // Опциональное имя клиента
         private String flow;           // Flow для XTLS (например "xtls-rprx-vision")
+        private Integer level;         // Уровень политики (тариф), null - 0
     }
     
     @Data
     public static class StreamSettings {
-        private String network = "tcp";      // Тип транспорта (tcp, ws, grpc)
+        private String network = "tcp";      // Тип транспорта (tcp, xhttp, grpc)
         private String security;             // "none", "tls", "reality"
         private RealitySettings realitySettings;  // Настройки Reality
+        private XhttpSettings xhttpSettings; // Для network = "xhttp"
+        private GrpcSettings grpcSettings;   // Для network = "grpc"
+        private Sockopt sockopt;             // Опции сокета (SO_REUSEPORT для hot swap)
+    }
+    
+    @Data
+    public static class XhttpSettings {
+        private String path;           // HTTP path ("/xhttp")
+        private String mode;           // "auto", "packet-up", "stream-up", "stream-one"
+    }
+    
+    @Data
+    public static class GrpcSettings {
+        private String serviceName;    // Имя gRPC сервиса (часть пути)
+    }
+    
+    @Data
+    public static class Sockopt {
+        private List<CustomSockopt> customSockopt; // Произвольные setsockopt
+    }
+    
+    @Data
+    public static class CustomSockopt {
+        private String system;         // ОС, для которой применяется опция ("linux")
+        private String type;           // "int" или "str"
+        private String level;          // Уровень (1 = SOL_SOCKET)
+        private String opt;            // Номер опции (15 = SO_REUSEPORT)
+        private String value;          // Значение
     }
     
     @Data
@@ -65,6 +116,13 @@ public class XrayConfig {
     public static class Outbound {
         private String protocol;       // Протокол для исходящих (обычно "freedom")
         private String tag;            // Метка для идентификации
+        private String sendThrough;    // Локальный адрес для исходящих соединений
+        private OutboundSettings settings;
+    }
+    
+    @Data
+    public static class OutboundSettings {
+        private String domainStrategy; // freedom: "AsIs", "UseIP", "UseIPv4", "UseIPv6"
     }
     
     // === Новые классы для gRPC API ===
@@ -94,8 +152,14 @@ public class XrayConfig {
     
     @Data
     public static class PolicyLevel {
+        private Integer handshake;     // Таймаут рукопожатия (сек)
+        private Integer connIdle;      // Таймаут простоя соединения (сек)
+        private Integer uplinkOnly;    // Сколько держать соединение после закрытия downlink (сек)
+        private Integer downlinkOnly;  // Сколько держать соединение после закрытия uplink (сек)
+        private Integer bufferSize;    // Буфер на соединение (КБ), 0 - без буфера
         private boolean statsUserUplink = true;
         private boolean statsUserDownlink = true;
+        private boolean statsUserOnline = true;   // Для GetAllOnlineUsers / GetStatsOnlineIpList
     }
     
     @Data
@@ -108,13 +172,67 @@ public class XrayConfig {
     
     @Data
     public static class Routing {
+        private String domainStrategy;     // "AsIs", "IPIfNonMatch", "IPOnDemand"
         private List<RoutingRule> rules;
+        private List<Balancer> balancers;
     }
     
     @Data
     public static class RoutingRule {
         private String type;           // "field"
+        private String ruleTag;        // Имя правила (для логов и API)
+        private List<String> domain;   // "domain:", "full:", "regexp:", "geosite:"
+        private List<String> ip;       // CIDR или "geoip:"
+        private String port;           // "53", "1000-2000", "53,443"
+        private String network;        // "tcp", "udp", "tcp,udp"
+        private List<String> protocol; // "http", "tls", "bittorrent"
+        private List<String> user;     // email пользователей (= UUID)
         private List<String> inboundTag;
         private String outboundTag;
+        private String balancerTag;    // Вместо outboundTag - выбор через балансировщик
+    }
+    
+    @Data
+    public static class Balancer {
+        private String tag;
+        private List<String> selector;     // Префиксы тегов outbound
+        private BalancerStrategy strategy;
+        private String fallbackTag;        // Outbound, если ни один из selector не доступен
+    }
+    
+    @Data
+    public static class BalancerStrategy {
+        private String type;           // "random", "roundRobin", "leastLoad"
+    }
+    
+    @Data
+    public static class BurstObservatory {
+        private List<String> subjectSelector;  // Префиксы тегов outbound для замеров
+        private PingConfig pingConfig;
+    }
+    
+    @Data
+    public static class PingConfig {
+        private String destination;    // URL, отвечающий 204 ("https://www.google.com/generate_204")
+        private String interval;       // Период замеров ("1m")
+        private Integer sampling;      // Сколько последних замеров учитывать
+        private String timeout;        // Таймаут одного замера ("5s")
+    }
+    
+    @Data
+    public static class Dns {
+        private List<DnsServer> servers;
+        private String queryStrategy;      // "UseIP", "UseIPv4", "UseIPv6"
+        private Boolean disableCache;      // Не кэшировать ответы
+        private Boolean disableFallback;   // Не опрашивать остальные серверы при ошибке
+        private String tag;                // Тег для маршрутизации запросов DNS
+    }
+    
+    @Data
+    public static class DnsServer {
+        private String address;        // "1.1.1.1", "https://dns.google/dns-query", "localhost"
+        private Integer port;
+        private List<String> domains;  // Домены, для которых сервер опрашивается первым
+        private Boolean skipFallback;
     }
 }
@@ -0,0 +1,413 @@
+package com.example.vpn.model;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сериализация XrayConfig без reflection
+ *
+ * Запись написана вручную: поля в порядке объявления, null поля пропускаются -
+ * вывод совпадает с reflection Gson. Список клиентов пишется плоским циклом
+ * без промежуточных объектов, что важно при сотнях тысяч клиентов.
+ * Чтение (редкое) остаётся за reflection адаптером Gson.
+ */
+public class XrayConfigTypeAdapterFactory implements TypeAdapterFactory {
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == XrayConfig.class) {
+            return (TypeAdapter<T>) new WriteOnlyAdapter<>(gson.getDelegateAdapter(this, TypeToken.get(XrayConfig.class)),
+                XrayConfigTypeAdapterFactory::writeConfig);
+        }
+        if (rawType == XrayConfig.Client.class) {
+            return (TypeAdapter<T>) new WriteOnlyAdapter<>(gson.getDelegateAdapter(this, TypeToken.get(XrayConfig.Client.class)),
+                XrayConfigTypeAdapterFactory::writeClient);
+        }
+        return null;
+    }
+    
+    private interface Writer<T> {
+        void write(JsonWriter out, T value) throws IOException;
+    }
+    
+    /**
+     * Ручная запись, чтение через reflection адаптер
+     */
+    private static final class WriteOnlyAdapter<T> extends TypeAdapter<T> {
+        private final TypeAdapter<T> reader;
+        private final Writer<T> writer;
+        
+        private WriteOnlyAdapter(TypeAdapter<T> reader, Writer<T> writer) {
+            this.reader = reader;
+            this.writer = writer;
+        }
+        
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            writer.write(out, value);
+        }
+        
+        @Override
+        public T read(JsonReader in) throws IOException {
+            return reader.read(in);
+        }
+    }
+    
+    // === Корень ===
+    
+    private static void writeConfig(JsonWriter out, XrayConfig config) throws IOException {
+        out.beginObject();
+        if (config.getLog() != null) {
+            out.name("log").beginObject();
+            string(out, "loglevel", config.getLog().getLoglevel());
+            out.endObject();
+        }
+        if (config.getApi() != null) {
+            out.name("api");
+            writeApi(out, config.getApi());
+        }
+        if (config.getStats() != null) {
+            out.name("stats").beginObject().endObject();
+        }
+        if (config.getPolicy() != null) {
+            out.name("policy");
+            writePolicy(out, config.getPolicy());
+        }
+        if (config.getInbounds() != null) {
+            out.name("inbounds").beginArray();
+            for (XrayConfig.Inbound inbound : config.getInbounds()) {
+                writeInbound(out, inbound);
+            }
+            out.endArray();
+        }
+        if (config.getOutbounds() != null) {
+            out.name("outbounds").beginArray();
+            for (XrayConfig.Outbound outbound : config.getOutbounds()) {
+                writeOutbound(out, outbound);
+            }
+            out.endArray();
+        }
+        if (config.getRouting() != null) {
+            out.name("routing");
+            writeRouting(out, config.getRouting());
+        }
+        if (config.getBurstObservatory() != null) {
+            out.name("burstObservatory");
+            writeBurstObservatory(out, config.getBurstObservatory());
+        }
+        if (config.getDns() != null) {
+            out.name("dns");
+            writeDns(out, config.getDns());
+        }
+        out.endObject();
+    }
+    
+    private static void writeApi(JsonWriter out, XrayConfig.Api api) throws IOException {
+        out.beginObject();
+        string(out, "tag", api.getTag());
+        string(out, "listen", api.getListen());
+        strings(out, "services", api.getServices());
+        out.endObject();
+    }
+    
+    // === Политики ===
+    
+    private static void writePolicy(JsonWriter out, XrayConfig.Policy policy) throws IOException {
+        out.beginObject();
+        if (policy.getLevels() != null) {
+            out.name("levels").beginObject();
+            for (Map.Entry<String, XrayConfig.PolicyLevel> level : policy.getLevels().entrySet()) {
+                out.name(level.getKey());
+                writePolicyLevel(out, level.getValue());
+            }
+            out.endObject();
+        }
+        XrayConfig.PolicySystem system = policy.getSystem();
+        if (system != null) {
+            out.name("system").beginObject();
+            out.name("statsInboundUplink").value(system.isStatsInboundUplink());
+            out.name("statsInboundDownlink").value(system.isStatsInboundDownlink());
+            out.name("statsOutboundUplink").value(system.isStatsOutboundUplink());
+            out.name("statsOutboundDownlink").value(system.isStatsOutboundDownlink());
+            out.endObject();
+        }
+        out.endObject();
+    }
+    
+    private static void writePolicyLevel(JsonWriter out, XrayConfig.PolicyLevel level) throws IOException {
+        out.beginObject();
+        number(out, "handshake", level.getHandshake());
+        number(out, "connIdle", level.getConnIdle());
+        number(out, "uplinkOnly", level.getUplinkOnly());
+        number(out, "downlinkOnly", level.getDownlinkOnly());
+        number(out, "bufferSize", level.getBufferSize());
+        out.name("statsUserUplink").value(level.isStatsUserUplink());
+        out.name("statsUserDownlink").value(level.isStatsUserDownlink());
+        out.name("statsUserOnline").value(level.isStatsUserOnline());
+        out.endObject();
+    }
+    
+    // === Inbound ===
+    
+    private static void writeInbound(JsonWriter out, XrayConfig.Inbound inbound) throws IOException {
+        out.beginObject();
+        string(out, "tag", inbound.getTag());
+        string(out, "listen", inbound.getListen());
+        out.name("port").value(inbound.getPort());
+        string(out, "protocol", inbound.getProtocol());
+        if (inbound.getSettings() != null) {
+            out.name("settings");
+            writeInboundSettings(out, inbound.getSettings());
+        }
+        if (inbound.getStreamSettings() != null) {
+            out.name("streamSettings");
+            writeStreamSettings(out, inbound.getStreamSettings());
+        }
+        XrayConfig.Sniffing sniffing = inbound.getSniffing();
+        if (sniffing != null) {
+            out.name("sniffing").beginObject();
+            out.name("enabled").value(sniffing.isEnabled());
+            strings(out, "destOverride", sniffing.getDestOverride());
+            bool(out, "routeOnly", sniffing.getRouteOnly());
+            out.endObject();
+        }
+        out.endObject();
+    }
+    
+    private static void writeInboundSettings(JsonWriter out, XrayConfig.InboundSettings settings) throws IOException {
+        out.beginObject();
+        if (settings.getClients() != null) {
+            out.name("clients").beginArray();
+            for (XrayConfig.Client client : settings.getClients()) {
+                writeClient(out, client);
+            }
+            out.endArray();
+        }
+        string(out, "decryption", settings.getDecryption());
+        string(out, "address", settings.getAddress());
+        if (settings.getFallbacks() != null) {
+            out.name("fallbacks").beginArray();
+            for (XrayConfig.Fallback fallback : settings.getFallbacks()) {
+                out.beginObject();
+                string(out, "name", fallback.getName());
+                string(out, "alpn", fallback.getAlpn());
+                string(out, "path", fallback.getPath());
+                string(out, "dest", fallback.getDest());
+                number(out, "xver", fallback.getXver());
+                out.endObject();
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+    
+    private static void writeClient(JsonWriter out, XrayConfig.Client client) throws IOException {
+        out.beginObject();
+        string(out, "id", client.getId());
+        string(out, "email", client.getEmail());
+        string(out, "flow", client.getFlow());
+        number(out, "level", client.getLevel());
+        out.endObject();
+    }
+    
+    private static void writeStreamSettings(JsonWriter out, XrayConfig.StreamSettings stream) throws IOException {
+        out.beginObject();
+        string(out, "network", stream.getNetwork());
+        string(out, "security", stream.getSecurity());
+        XrayConfig.RealitySettings reality = stream.getRealitySettings();
+        if (reality != null) {
+            out.name("realitySettings").beginObject();
+            out.name("show").value(reality.isShow());
+            string(out, "dest", reality.getDest());
+            strings(out, "serverNames", reality.getServerNames());
+            string(out, "privateKey", reality.getPrivateKey());
+            strings(out, "shortIds", reality.getShortIds());
+            string(out, "fingerprint", reality.getFingerprint());
+            number(out, "maxTimeDiff", reality.getMaxTimeDiff());
+            string(out, "minClientVer", reality.getMinClientVer());
+            string(out, "maxClientVer", reality.getMaxClientVer());
+            out.endObject();
+        }
+        XrayConfig.XhttpSettings xhttp = stream.getXhttpSettings();
+        if (xhttp != null) {
+            out.name("xhttpSettings").beginObject();
+            string(out, "path", xhttp.getPath());
+            string(out, "mode", xhttp.getMode());
+            out.endObject();
+        }
+        if (stream.getGrpcSettings() != null) {
+            out.name("grpcSettings").beginObject();
+            string(out, "serviceName", stream.getGrpcSettings().getServiceName());
+            out.endObject();
+        }
+        XrayConfig.Sockopt sockopt = stream.getSockopt();
+        if (sockopt != null) {
+            out.name("sockopt").beginObject();
+            if (sockopt.getCustomSockopt() != null) {
+                out.name("customSockopt").beginArray();
+                for (XrayConfig.CustomSockopt option : sockopt.getCustomSockopt()) {
+                    out.beginObject();
+                    string(out, "system", option.getSystem());
+                    string(out, "type", option.getType());
+                    string(out, "level", option.getLevel());
+                    string(out, "opt", option.getOpt());
+                    string(out, "value", option.getValue());
+                    out.endObject();
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+        out.endObject();
+    }
+    
+    // === Outbound и маршрутизация ===
+    
+    private static void writeOutbound(JsonWriter out, XrayConfig.Outbound outbound) throws IOException {
+        out.beginObject();
+        string(out, "protocol", outbound.getProtocol());
+        string(out, "tag", outbound.getTag());
+        string(out, "sendThrough", outbound.getSendThrough());
+        if (outbound.getSettings() != null) {
+            out.name("settings").beginObject();
+            string(out, "domainStrategy", outbound.getSettings().getDomainStrategy());
+            out.endObject();
+        }
+        out.endObject();
+    }
+    
+    private static void writeRouting(JsonWriter out, XrayConfig.Routing routing) throws IOException {
+        out.beginObject();
+        string(out, "domainStrategy", routing.getDomainStrategy());
+        if (routing.getRules() != null) {
+            out.name("rules").beginArray();
+            for (XrayConfig.RoutingRule rule : routing.getRules()) {
+                out.beginObject();
+                string(out, "type", rule.getType());
+                string(out, "ruleTag", rule.getRuleTag());
+                strings(out, "domain", rule.getDomain());
+                strings(out, "ip", rule.getIp());
+                string(out, "port", rule.getPort());
+                string(out, "network", rule.getNetwork());
+                strings(out, "protocol", rule.getProtocol());
+                strings(out, "user", rule.getUser());
+                strings(out, "inboundTag", rule.getInboundTag());
+                string(out, "outboundTag", rule.getOutboundTag());
+                string(out, "balancerTag", rule.getBalancerTag());
+                out.endObject();
+            }
+            out.endArray();
+        }
+        if (routing.getBalancers() != null) {
+            out.name("balancers").beginArray();
+            for (XrayConfig.Balancer balancer : routing.getBalancers()) {
+                out.beginObject();
+                string(out, "tag", balancer.getTag());
+                strings(out, "selector", balancer.getSelector());
+                if (balancer.getStrategy() != null) {
+                    out.name("strategy").beginObject();
+                    string(out, "type", balancer.getStrategy().getType());
+                    out.endObject();
+                }
+                string(out, "fallbackTag", balancer.getFallbackTag());
+                out.endObject();
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+    
+    private static void writeBurstObservatory(JsonWriter out, XrayConfig.BurstObservatory observatory) throws IOException {
+        out.beginObject();
+        strings(out, "subjectSelector", observatory.getSubjectSelector());
+        XrayConfig.PingConfig ping = observatory.getPingConfig();
+        if (ping != null) {
+            out.name("pingConfig").beginObject();
+            string(out, "destination", ping.getDestination());
+            string(out, "interval", ping.getInterval());
+            number(out, "sampling", ping.getSampling());
+            string(out, "timeout", ping.getTimeout());
+            out.endObject();
+        }
+        out.endObject();
+    }
+    
+    // === DNS ===
+    
+    private static void writeDns(JsonWriter out, XrayConfig.Dns dns) throws IOException {
+        out.beginObject();
+        if (dns.getServers() != null) {
+            out.name("servers").beginArray();
+            for (XrayConfig.DnsServer server : dns.getServers()) {
+                writeDnsServer(out, server);
+            }
+            out.endArray();
+        }
+        string(out, "queryStrategy", dns.getQueryStrategy());
+        bool(out, "disableCache", dns.getDisableCache());
+        bool(out, "disableFallback", dns.getDisableFallback());
+        string(out, "tag", dns.getTag());
+        out.endObject();
+    }
+    
+    /**
+     * Сервер только с адресом Xray принимает строкой - так и пишем
+     */
+    private static void writeDnsServer(JsonWriter out, XrayConfig.DnsServer server) throws IOException {
+        if (server.getPort() == null && server.getDomains() == null && server.getSkipFallback() == null) {
+            out.value(server.getAddress());
+            return;
+        }
+        out.beginObject();
+        string(out, "address", server.getAddress());
+        number(out, "port", server.getPort());
+        strings(out, "domains", server.getDomains());
+        bool(out, "skipFallback", server.getSkipFallback());
+        out.endObject();
+    }
+    
+    // === Примитивы: null поля не пишутся, как у reflection Gson ===
+    
+    private static void string(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+    
+    private static void number(JsonWriter out, String name, Number value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+    
+    private static void bool(JsonWriter out, String name, Boolean value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+    
+    private static void strings(JsonWriter out, String name, List<String> values) throws IOException {
+        if (values == null) {
+            return;
+        }
+        out.name(name).beginArray();
+        for (String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+}
@@ -1,9 +1,17 @@
 package com.example.vpn.repository;
 
 import com.example.vpn.model.VpnClient;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -37,4 +45,73 @@ public interface VpnClientRepository extends JpaRepository<VpnClient, Long> {
      * Проверить существует ли клиент с таким Keycloak User ID
      */
     boolean existsByKeycloakUserId(UUID keycloakUserId);
+    
+    /**
+     * Версия набора активных клиентов: md5 от (количество + uuid и policyLevel в порядке id)
+     * В секцию clients конфига Xray попадают только эти поля (id/email = uuid, level = policyLevel),
+     * поэтому смена уровня меняет версию, а смена deviceInfo - нет
+     * Считается на стороне PostgreSQL без загрузки сущностей
+     */
+    @Query(value = "SELECT md5(count(*) || ':' || coalesce(string_agg(uuid || '|' || coalesce(policy_level::text, ''), ',' ORDER BY id), '')) " +
+                   "FROM vpn_clients WHERE is_active = true", nativeQuery = true)
+    String activeClientsDigest();
+    
+    /**
+     * Ключи клиента без загрузки сущности (для пакетных операций)
+     */
+    interface ClientKeys {
+        Long getId();
+        String getUuid();
+        UUID getKeycloakUserId();
+        String getEmail();
+    }
+    
+    /**
+     * Активные клиенты, последний раз подключавшиеся до cutoff, самые давние первыми
+     * Диапазон (true, < cutoff) по idx_active_last_connected_created в порядке индекса,
+     * без сортировки; NULL в диапазон не входят. Без загрузки сущностей
+     */
+    @Query("SELECT c.id AS id, c.uuid AS uuid, c.keycloakUserId AS keycloakUserId, c.email AS email " +
+           "FROM VpnClient c WHERE c.isActive = true AND c.lastConnectedAt < :cutoff " +
+           "ORDER BY c.lastConnectedAt")
+    List<ClientKeys> findStaleConnected(@Param("cutoff") LocalDateTime cutoff, Limit limit);
+    
+    /**
+     * Активные клиенты без единого подключения, созданные до cutoff
+     * Равенство (true, NULL) и диапазон по created_at - тот же индекс, третья колонка
+     */
+    @Query("SELECT c.id AS id, c.uuid AS uuid, c.keycloakUserId AS keycloakUserId, c.email AS email " +
+           "FROM VpnClient c WHERE c.isActive = true AND c.lastConnectedAt IS NULL AND c.createdAt < :cutoff " +
+           "ORDER BY c.createdAt")
+    List<ClientKeys> findNeverConnected(@Param("cutoff") LocalDateTime cutoff, Limit limit);
+    
+    /**
+     * Отключить порцию одним UPDATE (строки по первичному ключу)
+     * Условие устаревания проверяется повторно: клиент мог подключиться после выборки
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE VpnClient c SET c.isActive = false WHERE c.id IN :ids AND c.isActive = true " +
+           "AND (c.lastConnectedAt < :cutoff OR (c.lastConnectedAt IS NULL AND c.createdAt < :cutoff))")
+    int deactivateStale(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff);
+    
+    /**
+     * Какие из клиентов сейчас отключены
+     */
+    @Query("SELECT c.id FROM VpnClient c WHERE c.id IN :ids AND c.isActive = false")
+    List<Long> findInactiveIds(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Какие из клиентов снова активны (вернулись через QR во время отключения)
+     */
+    @Query("SELECT c FROM VpnClient c WHERE c.id IN :ids AND c.isActive = true")
+    List<VpnClient> findActiveByIds(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Отметить подключение пользователей одним UPDATE
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE VpnClient c SET c.lastConnectedAt = :at WHERE c.uuid IN :uuids")
+    int touchLastConnected(@Param("uuids") Collection<String> uuids, @Param("at") LocalDateTime at);
 }
@@ -0,0 +1,152 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Контроль допуска на выдачу клиентов (GET /)
+ *
+ * Token bucket без блокировок в виде GCRA: корзина = одно число,
+ * "теоретическое время прибытия" следующего запроса, обновляемое через CAS.
+ * Корзины пользователей лежат в AtomicLongArray по хэшу ключа (striped) - память не растёт
+ * с числом пользователей, при коллизии пользователи делят одну корзину.
+ *
+ * Сброс нагрузки: при большом числе pending клиентов или медленном gRPC запросы
+ * отклоняются сразу, до gRPC и генерации QR кода.
+ *
+ * Запрос допускается только если место есть в обеих корзинах: отказ общей корзины
+ * возвращает уже занятое место в корзине пользователя, отклонённый запрос ничего не тратит.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AdmissionControlService implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final PendingClientService pendingClientService;
+    private final XrayGrpcClient xrayGrpcClient;
+    
+    // Точка отсчёта времени: корзины хранят время относительно неё (всегда >= 0)
+    private final long origin = System.nanoTime();
+    
+    private final AtomicLongArray globalBucket = new AtomicLongArray(1);
+    private volatile AtomicLongArray userBuckets;
+    
+    private final LongAdder rejectedRateLimit = new LongAdder();
+    private final LongAdder rejectedOverload = new LongAdder();
+    
+    /**
+     * Решение по запросу
+     */
+    public enum Decision {
+        ADMIT,
+        RATE_LIMITED,   // 429
+        OVERLOADED      // 503
+    }
+    
+    /**
+     * Проверить, можно ли обработать запрос пользователя
+     * @param principalKey имя пользователя или адрес клиента
+     */
+    public Decision tryAdmit(String principalKey) {
+        VpnProperties.Admission settings = vpnProperties.getAdmission();
+        if (!settings.isEnabled()) {
+            return Decision.ADMIT;
+        }
+        
+        // Сначала самая дешёвая проверка перегрузки
+        if (pendingClientService.count() >= settings.getMaxPending()
+                || xrayGrpcClient.getAddUserLatency().compareTo(settings.getMaxGrpcLatency()) > 0) {
+            rejectedOverload.increment();
+            return Decision.OVERLOADED;
+        }
+        
+        long now = System.nanoTime() - origin;
+        
+        long userInterval = TimeUnit.MINUTES.toNanos(1) / Math.max(1, settings.getPerUserPerMinute());
+        AtomicLongArray buckets = userBuckets(Math.max(1, settings.getStripes()));
+        int stripe = Math.floorMod(principalKey.hashCode(), buckets.length());
+        if (!acquire(buckets, stripe, now, userInterval, settings.getPerUserBurst())) {
+            rejectedRateLimit.increment();
+            return Decision.RATE_LIMITED;
+        }
+        
+        long globalInterval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, settings.getGlobalPerSecond());
+        if (!acquire(globalBucket, 0, now, globalInterval, settings.getGlobalBurst())) {
+            // Запрос не обработан - место пользователя не должно пропасть
+            release(buckets, stripe, userInterval);
+            rejectedOverload.increment();
+            return Decision.OVERLOADED;
+        }
+        
+        return Decision.ADMIT;
+    }
+    
+    public long getRejectedRateLimitCount() {
+        return rejectedRateLimit.sum();
+    }
+    
+    public long getRejectedOverloadCount() {
+        return rejectedOverload.sum();
+    }
+    
+    @Override
+    public String statusSection() {
+        return "admission";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        Map<String, Long> admission = new LinkedHashMap<>();
+        admission.put("rateLimited", rejectedRateLimit.sum());
+        admission.put("overloaded", rejectedOverload.sum());
+        return admission;
+    }
+    
+    /**
+     * GCRA над ячейкой массива: допускаем, если очередь не длиннее burst интервалов
+     */
+    private boolean acquire(AtomicLongArray buckets, int index, long now, long interval, int burst) {
+        long tolerance = interval * Math.max(0, burst - 1);
+        while (true) {
+            long tat = buckets.get(index);
+            long start = Math.max(tat, now);
+            if (start - now > tolerance) {
+                return false;
+            }
+            if (buckets.compareAndSet(index, tat, start + interval)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Вернуть место, занятое acquire: TAT сдвигается назад на тот же интервал
+     * Если корзина за это время опустела (TAT в прошлом), результат тот же - пустая корзина
+     */
+    private static void release(AtomicLongArray buckets, int index, long interval) {
+        buckets.addAndGet(index, -interval);
+    }
+    
+    private AtomicLongArray userBuckets(int stripes) {
+        AtomicLongArray buckets = userBuckets;
+        if (buckets == null || buckets.length() != stripes) {
+            synchronized (this) {
+                buckets = userBuckets;
+                if (buckets == null || buckets.length() != stripes) {
+                    buckets = new AtomicLongArray(stripes);
+                    userBuckets = buckets;
+                }
+            }
+        }
+        return buckets;
+    }
+}
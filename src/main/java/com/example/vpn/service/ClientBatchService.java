@@ -0,0 +1,261 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.VpnClient;
+import com.google.gson.Gson;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Пакетная выдача доступа (POST /api/clients/batch): N клиентов без аккаунтов Keycloak
+ * (origin = BATCH, keycloakUserId и email - null)
+ *
+ * Все пользователи добавляются в Xray одной сессией gRPC (XrayGrpcClient.addUsers),
+ * затем сохраняются в БД одной транзакцией, сразу активными - без pending и ожидания подключения.
+ * Ответ - NDJSON со ссылками или ZIP с QR кодами. QR рисуются на всех ядрах, но в полёте
+ * не больше QR_WINDOW_PER_CPU картинок на ядро: готовые сразу пишутся в ответ по порядку,
+ * память не растёт с размером пачки.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClientBatchService {
+    
+    // deviceInfo - 255 символов, с запасом под " #1000"
+    private static final int MAX_LABEL_LENGTH = 200;
+    private static final int QR_SIZE = 400;
+    private static final int QR_WINDOW_PER_CPU = 2;
+    
+    private final VpnProperties vpnProperties;
+    private final VpnClientService vpnClientService;
+    private final PolicyTierService policyTierService;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final ConfigService configService;
+    private final QrCodeService qrCodeService;
+    
+    private final Gson gson = new Gson();
+    
+    public enum QrFormat {
+        PNG,
+        SVG
+    }
+    
+    /**
+     * Выданный клиент: ссылки по всем транспортам, основная (TCP) первой
+     */
+    public record BatchClient(String uuid, String deviceInfo, List<ConfigService.LinkProfile> links) {
+    }
+    
+    /**
+     * @param failed сколько клиентов не удалось добавить в Xray (в БД их нет)
+     */
+    public record Result(List<BatchClient> clients, int failed) {
+    }
+    
+    private record QrFile(String name, byte[] data, boolean stored) {
+    }
+    
+    /**
+     * Добавить count клиентов в Xray и БД
+     * @param label подпись устройства, клиенты нумеруются: "label #1", "label #2", ...
+     * @param tier тариф (уровень политики Xray), null - тариф по умолчанию
+     */
+    public Result provision(int count, String label, String tier) throws InterruptedException {
+        int maxBatchSize = vpnProperties.getAdmin().getMaxBatchSize();
+        if (count < 1 || count > maxBatchSize) {
+            throw new IllegalArgumentException("count: от 1 до " + maxBatchSize);
+        }
+        if (label == null || label.isBlank() || label.length() > MAX_LABEL_LENGTH) {
+            throw new IllegalArgumentException("label: от 1 до " + MAX_LABEL_LENGTH + " символов");
+        }
+        
+        long start = System.nanoTime();
+        int level = policyTierService.levelFor(tier);
+        
+        List<String> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uuids.add(UUID.randomUUID().toString());
+        }
+        
+        Set<String> failed = xrayGrpcClient.addUsers(uuids, level);
+        // Не добавленные на часть inbounds - убрать с остальных, в БД они не попадут
+        // (все с ошибкой - Xray недоступен, убирать нечего)
+        if (failed.size() < count) {
+            removeQuietly(failed);
+        }
+        
+        List<VpnClient> clients = new ArrayList<>(count - failed.size());
+        for (String uuid : uuids) {
+            if (failed.contains(uuid)) {
+                continue;
+            }
+            VpnClient client = new VpnClient();
+            client.setUuid(uuid);
+            client.setOrigin(VpnClient.Origin.BATCH);
+            client.setDeviceInfo(label + " #" + (clients.size() + 1));
+            client.setPolicyLevel(level);
+            client.setIsActive(true);
+            clients.add(client);
+        }
+        
+        if (clients.isEmpty()) {
+            throw new IllegalStateException("Не удалось добавить в Xray ни одного клиента из " + count);
+        }
+        
+        try {
+            vpnClientService.saveAllClients(clients);
+        } catch (RuntimeException e) {
+            // Без записи в БД клиенты пропадут при перезапуске Xray - не выдаём их
+            log.error("❌ Пакет из {} клиентов не сохранён в БД, удаляем из Xray", clients.size(), e);
+            removeQuietly(clients.stream().map(VpnClient::getUuid).toList());
+            throw e;
+        }
+        
+        List<BatchClient> result = new ArrayList<>(clients.size());
+        for (VpnClient client : clients) {
+            result.add(new BatchClient(client.getUuid(), client.getDeviceInfo(),
+                configService.generateLinks(client.getUuid(), client.getDeviceInfo())));
+        }
+        
+        log.info("📦 Пакетная выдача: {} клиентов ('{}', уровень {}), ошибок {}, за {} мс",
+            clients.size(), label, level, failed.size(), (System.nanoTime() - start) / 1_000_000);
+        return new Result(result, failed.size());
+    }
+    
+    /**
+     * NDJSON: одна строка - один клиент со всеми ссылками
+     */
+    public void writeNdjson(List<BatchClient> clients, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeLines(clients, writer);
+        writer.flush();
+    }
+    
+    /**
+     * ZIP: links.ndjson и QR код основной ссылки каждого клиента (qr/0001-<uuid>.png|svg)
+     * PNG уже сжат - кладётся без сжатия (STORED), SVG сжимается
+     */
+    public void writeZip(List<BatchClient> clients, QrFormat format, OutputStream out)
+            throws IOException, InterruptedException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        
+        zip.putNextEntry(new ZipEntry("links.ndjson"));
+        Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+        writeLines(clients, writer);
+        writer.flush();
+        zip.closeEntry();
+        
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Deque<Future<QrFile>> window = new ArrayDeque<>();
+            for (int i = 0; i < clients.size(); i++) {
+                if (window.size() >= threads * QR_WINDOW_PER_CPU) {
+                    writeEntry(zip, await(window.poll()));
+                }
+                window.add(executor.submit(renderTask(i + 1, clients.get(i), format)));
+            }
+            while (!window.isEmpty()) {
+                writeEntry(zip, await(window.poll()));
+            }
+        } finally {
+            // Клиент отключился посреди ответа - не дорисовывать оставшееся окно
+            executor.shutdownNow();
+        }
+        zip.finish();
+    }
+    
+    private Callable<QrFile> renderTask(int number, BatchClient client, QrFormat format) {
+        String name = "qr/%04d-%s".formatted(number, client.uuid());
+        String link = client.links().get(0).link();
+        return switch (format) {
+            case PNG -> () -> new QrFile(name + ".png", qrCodeService.generateQrCode(link, QR_SIZE, QR_SIZE), true);
+            case SVG -> () -> new QrFile(name + ".svg",
+                qrCodeService.generateQrSvg(link).getBytes(StandardCharsets.UTF_8), false);
+        };
+    }
+    
+    private void writeLines(List<BatchClient> clients, Writer writer) throws IOException {
+        for (BatchClient client : clients) {
+            gson.toJson(toMap(client), writer);
+            writer.write('\n');
+        }
+    }
+    
+    private static Map<String, Object> toMap(BatchClient client) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("uuid", client.uuid());
+        map.put("deviceInfo", client.deviceInfo());
+        map.put("vlessLink", client.links().get(0).link());
+        Map<String, String> transports = new LinkedHashMap<>();
+        for (ConfigService.LinkProfile profile : client.links().subList(1, client.links().size())) {
+            transports.put(profile.network(), profile.link());
+        }
+        map.put("transports", transports);
+        return map;
+    }
+    
+    private static QrFile await(Future<QrFile> future) throws InterruptedException, IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IllegalStateException("Не удалось сгенерировать QR код: " + cause.getMessage(), cause);
+        }
+    }
+    
+    /**
+     * STORED требует размер и CRC до записи данных - картинка уже целиком в памяти
+     */
+    private static void writeEntry(ZipOutputStream zip, QrFile file) throws IOException {
+        ZipEntry entry = new ZipEntry(file.name());
+        if (file.stored()) {
+            CRC32 crc = new CRC32();
+            crc.update(file.data());
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(file.data().length);
+            entry.setCompressedSize(file.data().length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(file.data());
+        zip.closeEntry();
+    }
+    
+    private void removeQuietly(Iterable<String> uuids) {
+        for (String uuid : uuids) {
+            try {
+                xrayGrpcClient.removeUser(uuid);
+            } catch (RuntimeException e) {
+                log.debug("Пользователь {} не удалён из Xray: {}", uuid, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.ClientSummary;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Чтение клиентов для админского API без загрузки всей таблицы
+ *
+ * Список - keyset (seek) пагинация: следующая страница начинается строго после последней строки
+ * предыдущей (WHERE id > :afterId), а не через OFFSET - стоимость страницы не растёт с её номером.
+ * Для сортировки по createdAt ключ составной (createdAt, id): createdAt не уникален.
+ * Выгрузка - поток строк через курсор PostgreSQL (fetch size внутри транзакции),
+ * в памяти одновременно только одна порция.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClientQueryService {
+    
+    private static final String SELECT = "SELECT new com.example.vpn.model.ClientSummary(" +
+        "c.id, c.uuid, c.keycloakUserId, c.email, c.origin, c.deviceInfo, c.policyLevel, c.isActive, " +
+        "c.createdAt, c.firstConnectedAt, c.lastConnectedAt) FROM VpnClient c";
+    
+    private final VpnProperties vpnProperties;
+    private final EntityManager entityManager;
+    
+    public enum SortKey {
+        ID,
+        CREATED_AT
+    }
+    
+    /**
+     * Условия выборки, null - без условия
+     * @param connectedFrom lastConnectedAt не раньше (включительно)
+     * @param connectedTo lastConnectedAt раньше (не включительно)
+     * @param emailPrefix начало email
+     */
+    public record Filter(Boolean active, LocalDateTime connectedFrom, LocalDateTime connectedTo, String emailPrefix) {
+    }
+    
+    /**
+     * Страница списка
+     * @param nextCursor курсор следующей страницы (null - страница последняя)
+     */
+    public record Page(List<ClientSummary> items, String nextCursor) {
+    }
+    
+    /**
+     * Позиция после последней строки страницы
+     */
+    private record Cursor(long id, LocalDateTime createdAt) {
+    }
+    
+    /**
+     * Страница клиентов после cursor
+     */
+    @Transactional(readOnly = true)
+    public Page list(Filter filter, SortKey sort, boolean descending, String cursor, int limit) {
+        int pageSize = Math.clamp(limit, 1, vpnProperties.getAdmin().getMaxPageSize());
+        TypedQuery<ClientSummary> query = build(filter, sort, descending, decode(cursor, sort));
+        
+        // Одна лишняя строка - есть ли следующая страница, без COUNT(*)
+        query.setMaxResults(pageSize + 1);
+        List<ClientSummary> rows = query.getResultList();
+        
+        if (rows.size() <= pageSize) {
+            return new Page(rows, null);
+        }
+        List<ClientSummary> items = rows.subList(0, pageSize);
+        return new Page(List.copyOf(items), encode(items.get(items.size() - 1), sort));
+    }
+    
+    /**
+     * Все клиенты по фильтру в порядке sort, по одной строке в sink
+     * Транзакция держит курсор открытым до конца выгрузки
+     * @return число выгруженных строк
+     */
+    @Transactional(readOnly = true)
+    public long export(Filter filter, SortKey sort, Consumer<ClientSummary> sink) {
+        TypedQuery<ClientSummary> query = build(filter, sort, false, null);
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, vpnProperties.getAdmin().getExportFetchSize());
+        
+        long start = System.nanoTime();
+        long count = 0;
+        try (Stream<ClientSummary> rows = query.getResultStream()) {
+            for (ClientSummary row : (Iterable<ClientSummary>) rows::iterator) {
+                sink.accept(row);
+                count++;
+            }
+        }
+        log.info("📤 Выгрузка клиентов: {} строк за {} мс", count, (System.nanoTime() - start) / 1_000_000);
+        return count;
+    }
+    
+    private TypedQuery<ClientSummary> build(Filter filter, SortKey sort, boolean descending, Cursor after) {
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> params = new LinkedHashMap<>();
+        
+        if (filter.active() != null) {
+            conditions.add("c.isActive = :active");
+            params.put("active", filter.active());
+        }
+        if (filter.connectedFrom() != null) {
+            conditions.add("c.lastConnectedAt >= :connectedFrom");
+            params.put("connectedFrom", filter.connectedFrom());
+        }
+        if (filter.connectedTo() != null) {
+            conditions.add("c.lastConnectedAt < :connectedTo");
+            params.put("connectedTo", filter.connectedTo());
+        }
+        if (filter.emailPrefix() != null && !filter.emailPrefix().isBlank()) {
+            conditions.add("c.email LIKE :emailPrefix ESCAPE '\\'");
+            params.put("emailPrefix", escapeLike(filter.emailPrefix().trim()) + "%");
+        }
+        
+        String compare = descending ? "<" : ">";
+        if (after != null && sort == SortKey.ID) {
+            conditions.add("c.id " + compare + " :afterId");
+            params.put("afterId", after.id());
+        } else if (after != null) {
+            conditions.add("(c.createdAt " + compare + " :afterCreatedAt " +
+                "OR (c.createdAt = :afterCreatedAt AND c.id " + compare + " :afterId))");
+            params.put("afterCreatedAt", after.createdAt());
+            params.put("afterId", after.id());
+        }
+        
+        StringBuilder jpql = new StringBuilder(SELECT);
+        if (!conditions.isEmpty()) {
+            jpql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        String direction = descending ? " DESC" : " ASC";
+        jpql.append(sort == SortKey.ID
+            ? " ORDER BY c.id" + direction
+            : " ORDER BY c.createdAt" + direction + ", c.id" + direction);
+        
+        TypedQuery<ClientSummary> query = entityManager.createQuery(jpql.toString(), ClientSummary.class);
+        params.forEach(query::setParameter);
+        return query;
+    }
+    
+    /**
+     * Курсор - base64url от "id" или "createdAt|id", клиент передаёт его как есть
+     */
+    private static String encode(ClientSummary last, SortKey sort) {
+        String raw = sort == SortKey.ID
+            ? String.valueOf(last.id())
+            : last.createdAt() + "|" + last.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static Cursor decode(String cursor, SortKey sort) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (sort == SortKey.ID) {
+                return new Cursor(Long.parseLong(raw), null);
+            }
+            int separator = raw.lastIndexOf('|');
+            return new Cursor(Long.parseLong(raw.substring(separator + 1)), LocalDateTime.parse(raw.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Некорректный cursor для сортировки " + sort, e);
+        }
+    }
+    
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.stereotype.Service;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * Сервис для генерации конфигурации клиента
@@ -20,6 +21,14 @@ import java.nio.charset.StandardCharsets;
 public class ConfigService {
     
     private final VpnProperties vpnProperties;
+    private final TransportService transportService;
+    
+    /**
+     * Ссылка для одного inbound
+     * @param name название для списка профилей на странице (TCP, XHTTP, gRPC)
+     */
+    public record LinkProfile(String name, String network, String link) {
+    }
     
     /**
      * Генерирует VLESS ссылку для конкретного клиента
@@ -29,20 +38,46 @@ public class ConfigService {
      *            &pbk=PUBLIC_KEY&fp=chrome&sni=www.microsoft.com&sid=SHORT_ID&type=tcp#NAME
      */
     public String generateVlessLink(String uuid, String deviceInfo) {
+        return generateLink(uuid, deviceInfo, transportService.inbounds().get(0));
+    }
+    
+    /**
+     * Ссылки на все inbounds: основной TCP первым, затем vpn.transports
+     * XHTTP/gRPC: type=xhttp&path=...&mode=... или type=grpc&serviceName=..., без flow
+     */
+    public List<LinkProfile> generateLinks(String uuid, String deviceInfo) {
+        return transportService.inbounds().stream()
+            .map(profile -> new LinkProfile(profileName(profile), profile.network(),
+                generateLink(uuid, deviceInfo, profile)))
+            .toList();
+    }
+    
+    private String generateLink(String uuid, String deviceInfo, TransportService.InboundProfile profile) {
         // Базовая часть: vless://UUID@адрес:порт
         String base = String.format("vless://%s@%s:%d",
             uuid,
             vpnProperties.getServerAddress(),
-            vpnProperties.getXrayPort()
+            profile.port()
         );
         
         // Параметры подключения
-        StringBuilder params = new StringBuilder("?encryption=none&type=tcp");
+        StringBuilder params = new StringBuilder("?encryption=none&type=").append(profile.network());
+        
+        VpnProperties.Transport transport = profile.transport();
+        if (transport != null && transport.getNetwork() == VpnProperties.Transport.Network.XHTTP) {
+            params.append("&path=").append(URLEncoder.encode(transport.getPath(), StandardCharsets.UTF_8));
+            params.append("&mode=").append(transport.getMode());
+        } else if (transport != null && transport.getNetwork() == VpnProperties.Transport.Network.GRPC) {
+            params.append("&serviceName=").append(URLEncoder.encode(transport.getServiceName(), StandardCharsets.UTF_8));
+            params.append("&mode=multi");
+        }
         
         if (vpnProperties.getReality().isEnabled()) {
             // Reality параметры
             params.append("&security=reality");
-            params.append("&flow=xtls-rprx-vision");
+            if (!profile.flow().isEmpty()) {
+                params.append("&flow=").append(profile.flow());
+            }
             params.append("&pbk=").append(vpnProperties.getReality().getPublicKey());
             params.append("&fp=").append(vpnProperties.getReality().getFingerprint());
             
@@ -61,7 +96,7 @@ public class ConfigService {
                 params.append("&sid=").append(shortId);
             }
             
-            log.info("✅ Сгенерирована VLESS+Reality ссылка для клиента UUID: {}", uuid);
+            log.debug("✅ Сгенерирована VLESS+Reality ссылка ({}) для клиента UUID: {}", profile.network(), uuid);
         } else {
             // Без Reality (небезопасно!)
             params.append("&security=none");
@@ -70,6 +105,9 @@ public class ConfigService {
         
         // Название подключения (будет отображаться в клиенте)
         String name = deviceInfo != null ? deviceInfo : "VPN-Client";
+        if (!profile.isPrimary()) {
+            name = name + " (" + profileName(profile) + ")";
+        }
 
         name = URLEncoder.encode(name, StandardCharsets.UTF_8);
 
@@ -78,4 +116,12 @@ public class ConfigService {
         log.debug("VLESS ссылка: {}", vlessLink);
         return vlessLink;
     }
+    
+    private static String profileName(TransportService.InboundProfile profile) {
+        return switch (profile.network()) {
+            case "xhttp" -> "XHTTP";
+            case "grpc" -> "gRPC";
+            default -> "TCP";
+        };
+    }
 }
@@ -0,0 +1,115 @@
+package com.example.vpn.service;
+
+import com.example.vpn.event.PresenceChangedEvent;
+import com.example.vpn.model.PendingClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SSE уведомление страницы с QR кодом о первом подключении клиента
+ *
+ * Подписки лежат в карте UUID → emitters: пока клиент не подключился, поток не занимает
+ * ни потоков, ни запросов к Xray (асинхронный запрос сервлета).
+ * Источник - общий снимок OnlinePresenceService: на каждом тике обходятся только
+ * появившиеся онлайн UUID, а не все открытые потоки.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ConnectionEventService implements StatusContributor {
+    
+    private static final Duration MIN_TIMEOUT = Duration.ofSeconds(30);
+    
+    private final OnlinePresenceService onlinePresenceService;
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    
+    /**
+     * Подписаться на подключение pending клиента
+     * Поток закрывается после события connected или по истечении TTL pending клиента
+     */
+    public SseEmitter subscribe(PendingClient client) {
+        String uuid = client.getUuid();
+        Duration untilExpiry = Duration.between(LocalDateTime.now(), client.getExpiresAt());
+        SseEmitter emitter = new SseEmitter(Math.max(untilExpiry.toMillis(), MIN_TIMEOUT.toMillis()));
+        
+        // Сначала регистрация, потом проверка: событие между ними иначе потерялось бы
+        subscribers.compute(uuid, (key, emitters) -> {
+            List<SseEmitter> list = emitters != null ? emitters : new CopyOnWriteArrayList<>();
+            list.add(emitter);
+            return list;
+        });
+        Runnable unsubscribe = () -> detach(uuid, emitter);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        
+        // Клиент мог подключиться до открытия страницы. Если событие уже забрало emitter,
+        // detach вернёт false - уведомление отправит onPresenceChanged
+        if (onlinePresenceService.isOnline(uuid) && detach(uuid, emitter)) {
+            sendConnected(emitter);
+        }
+        return emitter;
+    }
+    
+    public int getSubscriberCount() {
+        return subscribers.values().stream().mapToInt(List::size).sum();
+    }
+    
+    @Override
+    public String statusSection() {
+        return "connectionSubscribers";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        return getSubscriberCount();
+    }
+    
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        for (String uuid : event.joined()) {
+            List<SseEmitter> emitters = subscribers.remove(uuid);
+            if (emitters != null) {
+                log.debug("📡 Клиент {} подключился, уведомляем {} страниц", uuid, emitters.size());
+                emitters.forEach(this::sendConnected);
+            }
+        }
+    }
+    
+    private void sendConnected(SseEmitter emitter) {
+        try {
+            emitter.send(SseEmitter.event().name("connected").data("connected"));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+    
+    /**
+     * Убрать emitter из подписок
+     * @return true - emitter был в подписках (его ещё не уведомили)
+     */
+    private boolean detach(String uuid, SseEmitter emitter) {
+        AtomicBoolean removed = new AtomicBoolean();
+        subscribers.computeIfPresent(uuid, (key, emitters) -> {
+            removed.set(emitters.remove(emitter));
+            return emitters.isEmpty() ? null : emitters;
+        });
+        return removed.get();
+    }
+}
@@ -1,21 +1,24 @@
 package com.example.vpn.service;
 
+import com.example.vpn.event.PresenceChangedEvent;
 import com.example.vpn.model.PendingClient;
 import com.example.vpn.model.VpnClient;
-import com.example.vpn.repository.VpnClientRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 
 /**
  * Сервис мониторинга подключений клиентов
- * Проверяет pending клиентов через 5 минут после создания
+ * Проверяет pending клиентов в промежуточных точках и сразу, как только клиент появился онлайн.
+ * Истёкших клиентов пакетно обрабатывает PendingExpirySweeper через settleExpired
  */
 @Slf4j
 @Service
@@ -23,75 +26,145 @@ import java.time.ZoneId;
 @RequiredArgsConstructor
 public class ConnectionMonitorService {
     
+    private static final int LOCK_STRIPES = 64;
+    
     private final PendingClientService pendingClientService;
     private final XrayGrpcClient xrayGrpcClient;
-    private final VpnClientRepository vpnClientRepository;
+    private final VpnClientService vpnClientService;
     private final TaskScheduler taskScheduler;
+    private final PendingTtlPolicy pendingTtlPolicy;
+    
+    // Проверки одного клиента (по расписанию и по событию онлайн) не должны идти параллельно
+    private final Object[] locks = createLocks();
     
     /**
-     * Запланировать проверку клиента через 5 минут
+     * Запланировать промежуточные проверки клиента
+     * Истечение срока обрабатывает PendingExpirySweeper
      */
     public void scheduleCheck(String uuid) {
         PendingClient client = pendingClientService.get(uuid)
             .orElseThrow(() -> new IllegalStateException("Pending клиент не найден: " + uuid));
         
-        // Планируем задачу на момент истечения
-        Instant checkTime = client.getExpiresAt()
-            .atZone(ZoneId.systemDefault())
-            .toInstant();
-        
-        taskScheduler.schedule(() -> checkClient(uuid), checkTime);
-        
-        log.info("⏰ Запланирована проверка клиента {} на {}", uuid, client.getExpiresAt());
+        Duration ttl = Duration.between(client.getCreatedAt(), client.getExpiresAt());
+        for (Duration point : pendingTtlPolicy.checkPoints(ttl)) {
+            taskScheduler.schedule(() -> checkClient(uuid), toInstant(client.getCreatedAt().plus(point)));
+        }
+        log.info("⏰ Запланированы проверки клиента {}, истекает {}", uuid, client.getExpiresAt());
     }
     
     /**
-     * Проверить клиента: подключился или нет
+     * Клиент появился онлайн - проверяем сразу, не дожидаясь точки проверки
      */
-    private void checkClient(String uuid) {
-        log.info("🔍 Проверка клиента UUID: {}", uuid);
-        
-        // Проверяем что клиент всё ещё в pending
-        PendingClient pendingClient = pendingClientService.get(uuid).orElse(null);
-        if (pendingClient == null) {
-            log.info("ℹ️ Клиент {} уже обработан или удалён", uuid);
-            return;
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        for (String uuid : event.joined()) {
+            if (pendingClientService.exists(uuid)) {
+                taskScheduler.schedule(() -> checkClient(uuid), Instant.now());
+            }
         }
-        
-        try {
-            // Запрашиваем статистику у Xray
-            XrayGrpcClient.UserStats stats = xrayGrpcClient.getUserStats(uuid);
+    }
+    
+    /**
+     * Решение по истёкшему клиенту по уже полученной статистике (для пакетного прохода)
+     * @return true - клиента нужно удалить из Xray; false - сохранён в БД или срок продлён
+     */
+    public boolean settleExpired(PendingClient pendingClient, XrayGrpcClient.UserStats stats) {
+        String uuid = pendingClient.getUuid();
+        synchronized (lockFor(uuid)) {
+            if (!pendingClientService.exists(uuid) || !pendingClient.isExpired()) {
+                return false;
+            }
+            if (stats.hasTraffic() && !stats.isPartial()) {
+                promote(pendingClient, stats);
+                return false;
+            }
+            if (stats.isPartial() && extendGrace(pendingClient)) {
+                log.info("⏳ Клиент {} с частичным трафиком ({}), срок продлён до {}",
+                    uuid, stats, pendingClient.getExpiresAt());
+                return false;
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Промежуточная проверка: подключился - сохраняем в БД, нет - ждём дальше
+     */
+    private void checkClient(String uuid) {
+        synchronized (lockFor(uuid)) {
+            // Проверяем что клиент всё ещё в pending
+            PendingClient pendingClient = pendingClientService.get(uuid).orElse(null);
+            if (pendingClient == null) {
+                log.debug("Клиент {} уже обработан или удалён", uuid);
+                return;
+            }
             
-            if (stats.hasTraffic()) {
-                // Клиент подключился! Сохраняем в БД
-                log.info("✅ Клиент {} ПОДКЛЮЧИЛСЯ! Uplink: {}, Downlink: {}", 
-                    uuid, stats.getUplink(), stats.getDownlink());
-                
-                VpnClient vpnClient = new VpnClient();
-                vpnClient.setUuid(uuid);
-                vpnClient.setDeviceInfo(pendingClient.getDeviceInfo());
-                vpnClient.setIsActive(true);
-                vpnClient.setFirstConnectedAt(LocalDateTime.now());
-                vpnClient.setLastConnectedAt(LocalDateTime.now());
-                
-                vpnClientRepository.save(vpnClient);
-                pendingClientService.remove(uuid);
+            try {
+                // Запрашиваем статистику у Xray
+                XrayGrpcClient.UserStats stats = xrayGrpcClient.getUserStats(uuid);
                 
-                log.info("💾 Клиент {} сохранён в БД", uuid);
+                if (stats.hasTraffic() && !stats.isPartial()) {
+                    promote(pendingClient, stats);
+                } else {
+                    log.debug("Клиент {} ещё не подключился: {}", uuid, stats);
+                }
                 
-            } else {
-                // Клиент НЕ подключился за 5 минут - удаляем
-                log.warn("⏱️ Клиент {} НЕ подключился за 5 минут. Удаляем...", uuid);
-                
-                xrayGrpcClient.removeUser(uuid);
-                pendingClientService.remove(uuid);
-                
-                log.info("🗑️ Клиент {} удалён из Xray и pending", uuid);
+            } catch (Exception e) {
+                log.error("❌ Ошибка при проверке клиента {}", uuid, e);
+                // В случае ошибки оставляем клиента в pending
             }
-            
-        } catch (Exception e) {
-            log.error("❌ Ошибка при проверке клиента {}", uuid, e);
-            // В случае ошибки оставляем клиента в pending
         }
     }
+    
+    private void promote(PendingClient pendingClient, XrayGrpcClient.UserStats stats) {
+        String uuid = pendingClient.getUuid();
+        log.info("✅ Клиент {} ПОДКЛЮЧИЛСЯ! Uplink: {}, Downlink: {}",
+            uuid, stats.getUplink(), stats.getDownlink());
+        
+        // Клиент пользователя Keycloak привязывается к его учётной записи
+        VpnClient vpnClient;
+        if (pendingClient.getKeycloakUserId() != null) {
+            vpnClient = vpnClientService.getOrCreateClient(
+                pendingClient.getKeycloakUserId(), pendingClient.getEmail(), uuid);
+        } else {
+            vpnClient = new VpnClient();
+            vpnClient.setUuid(uuid);
+        }
+        vpnClient.setDeviceInfo(pendingClient.getDeviceInfo());
+        vpnClient.setPolicyLevel(pendingClient.getPolicyLevel());
+        vpnClient.setIsActive(true);
+        vpnClient.setFirstConnectedAt(LocalDateTime.now());
+        vpnClient.setLastConnectedAt(LocalDateTime.now());
+        
+        vpnClientService.saveClient(vpnClient);
+        pendingClientService.remove(uuid);
+        pendingTtlPolicy.recordRelease(true, Duration.between(pendingClient.getCreatedAt(), LocalDateTime.now()));
+        
+        log.info("💾 Клиент {} сохранён в БД", uuid);
+    }
+    
+    private boolean extendGrace(PendingClient pendingClient) {
+        if (pendingClient.getGraceExtensions() >= pendingTtlPolicy.getMaxGraceExtensions()) {
+            return false;
+        }
+        pendingClient.setGraceExtensions(pendingClient.getGraceExtensions() + 1);
+        pendingClient.setExpiresAt(LocalDateTime.now().plus(pendingTtlPolicy.getGraceExtension()));
+        return true;
+    }
+    
+    private Object lockFor(String uuid) {
+        return locks[Math.floorMod(uuid.hashCode(), LOCK_STRIPES)];
+    }
+    
+    private static Instant toInstant(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant();
+    }
+    
+    private static Object[] createLocks() {
+        Object[] stripes = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        return stripes;
+    }
 }
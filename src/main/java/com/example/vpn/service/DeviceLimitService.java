@@ -0,0 +1,133 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.event.PresenceChangedEvent;
+import com.example.vpn.model.VpnClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничение одновременных устройств на один VLESS UUID
+ *
+ * Проверяются только пользователи, у которых на этом тике изменилось присутствие:
+ * появились онлайн или изменился набор IP. IP берутся из снимка OnlinePresenceService
+ * (GetStatsOnlineIpList), отдельных запросов к Xray нет.
+ * Нарушитель временно удаляется из Xray и возвращается после blockDuration.
+ * Перезапуск или hot swap Xray возвращает заблокированных раньше срока - конфиг строится из БД.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeviceLimitService implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final OnlinePresenceService onlinePresenceService;
+    private final VpnClientService vpnClientService;
+    private final XrayGrpcClient xrayGrpcClient;
+    
+    // UUID → когда вернуть в Xray
+    private final Map<String, Instant> blocked = new ConcurrentHashMap<>();
+    private final LongAdder blockCount = new LongAdder();
+    
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        VpnProperties.DeviceLimit settings = vpnProperties.getDeviceLimit();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        
+        Set<String> changed = new HashSet<>(event.joined());
+        changed.addAll(event.ipsChanged());
+        for (String uuid : changed) {
+            int devices = onlinePresenceService.getIps(uuid).size();
+            int limit = limitFor(uuid, settings);
+            if (devices > limit && !blocked.containsKey(uuid)) {
+                block(uuid, devices, limit, settings);
+            }
+        }
+    }
+    
+    /**
+     * Вернуть в Xray пользователей, у которых истекла блокировка
+     */
+    @Scheduled(fixedDelayString = "#{@vpnProperties.deviceLimit.releaseInterval.toMillis()}")
+    public void releaseExpired() {
+        if (blocked.isEmpty()) {
+            return;
+        }
+        
+        Instant now = Instant.now();
+        blocked.forEach((uuid, until) -> {
+            if (until.isAfter(now)) {
+                return;
+            }
+            try {
+                Optional<VpnClient> client = vpnClientService.getClientByUuid(uuid)
+                    .filter(c -> Boolean.TRUE.equals(c.getIsActive()));
+                if (client.isPresent()) {
+                    Integer level = client.get().getPolicyLevel();
+                    xrayGrpcClient.addUser(uuid, level != null ? level : 0);
+                    log.info("🔓 Блокировка по устройствам снята: {}", uuid);
+                }
+                blocked.remove(uuid, until);
+            } catch (Exception e) {
+                log.warn("⚠️ Не удалось вернуть {} в Xray, повтор на следующем проходе: {}", uuid, e.getMessage());
+            }
+        });
+    }
+    
+    public boolean isBlocked(String uuid) {
+        return blocked.containsKey(uuid);
+    }
+    
+    public int getBlockedCount() {
+        return blocked.size();
+    }
+    
+    public long getBlockCount() {
+        return blockCount.sum();
+    }
+    
+    @Override
+    public String statusSection() {
+        return "deviceLimit";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        Map<String, Long> deviceLimit = new LinkedHashMap<>();
+        deviceLimit.put("blockedNow", (long) blocked.size());
+        deviceLimit.put("blocksTotal", blockCount.sum());
+        return deviceLimit;
+    }
+    
+    private void block(String uuid, int devices, int limit, VpnProperties.DeviceLimit settings) {
+        try {
+            xrayGrpcClient.removeUser(uuid);
+            blocked.put(uuid, Instant.now().plus(settings.getBlockDuration()));
+            blockCount.increment();
+            log.warn("🚫 {} устройств при лимите {}: {} отключён на {} мин",
+                devices, limit, uuid, settings.getBlockDuration().toMinutes());
+        } catch (Exception e) {
+            log.error("❌ Не удалось отключить нарушителя {}: {}", uuid, e.getMessage());
+        }
+    }
+    
+    private int limitFor(String uuid, VpnProperties.DeviceLimit settings) {
+        return vpnClientService.getClientByUuid(uuid)
+            .map(VpnClient::getMaxDevices)
+            .orElse(settings.getDefaultMaxDevices());
+    }
+}
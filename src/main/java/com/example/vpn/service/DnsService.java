@@ -0,0 +1,95 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.XrayConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Встроенный DNS Xray
+ *
+ * Без секции dns freedom резолвит каждый домен системным резолвером на каждое соединение.
+ * С секцией dns и domainStrategy=UseIP* ответы берутся из общего кэша Xray,
+ * повторные соединения к тому же домену не ждут резолва.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DnsService {
+    
+    // "127.0.0.1:5353" - адрес и порт; строки со схемой (https://, tcp://) и IPv6 не трогаем
+    private static final Pattern HOST_PORT = Pattern.compile("^([^:/\\[\\]]+):(\\d+)$");
+    
+    private final VpnProperties vpnProperties;
+    
+    public boolean isEnabled() {
+        return vpnProperties.getDns().isEnabled();
+    }
+    
+    /**
+     * Секция dns для конфига
+     * @return null, если встроенный DNS выключен
+     */
+    public XrayConfig.Dns buildDns() {
+        VpnProperties.Dns settings = vpnProperties.getDns();
+        if (!settings.isEnabled()) {
+            return null;
+        }
+        
+        XrayConfig.Dns dns = new XrayConfig.Dns();
+        dns.setServers(settings.getServers().stream().map(DnsService::parseServer).toList());
+        dns.setQueryStrategy(settings.getQueryStrategy());
+        // Значения по умолчанию Xray не пишем
+        dns.setDisableCache(settings.isDisableCache() ? Boolean.TRUE : null);
+        dns.setDisableFallback(settings.isDisableFallback() ? Boolean.TRUE : null);
+        
+        log.info("🌐 Встроенный DNS: {}, queryStrategy={}, кэш {}", settings.getServers(),
+            settings.getQueryStrategy(), settings.isDisableCache() ? "выключен" : "включён");
+        return dns;
+    }
+    
+    /**
+     * Настройки freedom outbound: резолв через встроенный DNS
+     * @return null, если встроенный DNS выключен (freedom по умолчанию AsIs)
+     */
+    public XrayConfig.OutboundSettings freedomSettings() {
+        if (!isEnabled()) {
+            return null;
+        }
+        XrayConfig.OutboundSettings settings = new XrayConfig.OutboundSettings();
+        settings.setDomainStrategy(vpnProperties.getDns().getOutboundDomainStrategy());
+        return settings;
+    }
+    
+    /**
+     * domainStrategy freedom для AddOutbound через gRPC
+     */
+    public com.xray.proxy.freedom.DomainStrategy freedomDomainStrategy() {
+        if (!isEnabled()) {
+            return com.xray.proxy.freedom.DomainStrategy.AS_IS;
+        }
+        return switch (vpnProperties.getDns().getOutboundDomainStrategy()) {
+            case "UseIP" -> com.xray.proxy.freedom.DomainStrategy.USE_IP;
+            case "UseIPv4" -> com.xray.proxy.freedom.DomainStrategy.USE_IP4;
+            case "UseIPv6" -> com.xray.proxy.freedom.DomainStrategy.USE_IP6;
+            default -> com.xray.proxy.freedom.DomainStrategy.AS_IS;
+        };
+    }
+    
+    private static XrayConfig.DnsServer parseServer(String value) {
+        XrayConfig.DnsServer server = new XrayConfig.DnsServer();
+        Matcher matcher = HOST_PORT.matcher(value.trim());
+        if (matcher.matches()) {
+            server.setAddress(matcher.group(1));
+            server.setPort(Integer.parseInt(matcher.group(2)));
+        } else {
+            server.setAddress(value.trim());
+        }
+        return server;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Живая сверка egress outbounds с адресами на интерфейсах
+ *
+ * Адрес пропал (сняли IP, упал интерфейс) - RemoveOutbound, балансировщик его больше не выбирает.
+ * Адрес вернулся - AddOutbound, без перезапуска Xray. Правила маршрутизации не меняются:
+ * закреплённые за пропавшим адресом пользователи временно идут через "direct".
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EgressReconciler implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final EgressService egressService;
+    private final DnsService dnsService;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final XrayService xrayService;
+    private final StartupOrchestrator startupOrchestrator;
+    
+    // Egress outbounds, которые сейчас есть в Xray
+    private volatile Set<String> activeTags = Set.of();
+    
+    @Scheduled(fixedDelayString = "#{@vpnProperties.egress.checkInterval.toMillis()}")
+    public void reconcile() {
+        if (!egressService.isEnabled() || !xrayService.isRunning() || !startupOrchestrator.isReady()) {
+            return;
+        }
+        
+        Map<String, String> desired = egressService.availableOutbounds();
+        Set<String> current = new TreeSet<>();
+        try {
+            for (String tag : xrayGrpcClient.listOutboundTags()) {
+                if (tag.startsWith(EgressService.TAG_PREFIX)) {
+                    current.add(tag);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ Сверка egress пропущена, ListOutbounds недоступен: {}", e.getMessage());
+            return;
+        }
+        
+        Set<String> active = new TreeSet<>();
+        for (String tag : current) {
+            if (desired.containsKey(tag)) {
+                active.add(tag);
+            } else {
+                try {
+                    xrayGrpcClient.removeOutbound(tag);
+                    log.warn("⚠️ Адрес {} пропал с интерфейсов, outbound снят", tag);
+                } catch (RuntimeException e) {
+                    log.warn("⚠️ Не удалось снять outbound {}, повтор при следующей сверке", tag);
+                }
+            }
+        }
+        
+        desired.forEach((tag, address) -> {
+            if (!current.contains(tag)) {
+                try {
+                    xrayGrpcClient.addFreedomOutbound(tag, address, dnsService.freedomDomainStrategy());
+                    active.add(tag);
+                    log.info("🌐 Адрес {} доступен, outbound {} добавлен", address, tag);
+                } catch (RuntimeException e) {
+                    log.warn("⚠️ Не удалось добавить outbound {}, повтор при следующей сверке", tag);
+                }
+            }
+        });
+        
+        activeTags = Set.copyOf(active);
+    }
+    
+    /**
+     * Сколько egress адресов сейчас в работе (по последней сверке)
+     */
+    public int getActiveCount() {
+        return activeTags.size();
+    }
+    
+    @Override
+    public String statusSection() {
+        return "egress";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        if (!egressService.isEnabled()) {
+            return null;
+        }
+        Map<String, Object> egress = new LinkedHashMap<>();
+        egress.put("configured", vpnProperties.getEgress().getAddresses().size());
+        egress.put("active", activeTags.size());
+        egress.put("strategy", vpnProperties.getEgress().getStrategy().name());
+        return egress;
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.XrayConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Несколько внешних адресов для исходящего трафика
+ *
+ * На каждый адрес из vpn.egress.addresses - freedom outbound "egress-N" с sendThrough.
+ * Трафик VPN inbound идёт через балансировщик Xray по префиксу "egress-", закреплённые
+ * пользователи - правилом user прямо в свой outbound. Адреса, которых нет на интерфейсах,
+ * в конфиг не попадают; живые изменения применяет EgressReconciler.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EgressService {
+    
+    public static final String TAG_PREFIX = "egress-";
+    public static final String BALANCER_TAG = "egress";
+    public static final String DIRECT_TAG = "direct";
+    
+    private final VpnProperties vpnProperties;
+    private final DnsService dnsService;
+    
+    public boolean isEnabled() {
+        VpnProperties.Egress egress = vpnProperties.getEgress();
+        return egress.isEnabled() && !egress.getAddresses().isEmpty();
+    }
+    
+    /**
+     * Тег outbound для адреса: номер в vpn.egress.addresses
+     */
+    public String tagFor(int index) {
+        return TAG_PREFIX + index;
+    }
+    
+    /**
+     * Настроенные адреса, которые сейчас есть на интерфейсах сервера: тег → адрес
+     */
+    public Map<String, String> availableOutbounds() {
+        Set<InetAddress> local = localAddresses();
+        Map<String, String> available = new TreeMap<>();
+        
+        List<String> addresses = vpnProperties.getEgress().getAddresses();
+        for (int i = 0; i < addresses.size(); i++) {
+            String address = addresses.get(i);
+            try {
+                if (local.contains(InetAddress.getByName(address))) {
+                    available.put(tagFor(i), address);
+                } else {
+                    log.debug("Адрес {} не найден на интерфейсах, outbound {} пропущен", address, tagFor(i));
+                }
+            } catch (UnknownHostException e) {
+                log.warn("⚠️ Некорректный адрес в vpn.egress.addresses: {}", address);
+            }
+        }
+        return available;
+    }
+    
+    /**
+     * Outbounds для конфига: "direct" первым (outbound по умолчанию), затем egress
+     */
+    public List<XrayConfig.Outbound> buildOutbounds() {
+        List<XrayConfig.Outbound> outbounds = new ArrayList<>();
+        
+        XrayConfig.Outbound direct = new XrayConfig.Outbound();
+        direct.setProtocol("freedom"); // "freedom" = прямое подключение без прокси
+        direct.setTag(DIRECT_TAG);
+        direct.setSettings(dnsService.freedomSettings());
+        outbounds.add(direct);
+        
+        if (isEnabled()) {
+            availableOutbounds().forEach((tag, address) -> {
+                XrayConfig.Outbound outbound = new XrayConfig.Outbound();
+                outbound.setProtocol("freedom");
+                outbound.setTag(tag);
+                outbound.setSendThrough(address);
+                outbound.setSettings(dnsService.freedomSettings());
+                outbounds.add(outbound);
+            });
+        }
+        return outbounds;
+    }
+    
+    /**
+     * Маршрутизация: закреплённые пользователи → свой outbound, остальной трафик inbound → балансировщик
+     * @return null, если egress выключен
+     */
+    public XrayConfig.Routing buildRouting(List<String> inboundTags) {
+        if (!isEnabled()) {
+            return null;
+        }
+        
+        List<XrayConfig.RoutingRule> rules = new ArrayList<>(pinRules());
+        
+        XrayConfig.RoutingRule balanced = new XrayConfig.RoutingRule();
+        balanced.setType("field");
+        balanced.setRuleTag("egress-balancer");
+        balanced.setInboundTag(inboundTags);
+        balanced.setBalancerTag(BALANCER_TAG);
+        rules.add(balanced);
+        
+        XrayConfig.BalancerStrategy strategy = new XrayConfig.BalancerStrategy();
+        strategy.setType(vpnProperties.getEgress().getStrategy() == VpnProperties.Egress.Strategy.LEAST_LOAD
+            ? "leastLoad" : "random");
+        
+        XrayConfig.Balancer balancer = new XrayConfig.Balancer();
+        balancer.setTag(BALANCER_TAG);
+        balancer.setSelector(List.of(TAG_PREFIX));
+        balancer.setStrategy(strategy);
+        // Все адреса пропали с интерфейсов - трафик идёт через адрес по умолчанию
+        balancer.setFallbackTag(DIRECT_TAG);
+        
+        XrayConfig.Routing routing = new XrayConfig.Routing();
+        routing.setRules(rules);
+        routing.setBalancers(List.of(balancer));
+        return routing;
+    }
+    
+    /**
+     * Замеры задержки egress outbounds - без них leastLoad не из чего выбирать
+     * @return null для RANDOM
+     */
+    public XrayConfig.BurstObservatory buildObservatory() {
+        VpnProperties.Egress egress = vpnProperties.getEgress();
+        if (!isEnabled() || egress.getStrategy() != VpnProperties.Egress.Strategy.LEAST_LOAD) {
+            return null;
+        }
+        
+        XrayConfig.PingConfig ping = new XrayConfig.PingConfig();
+        ping.setDestination(egress.getProbeUrl());
+        ping.setInterval(egress.getProbeInterval().toSeconds() + "s");
+        ping.setSampling(3);
+        ping.setTimeout("5s");
+        
+        XrayConfig.BurstObservatory observatory = new XrayConfig.BurstObservatory();
+        observatory.setSubjectSelector(List.of(TAG_PREFIX));
+        observatory.setPingConfig(ping);
+        return observatory;
+    }
+    
+    /**
+     * Правило user на каждый адрес с закреплёнными пользователями
+     */
+    private List<XrayConfig.RoutingRule> pinRules() {
+        List<String> addresses = vpnProperties.getEgress().getAddresses();
+        Map<String, List<String>> usersByTag = new LinkedHashMap<>();
+        
+        vpnProperties.getEgress().getPins().forEach((uuid, address) -> {
+            int index = addresses.indexOf(address);
+            if (index < 0) {
+                log.warn("⚠️ Пользователь {} закреплён за адресом {}, которого нет в vpn.egress.addresses", uuid, address);
+                return;
+            }
+            usersByTag.computeIfAbsent(tagFor(index), tag -> new ArrayList<>()).add(uuid);
+        });
+        
+        List<XrayConfig.RoutingRule> rules = new ArrayList<>();
+        usersByTag.forEach((tag, users) -> {
+            XrayConfig.RoutingRule rule = new XrayConfig.RoutingRule();
+            rule.setType("field");
+            rule.setRuleTag("pin-" + tag);
+            rule.setUser(users);
+            rule.setOutboundTag(tag);
+            rules.add(rule);
+        });
+        return rules;
+    }
+    
+    private static Set<InetAddress> localAddresses() {
+        Set<InetAddress> addresses = new HashSet<>();
+        try {
+            for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (networkInterface.isUp()) {
+                    addresses.addAll(Collections.list(networkInterface.getInetAddresses()));
+                }
+            }
+        } catch (SocketException e) {
+            log.warn("⚠️ Не удалось получить адреса интерфейсов: {}", e.getMessage());
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.event.PresenceChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Онлайн присутствие пользователей
+ *
+ * Один тик = один GetAllOnlineUsers на всех. GetStatsOnlineIpList запрашивается для новых
+ * пользователей (не больше joinIpBatch за тик, остальные - в следующих тиках) и порциями
+ * (ipRefreshBatch) для уже известных, по кругу; запросы IP идут параллельно, не больше
+ * ipFetchConcurrency одновременно. После перезапуска Xray онлайн появляются все сразу -
+ * тик не превращается в тысячи последовательных запросов.
+ * Состояние - неизменяемый снимок UUID → IP адреса, отсортированный по UUID для постраничной отдачи.
+ * Изменения за тик публикуются как PresenceChangedEvent.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OnlinePresenceService implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final XrayService xrayService;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final StartupOrchestrator startupOrchestrator;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    private volatile NavigableMap<String, List<String>> online = Collections.emptyNavigableMap();
+    
+    // С какого UUID продолжать обновление IP уже известных пользователей
+    private String ipRefreshCursor = "";
+    
+    // Онлайн пользователи, чьи IP ещё не запрашивались (не уместились в joinIpBatch), в порядке появления
+    private final Set<String> ipBacklog = new LinkedHashSet<>();
+    
+    /**
+     * Страница онлайн пользователей
+     */
+    public record Page(int total, List<Map.Entry<String, List<String>>> items, String nextCursor) {
+    }
+    
+    /**
+     * Опросить Xray и обновить снимок присутствия
+     */
+    @Scheduled(fixedDelayString = "#{@vpnProperties.presence.pollInterval.toMillis()}")
+    public void poll() {
+        if (!xrayService.isRunning() || !startupOrchestrator.isReady()) {
+            return;
+        }
+        
+        List<String> onlineUsers;
+        try {
+            onlineUsers = xrayGrpcClient.getAllOnlineUsers();
+        } catch (Exception e) {
+            log.debug("Не удалось получить онлайн пользователей: {}", e.getMessage());
+            return;
+        }
+        
+        NavigableMap<String, List<String>> previous = online;
+        NavigableMap<String, List<String>> current = new TreeMap<>();
+        Set<String> joined = new HashSet<>();
+        for (String uuid : onlineUsers) {
+            List<String> ips = previous.get(uuid);
+            if (ips == null) {
+                joined.add(uuid);
+                ipBacklog.add(uuid);
+                ips = List.of();
+            }
+            current.put(uuid, ips);
+        }
+        ipBacklog.retainAll(current.keySet());
+        
+        // IP новых пользователей - не больше joinIpBatch за тик, в порядке появления онлайн
+        List<String> newcomers = takeBacklog(vpnProperties.getPresence().getJoinIpBatch());
+        Set<String> ipsChanged = new HashSet<>();
+        fetchIps(newcomers).forEach((uuid, ips) -> {
+            current.put(uuid, ips);
+            // Появившиеся в прошлых тиках получили IP только сейчас
+            if (!joined.contains(uuid) && !ips.isEmpty()) {
+                ipsChanged.add(uuid);
+            }
+        });
+        
+        Set<String> notKnown = new HashSet<>(joined);
+        notKnown.addAll(newcomers);
+        notKnown.addAll(ipBacklog);
+        ipsChanged.addAll(refreshKnownIps(current, notKnown));
+        
+        Set<String> left = new HashSet<>(previous.keySet());
+        left.removeAll(current.keySet());
+        
+        online = Collections.unmodifiableNavigableMap(current);
+        
+        if (!joined.isEmpty() || !left.isEmpty() || !ipsChanged.isEmpty()) {
+            log.debug("👥 Онлайн: {} (+{} / -{}, IP изменились у {})",
+                current.size(), joined.size(), left.size(), ipsChanged.size());
+            eventPublisher.publishEvent(new PresenceChangedEvent(
+                Set.copyOf(joined), Set.copyOf(left), Set.copyOf(ipsChanged)));
+        }
+    }
+    
+    /**
+     * Пользователь сейчас онлайн
+     */
+    public boolean isOnline(String uuid) {
+        return online.containsKey(uuid);
+    }
+    
+    /**
+     * IP адреса онлайн пользователя (пустой список, если офлайн)
+     */
+    public List<String> getIps(String uuid) {
+        return online.getOrDefault(uuid, List.of());
+    }
+    
+    /**
+     * UUID пользователей онлайн на момент последнего тика
+     */
+    public Set<String> getOnlineUuids() {
+        return online.keySet();
+    }
+    
+    public int getOnlineCount() {
+        return online.size();
+    }
+    
+    @Override
+    public String statusSection() {
+        return "onlineUsers";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        return online.size();
+    }
+    
+    /**
+     * Страница онлайн пользователей после cursor (keyset по UUID)
+     */
+    public Page getPage(String cursor, int limit) {
+        NavigableMap<String, List<String>> snapshot = online;
+        NavigableMap<String, List<String>> tail = cursor == null || cursor.isBlank()
+            ? snapshot : snapshot.tailMap(cursor, false);
+        
+        List<Map.Entry<String, List<String>>> items = new ArrayList<>(Math.min(limit, tail.size()));
+        for (Map.Entry<String, List<String>> entry : tail.entrySet()) {
+            if (items.size() == limit) {
+                break;
+            }
+            items.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        
+        String nextCursor = items.size() == limit && tail.size() > limit
+            ? items.get(items.size() - 1).getKey() : null;
+        return new Page(snapshot.size(), items, nextCursor);
+    }
+    
+    /**
+     * Первые limit UUID из очереди новых пользователей
+     * Ошибка запроса не держит пользователя в начале очереди: его IP обновятся по кругу
+     */
+    private List<String> takeBacklog(int limit) {
+        List<String> batch = new ArrayList<>();
+        Iterator<String> backlog = ipBacklog.iterator();
+        while (backlog.hasNext() && batch.size() < limit) {
+            batch.add(backlog.next());
+            backlog.remove();
+        }
+        return batch;
+    }
+    
+    /**
+     * Обновить IP порции уже известных пользователей, продолжая с места прошлого тика
+     * @return UUID пользователей, у которых изменился набор IP
+     */
+    private Set<String> refreshKnownIps(NavigableMap<String, List<String>> current, Set<String> notKnown) {
+        Set<String> changed = new HashSet<>();
+        int batch = vpnProperties.getPresence().getIpRefreshBatch();
+        if (batch <= 0 || current.size() == notKnown.size()) {
+            return changed;
+        }
+        
+        List<String> selected = new ArrayList<>();
+        String uuid = current.higherKey(ipRefreshCursor);
+        String first = null;
+        while (selected.size() < batch) {
+            if (uuid == null) {
+                uuid = current.firstKey();
+            }
+            if (uuid.equals(first)) {
+                break;  // прошли полный круг
+            }
+            if (first == null) {
+                first = uuid;
+            }
+            if (!notKnown.contains(uuid)) {
+                selected.add(uuid);
+            }
+            ipRefreshCursor = uuid;
+            uuid = current.higherKey(uuid);
+        }
+        
+        fetchIps(selected).forEach((known, ips) -> {
+            if (!Set.copyOf(ips).equals(Set.copyOf(current.get(known)))) {
+                changed.add(known);
+            }
+            current.put(known, ips);
+        });
+        return changed;
+    }
+    
+    /**
+     * GetStatsOnlineIpList для всех UUID, не больше ipFetchConcurrency запросов одновременно
+     * @return IP по UUID; UUID с ошибкой запроса в результат не попадают (остаются прежние IP)
+     */
+    private Map<String, List<String>> fetchIps(List<String> uuids) {
+        Map<String, List<String>> result = new ConcurrentHashMap<>();
+        if (uuids.isEmpty()) {
+            return result;
+        }
+        
+        Semaphore permits = new Semaphore(Math.max(1, vpnProperties.getPresence().getIpFetchConcurrency()));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String uuid : uuids) {
+                permits.acquireUninterruptibly();
+                executor.submit(() -> {
+                    try {
+                        result.put(uuid, List.copyOf(xrayGrpcClient.getOnlineIpList(uuid).keySet()));
+                    } catch (Exception e) {
+                        log.debug("Не удалось получить IP для {}: {}", uuid, e.getMessage());
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        return result;
+    }
+}
@@ -5,8 +5,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -15,15 +17,21 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 @Slf4j
 @Service
-public class PendingClientService {
+public class PendingClientService implements StatusContributor {
     
     private final ConcurrentHashMap<String, PendingClient> pendingClients = new ConcurrentHashMap<>();
     
+    // Индекс Keycloak User ID → UUID pending клиента (один pending UUID на пользователя)
+    private final ConcurrentHashMap<UUID, String> byKeycloakUserId = new ConcurrentHashMap<>();
+    
     /**
      * Добавить pending клиента
      */
     public void add(PendingClient client) {
         pendingClients.put(client.getUuid(), client);
+        if (client.getKeycloakUserId() != null) {
+            byKeycloakUserId.put(client.getKeycloakUserId(), client.getUuid());
+        }
         log.info("➕ Добавлен pending клиент UUID: {}, истекает: {}", 
             client.getUuid(), client.getExpiresAt());
     }
@@ -34,10 +42,32 @@ public class PendingClientService {
     public void remove(String uuid) {
         PendingClient removed = pendingClients.remove(uuid);
         if (removed != null) {
+            if (removed.getKeycloakUserId() != null) {
+                byKeycloakUserId.remove(removed.getKeycloakUserId(), uuid);
+            }
             log.info("➖ Удалён pending клиент UUID: {}", uuid);
         }
     }
     
+    /**
+     * Удалить пачку pending клиентов одной строкой лога
+     */
+    public void removeAll(Collection<String> uuids) {
+        int removed = 0;
+        for (String uuid : uuids) {
+            PendingClient client = pendingClients.remove(uuid);
+            if (client != null) {
+                if (client.getKeycloakUserId() != null) {
+                    byKeycloakUserId.remove(client.getKeycloakUserId(), uuid);
+                }
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            log.info("➖ Удалено pending клиентов: {}", removed);
+        }
+    }
+    
     /**
      * Получить pending клиента по UUID
      */
@@ -45,6 +75,14 @@ public class PendingClientService {
         return Optional.ofNullable(pendingClients.get(uuid));
     }
     
+    /**
+     * Получить pending клиента пользователя Keycloak
+     */
+    public Optional<PendingClient> getByKeycloakUserId(UUID keycloakUserId) {
+        String uuid = byKeycloakUserId.get(keycloakUserId);
+        return uuid != null ? get(uuid) : Optional.empty();
+    }
+    
     /**
      * Получить всех pending клиентов
      */
@@ -65,4 +103,14 @@ public class PendingClientService {
     public int count() {
         return pendingClients.size();
     }
+    
+    @Override
+    public String statusSection() {
+        return "pending";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        return pendingClients.size();
+    }
 }
@@ -0,0 +1,220 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.PendingClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пакетное удаление истёкших pending клиентов
+ *
+ * Один проход: все истёкшие клиенты → один QueryStats на всех → решение по каждому
+ * (сохранить, продлить, удалить) → RemoveUser с ограниченным числом одновременных запросов.
+ * Неудачное удаление повторяется с экспоненциальной задержкой; после maxAttempts клиент
+ * всё равно убирается из pending (в конфиг из БД он уже не попадёт).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PendingExpirySweeper implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final PendingClientService pendingClientService;
+    private final ConnectionMonitorService connectionMonitorService;
+    private final PendingTtlPolicy pendingTtlPolicy;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final XrayService xrayService;
+    private final StartupOrchestrator startupOrchestrator;
+    
+    // UUID → повтор удаления
+    private final Map<String, Retry> retries = new ConcurrentHashMap<>();
+    
+    private final LongAdder removedTotal = new LongAdder();
+    private final LongAdder failedTotal = new LongAdder();
+    private volatile int lastSweepSize;
+    private volatile long lastSweepMillis;
+    
+    private record Retry(int attempts, Instant nextAttemptAt) {
+    }
+    
+    @Scheduled(fixedDelayString = "#{@vpnProperties.sweeper.interval.toMillis()}")
+    public void sweep() {
+        if (!xrayService.isRunning() || !startupOrchestrator.isReady()) {
+            return;
+        }
+        
+        Instant now = Instant.now();
+        List<PendingClient> expired = pendingClientService.getAll().stream()
+            .filter(PendingClient::isExpired)
+            .filter(client -> isRetryDue(client.getUuid(), now))
+            .toList();
+        if (expired.isEmpty()) {
+            return;
+        }
+        
+        long start = System.nanoTime();
+        
+        Map<String, XrayGrpcClient.UserStats> traffic;
+        try {
+            traffic = xrayGrpcClient.getAllUserStats();
+        } catch (Exception e) {
+            // Без статистики нельзя отличить подключившихся - пропускаем проход
+            log.warn("⚠️ Проход пропущен, статистика Xray недоступна: {}", e.getMessage());
+            return;
+        }
+        
+        XrayGrpcClient.UserStats noTraffic = new XrayGrpcClient.UserStats(0, 0);
+        List<PendingClient> toRemove = expired.stream()
+            .filter(client -> connectionMonitorService.settleExpired(
+                client, traffic.getOrDefault(client.getUuid(), noTraffic)))
+            .toList();
+        
+        Set<String> removed = ConcurrentHashMap.newKeySet();
+        removeAll(toRemove, removed);
+        
+        pendingClientService.removeAll(removed);
+        LocalDateTime releasedAt = LocalDateTime.now();
+        for (PendingClient client : toRemove) {
+            if (removed.contains(client.getUuid())) {
+                pendingTtlPolicy.recordRelease(false, Duration.between(client.getCreatedAt(), releasedAt));
+            }
+        }
+        
+        lastSweepSize = toRemove.size();
+        lastSweepMillis = (System.nanoTime() - start) / 1_000_000;
+        if (!toRemove.isEmpty()) {
+            log.info("🧹 Проход очистки: истекло {}, удалено {} за {} мс, ждут повтора {}",
+                expired.size(), removed.size(), lastSweepMillis, retries.size());
+        }
+    }
+    
+    public int getLastSweepSize() {
+        return lastSweepSize;
+    }
+    
+    public long getLastSweepMillis() {
+        return lastSweepMillis;
+    }
+    
+    public long getRemovedTotal() {
+        return removedTotal.sum();
+    }
+    
+    public long getFailedTotal() {
+        return failedTotal.sum();
+    }
+    
+    public int getRetryCount() {
+        return retries.size();
+    }
+    
+    @Override
+    public String statusSection() {
+        return "sweeper";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        Map<String, Long> sweeper = new LinkedHashMap<>();
+        sweeper.put("lastSweepSize", (long) lastSweepSize);
+        sweeper.put("lastSweepMs", lastSweepMillis);
+        sweeper.put("removedTotal", removedTotal.sum());
+        sweeper.put("failedTotal", failedTotal.sum());
+        sweeper.put("retrying", (long) retries.size());
+        return sweeper;
+    }
+    
+    /**
+     * RemoveUser для всех клиентов, не больше maxConcurrency запросов одновременно
+     */
+    private void removeAll(List<PendingClient> clients, Set<String> removed) {
+        Semaphore permits = new Semaphore(Math.max(1, vpnProperties.getSweeper().getMaxConcurrency()));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (PendingClient client : clients) {
+                permits.acquireUninterruptibly();
+                executor.submit(() -> {
+                    try {
+                        if (removeOne(client.getUuid())) {
+                            removed.add(client.getUuid());
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+    }
+    
+    /**
+     * @return true - клиента можно убирать из pending
+     */
+    private boolean removeOne(String uuid) {
+        try {
+            xrayGrpcClient.removeUser(uuid);
+            retries.remove(uuid);
+            removedTotal.increment();
+            return true;
+        } catch (RuntimeException e) {
+            if (isAlreadyRemoved(e)) {
+                retries.remove(uuid);
+                return true;
+            }
+            failedTotal.increment();
+            return scheduleRetry(uuid, e);
+        }
+    }
+    
+    private boolean scheduleRetry(String uuid, RuntimeException e) {
+        VpnProperties.Sweeper settings = vpnProperties.getSweeper();
+        Retry previous = retries.get(uuid);
+        int attempts = previous == null ? 1 : previous.attempts() + 1;
+        
+        if (attempts >= settings.getMaxAttempts()) {
+            retries.remove(uuid);
+            log.error("❌ Клиент {} не удалён из Xray после {} попыток, убираем из pending: {}",
+                uuid, attempts, e.getMessage());
+            return true;
+        }
+        
+        Duration backoff = settings.getBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+        if (backoff.compareTo(settings.getMaxBackoff()) > 0) {
+            backoff = settings.getMaxBackoff();
+        }
+        retries.put(uuid, new Retry(attempts, Instant.now().plus(backoff)));
+        log.warn("⚠️ Не удалось удалить {} (попытка {}), повтор через {} сек", uuid, attempts, backoff.toSeconds());
+        return false;
+    }
+    
+    private boolean isRetryDue(String uuid, Instant now) {
+        Retry retry = retries.get(uuid);
+        return retry == null || !retry.nextAttemptAt().isAfter(now);
+    }
+    
+    /**
+     * Xray отвечает "not found", если пользователя уже нет (например, после перезапуска)
+     */
+    private static boolean isAlreadyRemoved(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && message.contains("not found")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
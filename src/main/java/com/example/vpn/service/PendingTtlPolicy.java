@@ -0,0 +1,140 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Политика времени жизни pending клиентов и метрики занятости слотов
+ *
+ * TTL сокращается линейно от ttl до minTtl, когда pending клиентов больше половины
+ * admission.maxPending, и сразу до minTtl при нехватке памяти.
+ * Слот = пользователь в Xray от выдачи QR кода до сохранения в БД или удаления.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PendingTtlPolicy implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final PendingClientService pendingClientService;
+    
+    private final SlotStats promoted = new SlotStats();
+    private final SlotStats expired = new SlotStats();
+    
+    /**
+     * TTL для нового pending клиента с учётом текущей нагрузки
+     */
+    public Duration currentTtl() {
+        VpnProperties.Pending settings = vpnProperties.getPending();
+        Duration ttl = settings.getTtl();
+        Duration minTtl = settings.getMinTtl();
+        if (minTtl.compareTo(ttl) >= 0) {
+            return ttl;
+        }
+        
+        Runtime runtime = Runtime.getRuntime();
+        double heapUsage = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        if (heapUsage >= settings.getHeapPressureThreshold()) {
+            return minTtl;
+        }
+        
+        double load = (double) pendingClientService.count() / Math.max(1, vpnProperties.getAdmission().getMaxPending());
+        double pressure = Math.clamp((load - 0.5) / 0.5, 0.0, 1.0);
+        long shrinkMillis = (long) ((ttl.toMillis() - minTtl.toMillis()) * pressure);
+        return ttl.minusMillis(shrinkMillis);
+    }
+    
+    /**
+     * Промежуточные проверки (от момента создания), которые успевают до истечения TTL
+     */
+    public List<Duration> checkPoints(Duration ttl) {
+        return vpnProperties.getPending().getCheckPoints().stream()
+            .filter(point -> point.compareTo(ttl) < 0)
+            .sorted()
+            .toList();
+    }
+    
+    public Duration getGraceExtension() {
+        return vpnProperties.getPending().getGraceExtension();
+    }
+    
+    public int getMaxGraceExtensions() {
+        return vpnProperties.getPending().getMaxGraceExtensions();
+    }
+    
+    /**
+     * Учесть освобождение слота
+     * @param connected клиент подключился (сохранён в БД) или удалён по истечении срока
+     */
+    public void recordRelease(boolean connected, Duration occupancy) {
+        (connected ? promoted : expired).record(occupancy);
+    }
+    
+    public SlotStats getPromotedStats() {
+        return promoted;
+    }
+    
+    public SlotStats getExpiredStats() {
+        return expired;
+    }
+    
+    @Override
+    public String statusSection() {
+        return "pendingSlots";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        Map<String, Object> pendingSlots = new LinkedHashMap<>();
+        pendingSlots.put("ttlSeconds", currentTtl().toSeconds());
+        pendingSlots.put("promoted", promoted.toStatus());
+        pendingSlots.put("expired", expired.toStatus());
+        return pendingSlots;
+    }
+    
+    /**
+     * Время занятости слота: число, среднее и максимум
+     */
+    public static class SlotStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0);
+        
+        void record(Duration occupancy) {
+            long millis = Math.max(0, occupancy.toMillis());
+            count.increment();
+            totalMillis.add(millis);
+            maxMillis.accumulate(millis);
+        }
+        
+        public long getCount() {
+            return count.sum();
+        }
+        
+        public long getAverageMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalMillis.sum() / n;
+        }
+        
+        public long getMaxMillis() {
+            return maxMillis.get();
+        }
+        
+        Map<String, Long> toStatus() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            result.put("count", getCount());
+            result.put("avgOccupancyMs", getAverageMillis());
+            result.put("maxOccupancyMs", getMaxMillis());
+            return result;
+        }
+    }
+}
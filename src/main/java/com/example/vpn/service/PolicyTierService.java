@@ -0,0 +1,64 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.XrayConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Тарифы пользователей = уровни политик Xray
+ * Тариф задаёт буфер и таймауты соединений; на десятках тысяч простаивающих туннелей
+ * именно они определяют память Xray
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PolicyTierService {
+    
+    private final VpnProperties vpnProperties;
+    
+    /**
+     * Уровень политики для тарифа из claim (неизвестный или пустой - тариф по умолчанию)
+     */
+    public int levelFor(String tierName) {
+        VpnProperties.PolicyTiers settings = vpnProperties.getPolicyTiers();
+        VpnProperties.Tier tier = tierName != null ? settings.getTiers().get(tierName) : null;
+        if (tier == null) {
+            if (tierName != null) {
+                log.warn("⚠️ Неизвестный тариф '{}', используется {}", tierName, settings.getDefaultTier());
+            }
+            tier = settings.getTiers().get(settings.getDefaultTier());
+        }
+        return tier != null ? tier.getLevel() : 0;
+    }
+    
+    /**
+     * Название claim токена с тарифом
+     */
+    public String getClaim() {
+        return vpnProperties.getPolicyTiers().getClaim();
+    }
+    
+    /**
+     * Уровни политик для конфига Xray; уровень 0 есть всегда
+     */
+    public Map<String, XrayConfig.PolicyLevel> buildLevels() {
+        Map<String, XrayConfig.PolicyLevel> levels = new TreeMap<>();
+        levels.put("0", new XrayConfig.PolicyLevel());
+        
+        for (VpnProperties.Tier tier : vpnProperties.getPolicyTiers().getTiers().values()) {
+            XrayConfig.PolicyLevel level = new XrayConfig.PolicyLevel();
+            level.setBufferSize(tier.getBufferSize());
+            level.setConnIdle(tier.getConnIdle());
+            level.setHandshake(tier.getHandshake());
+            level.setUplinkOnly(tier.getUplinkOnly());
+            level.setDownlinkOnly(tier.getDownlinkOnly());
+            levels.put(String.valueOf(tier.getLevel()), level);
+        }
+        return levels;
+    }
+}
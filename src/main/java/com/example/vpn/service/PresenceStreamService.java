@@ -0,0 +1,107 @@
+package com.example.vpn.service;
+
+import com.example.vpn.event.PresenceChangedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE подписчики на изменения онлайн присутствия
+ * Каждому подписчику уходят только дельты (join/leave), а не весь список
+ *
+ * Отправка идёт в отдельном потоке, а не в потоке планировщика опроса: медленный подписчик
+ * не задерживает тик. Очередь событий ограничена; при переполнении подписчики закрываются
+ * и переподключаются (EventSource делает это сам), получая свежий hello.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PresenceStreamService {
+    
+    private static final int MAX_QUEUED_EVENTS = 256;
+    
+    private final OnlinePresenceService onlinePresenceService;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    
+    // Один поток - события уходят подписчикам в порядке тиков
+    private final ExecutorService sender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(MAX_QUEUED_EVENTS), Thread.ofVirtual().name("presence-sse").factory());
+    
+    /**
+     * Новый подписчик: сразу получает текущее число онлайн, дальше - дельты
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        
+        send(emitter, "hello", Map.of("online", onlinePresenceService.getOnlineCount()));
+        return emitter;
+    }
+    
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        try {
+            sender.execute(() -> {
+                for (SseEmitter emitter : emitters) {
+                    sendAll(emitter, "join", event.joined());
+                    sendAll(emitter, "leave", event.left());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Подписчики не успевают читать - без пропущенных дельт их картина будет неверной
+            log.warn("⚠️ Очередь SSE присутствия переполнена, {} подписчиков переподключатся", emitters.size());
+            for (SseEmitter emitter : emitters) {
+                emitters.remove(emitter);
+                emitter.complete();
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+    
+    private void sendAll(SseEmitter emitter, String name, Set<String> uuids) {
+        for (String uuid : uuids) {
+            Map<String, Object> data = "join".equals(name)
+                ? Map.of("uuid", uuid, "ips", onlinePresenceService.getIps(uuid))
+                : Map.of("uuid", uuid);
+            if (!send(emitter, name, data)) {
+                return;
+            }
+        }
+    }
+    
+    private boolean send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("SSE подписчик отключился: {}", e.getMessage());
+            emitters.remove(emitter);
+            return false;
+        }
+    }
+}
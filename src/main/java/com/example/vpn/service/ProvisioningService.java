@@ -0,0 +1,205 @@
+package com.example.vpn.service;
+
+import com.example.vpn.model.PendingClient;
+import com.example.vpn.model.VpnClient;
+import com.google.zxing.WriterException;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Выдача VLESS доступа пользователю Keycloak
+ * Один пользователь = один UUID: повторные заходы переиспользуют клиента, ссылку и QR код
+ *
+ * - есть в БД и активен → тот же UUID, без gRPC
+ * - есть в БД, но отключён → снова добавляется в Xray и активируется
+ * - есть pending UUID → тот же UUID, без gRPC
+ * - pending UUID истёк → решает ConnectionMonitorService: подключился - в БД, частичный трафик -
+ *   продление, иначе убирается из Xray и pending, как будто его не было
+ * - иначе → новый UUID, Xray пользователь и pending до первого подключения
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProvisioningService {
+    
+    private static final String DEVICE_INFO = "VPN Client";
+    private static final int QR_SIZE = 400;
+    private static final int QR_CACHE_SIZE = 1024;
+    private static final int LOCK_STRIPES = 64;
+    
+    private final VpnClientService vpnClientService;
+    private final PendingClientService pendingClientService;
+    private final ConnectionMonitorService connectionMonitorService;
+    private final PendingTtlPolicy pendingTtlPolicy;
+    private final PolicyTierService policyTierService;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final ConfigService configService;
+    private final QrCodeService qrCodeService;
+    
+    // Блокировки по пользователю: параллельные первые заходы не создают два UUID
+    private final Object[] locks = createLocks();
+    
+    // UUID → последняя ссылка и её QR код (LRU)
+    private final Map<String, CachedQr> qrCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedQr> eldest) {
+            return size() > QR_CACHE_SIZE;
+        }
+    };
+    
+    /**
+     * Получить (или создать при первом заходе) VLESS доступ пользователя
+     */
+    public ProvisionedClient provision(UUID keycloakUserId, String email, String tier) throws WriterException, IOException {
+        String uuid;
+        LocalDateTime expiresAt = null;
+        
+        synchronized (lockFor(keycloakUserId)) {
+            // Сначала pending: истёкший, но подключившийся клиент переводится в БД и находится ниже
+            Optional<PendingClient> pending = pendingClientService.getByKeycloakUserId(keycloakUserId)
+                .filter(this::isUsable);
+            Optional<VpnClient> existing = vpnClientService.getClientByKeycloakUserId(keycloakUserId);
+            
+            if (existing.isPresent()) {
+                VpnClient client = existing.get();
+                uuid = client.getUuid();
+                if (!Boolean.TRUE.equals(client.getIsActive())) {
+                    reactivate(client);
+                }
+            } else if (pending.isPresent()) {
+                uuid = pending.get().getUuid();
+                expiresAt = pending.get().getExpiresAt();
+            } else {
+                uuid = UUID.randomUUID().toString();
+                
+                log.info("🔧 Первый заход пользователя {}, добавление клиента в Xray: {}", email, uuid);
+                int level = policyTierService.levelFor(tier);
+                xrayGrpcClient.addUser(uuid, level);
+                
+                PendingClient pendingClient = new PendingClient(
+                    uuid, DEVICE_INFO, keycloakUserId, email, pendingTtlPolicy.currentTtl());
+                pendingClient.setPolicyLevel(level);
+                pendingClientService.add(pendingClient);
+                connectionMonitorService.scheduleCheck(uuid);
+                expiresAt = pendingClient.getExpiresAt();
+            }
+        }
+        
+        List<ConfigService.LinkProfile> linkProfiles = configService.generateLinks(uuid, DEVICE_INFO);
+        String vlessLink = linkProfiles.get(0).link();
+        String qrCodeBase64 = qrCodeFor(uuid, vlessLink);
+        
+        ProvisionedClient provisioned = new ProvisionedClient();
+        provisioned.setUuid(uuid);
+        provisioned.setVlessLink(vlessLink);
+        // Дополнительные транспорты (XHTTP/gRPC) - без основного TCP, он уже в vlessLink и QR
+        provisioned.setLinkProfiles(linkProfiles.subList(1, linkProfiles.size()));
+        provisioned.setQrCodeBase64(qrCodeBase64);
+        provisioned.setExpiresAt(expiresAt);
+        return provisioned;
+    }
+    
+    /**
+     * Вернуть отключённого клиента: снова в Xray и isActive = true
+     */
+    private void reactivate(VpnClient client) {
+        log.info("🔄 Повторная активация клиента {}", client.getUuid());
+        xrayGrpcClient.addUser(client.getUuid(), levelOf(client));
+        // client - объект из кэша, меняем копию из БД
+        vpnClientService.updateClient(client.getUuid(), fresh -> {
+            fresh.setIsActive(true);
+            // Отсчёт срока неактивности заново, иначе следующий проход StaleClientPruner отключит снова
+            fresh.setLastConnectedAt(LocalDateTime.now());
+        });
+    }
+    
+    /**
+     * Истёкший pending UUID проходит ту же проверку трафика, что и в PendingExpirySweeper
+     * (под блокировкой клиента в ConnectionMonitorService): подключившийся переводится в БД,
+     * с частичным трафиком получает продление. Остальные убираются сразу - ссылка с ними
+     * перестала бы работать при ближайшем проходе очистки, и пользователь получает новый UUID
+     */
+    private boolean isUsable(PendingClient pending) {
+        if (!pending.isExpired()) {
+            return true;
+        }
+        if (!connectionMonitorService.settleExpired(pending, xrayGrpcClient.getUserStats(pending.getUuid()))) {
+            // Продлён - UUID остаётся; переведён в БД или уже убран очисткой - pending больше нет
+            return pendingClientService.exists(pending.getUuid());
+        }
+        
+        log.info("⌛ Pending клиент {} истёк, выдаётся новый UUID", pending.getUuid());
+        try {
+            xrayGrpcClient.removeUser(pending.getUuid());
+        } catch (RuntimeException e) {
+            // Уже удалён проходом очистки или Xray перезапущен - в конфиг из БД он не попадёт
+            log.debug("Пользователь {} не удалён из Xray: {}", pending.getUuid(), e.getMessage());
+        }
+        pendingClientService.remove(pending.getUuid());
+        pendingTtlPolicy.recordRelease(false, Duration.between(pending.getCreatedAt(), LocalDateTime.now()));
+        return false;
+    }
+    
+    /**
+     * QR код генерируется заново только если ссылка изменилась (например, новые Reality ключи)
+     */
+    private String qrCodeFor(String uuid, String vlessLink) throws WriterException, IOException {
+        synchronized (qrCache) {
+            CachedQr cached = qrCache.get(uuid);
+            if (cached != null && cached.vlessLink().equals(vlessLink)) {
+                return cached.qrCodeBase64();
+            }
+        }
+        
+        byte[] qrCode = qrCodeService.generateQrCode(vlessLink, QR_SIZE, QR_SIZE);
+        String qrCodeBase64 = Base64.getEncoder().encodeToString(qrCode);
+        
+        synchronized (qrCache) {
+            qrCache.put(uuid, new CachedQr(vlessLink, qrCodeBase64));
+        }
+        return qrCodeBase64;
+    }
+    
+    private static int levelOf(VpnClient client) {
+        return client.getPolicyLevel() != null ? client.getPolicyLevel() : 0;
+    }
+    
+    private Object lockFor(UUID keycloakUserId) {
+        return locks[Math.floorMod(keycloakUserId.hashCode(), LOCK_STRIPES)];
+    }
+    
+    private static Object[] createLocks() {
+        Object[] stripes = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        return stripes;
+    }
+    
+    private record CachedQr(String vlessLink, String qrCodeBase64) {
+    }
+    
+    /**
+     * Результат выдачи доступа
+     */
+    @Data
+    public static class ProvisionedClient {
+        private String uuid;               // UUID клиента в Xray
+        private String vlessLink;          // VLESS ссылка
+        private List<ConfigService.LinkProfile> linkProfiles; // Ссылки на дополнительные транспорты
+        private String qrCodeBase64;       // QR код (PNG в base64)
+        private LocalDateTime expiresAt;   // До какого момента ждём подключения (null - клиент уже в БД)
+    }
+}
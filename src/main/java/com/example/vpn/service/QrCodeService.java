@@ -45,7 +45,7 @@ public class QrCodeService {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         MatrixToImageWriter.writeToStream(bitMatrix, "PNG", outputStream);
         
-        log.info("QR код сгенерирован, размер: {}x{}", width, height);
+        log.debug("QR код сгенерирован, размер: {}x{}", width, height);
         return outputStream.toByteArray();
     }
     
@@ -55,4 +55,43 @@ public class QrCodeService {
     public byte[] generateQrCode(String text) throws WriterException, IOException {
         return generateQrCode(text, 300, 300);
     }
+    
+    /**
+     * Генерирует QR код в SVG: один модуль = одна единица viewBox, масштабируется без потерь
+     * Соседние тёмные модули строки объединяются в один прямоугольник пути
+     *
+     * @param text текст для кодирования (VLESS ссылка)
+     * @return SVG документ
+     */
+    public String generateQrSvg(String text) throws WriterException {
+        Map<EncodeHintType, Object> hints = new HashMap<>();
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.MARGIN, 1);
+        
+        // Размер 0 - матрица по числу модулей, без растягивания
+        BitMatrix bitMatrix = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 0, 0, hints);
+        int width = bitMatrix.getWidth();
+        int height = bitMatrix.getHeight();
+        
+        StringBuilder path = new StringBuilder();
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                if (!bitMatrix.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < width && bitMatrix.get(x, y)) {
+                    x++;
+                }
+                path.append('M').append(start).append(' ').append(y)
+                    .append('h').append(x - start).append("v1h-").append(x - start).append('z');
+            }
+        }
+        
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 " + width + " " + height
+            + "\" shape-rendering=\"crispEdges\"><rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>"
+            + "<path fill=\"#000\" d=\"" + path + "\"/></svg>\n";
+    }
 }
@@ -0,0 +1,137 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Плановая смена Reality ключей
+ *
+ * Reality принимает один приватный ключ на inbound, поэтому ротация делает недействительными
+ * все выданные ссылки и QR коды: уже открытые туннели старый процесс Xray дообслуживает до
+ * hot-swap.drain-timeout (при выключенном hot swap - рвутся сразу), новые подключения со старым
+ * публичным ключом не проходят. Пользователи получают новую ссылку при следующем заходе на страницу с QR.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RealityKeyRotationService implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final RealityKeyService realityKeyService;
+    private final XrayHotSwapService xrayHotSwapService;
+    private final XrayService xrayService;
+    private final StartupOrchestrator startupOrchestrator;
+    
+    // Когда сгенерирована текущая пара (ключи из application.yml считаются созданными при запуске)
+    private volatile Instant currentCreatedAt;
+    
+    // Когда была последняя успешная ротация (null - не было с запуска приложения)
+    private volatile Instant lastRotatedAt;
+    
+    @Scheduled(fixedDelayString = "#{@vpnProperties.reality.rotation.checkInterval.toMillis()}",
+        initialDelayString = "#{@vpnProperties.reality.rotation.checkInterval.toMillis()}")
+    public void rotateIfDue() {
+        VpnProperties.Reality reality = vpnProperties.getReality();
+        if (!reality.isEnabled() || !reality.getRotation().isEnabled()
+                || !xrayService.isRunning() || !startupOrchestrator.isReady()) {
+            return;
+        }
+        
+        if (Duration.between(currentCreatedAt(), Instant.now()).compareTo(reality.getRotation().getInterval()) < 0) {
+            return;
+        }
+        
+        try {
+            rotate();
+        } catch (Exception e) {
+            log.error("❌ Ротация Reality ключей не удалась, повтор при следующей проверке", e);
+        }
+    }
+    
+    /**
+     * Сменить пару ключей и применить её к Xray
+     * Новая пара подставляется под блокировкой hot swap; если Xray её не принял
+     * (замена уже идёт, ошибка запуска) - возвращается старая пара, повтор при следующей проверке
+     */
+    public synchronized void rotate() throws Exception {
+        VpnProperties.Reality reality = vpnProperties.getReality();
+        String oldPrivateKey = reality.getPrivateKey();
+        String oldPublicKey = reality.getPublicKey();
+        
+        RealityKeyService.RealityKeys keys = realityKeyService.generateKeys();
+        xrayHotSwapService.reload(
+            () -> {
+                reality.setPrivateKey(keys.getPrivateKey());
+                reality.setPublicKey(keys.getPublicKey());
+            },
+            () -> {
+                reality.setPrivateKey(oldPrivateKey);
+                reality.setPublicKey(oldPublicKey);
+            });
+        
+        realityKeyService.saveKeys(Path.of(reality.getRotation().getKeysFile()), keys);
+        
+        lastRotatedAt = Instant.now();
+        currentCreatedAt = keys.getCreatedAt();
+        
+        log.info("🔄 Reality ключи сменены, новый public key: {}...; выданные ссылки больше не действуют, "
+            + "открытые туннели дообслуживаются {} сек", keys.getPublicKey().substring(0, 20),
+            vpnProperties.getHotSwap().isEnabled() ? vpnProperties.getHotSwap().getDrainTimeout().toSeconds() : 0);
+    }
+    
+    public Instant getLastRotatedAt() {
+        return lastRotatedAt;
+    }
+    
+    @Override
+    public String statusSection() {
+        return "realityKeys";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        Map<String, Object> realityKeys = new LinkedHashMap<>();
+        realityKeys.put("createdAt", getCurrentCreatedAt().toString());
+        Instant rotatedAt = lastRotatedAt;
+        realityKeys.put("lastRotatedAt", rotatedAt != null ? rotatedAt.toString() : null);
+        return realityKeys;
+    }
+    
+    public Instant getCurrentCreatedAt() {
+        return currentCreatedAt();
+    }
+    
+    private Instant currentCreatedAt() {
+        Instant createdAt = currentCreatedAt;
+        if (createdAt == null) {
+            createdAt = loadCreatedAt();
+            // До конца запуска ключи ещё могут быть заменены сохранёнными - не запоминаем
+            if (startupOrchestrator.isReady()) {
+                currentCreatedAt = createdAt;
+            }
+        }
+        return createdAt;
+    }
+    
+    private Instant loadCreatedAt() {
+        try {
+            RealityKeyService.RealityKeys stored = realityKeyService.loadKeys(
+                Path.of(vpnProperties.getReality().getRotation().getKeysFile()));
+            if (stored != null && stored.getPublicKey().equals(vpnProperties.getReality().getPublicKey())) {
+                return stored.getCreatedAt();
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ Не удалось прочитать файл Reality ключей: {}", e.getMessage());
+        }
+        return Instant.now();
+    }
+}
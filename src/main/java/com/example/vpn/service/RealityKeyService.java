@@ -4,85 +4,107 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.XECPrivateKey;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Properties;
 
 /**
  * Сервис для генерации Reality ключей
- * Использует xray x25519 для генерации пары ключей
+ * Пара x25519 генерируется в JVM (провайдер XDH), без запуска xray x25519.
+ * Формат совпадает с xray: 32 байта, base64url без паддинга.
  */
 @Slf4j
 @Service
 public class RealityKeyService {
     
+    private static final int KEY_LENGTH = 32;
+    
     /**
      * Генерирует пару ключей x25519 для Reality
-     * Выполняет команду: xray x25519
      */
-    public RealityKeys generateKeys(String xrayPath) throws IOException, InterruptedException {
-        log.info("Генерация Reality ключей...");
+    public RealityKeys generateKeys() throws GeneralSecurityException {
+        KeyPair keyPair = KeyPairGenerator.getInstance("X25519").generateKeyPair();
         
-        ProcessBuilder processBuilder = new ProcessBuilder(xrayPath, "x25519");
-        processBuilder.redirectErrorStream(true);
+        // Скаляр приватного ключа; clamping как у xray x25519 (на вычисления не влияет)
+        byte[] privateKey = ((XECPrivateKey) keyPair.getPrivate()).getScalar()
+            .orElseThrow(() -> new GeneralSecurityException("Провайдер не отдаёт скаляр X25519"));
+        privateKey[0] &= (byte) 248;
+        privateKey[31] &= 127;
+        privateKey[31] |= 64;
         
-        Process process = processBuilder.start();
+        // X.509 кодировка публичного ключа X25519 = заголовок + 32 байта u-координаты
+        byte[] encodedPublic = keyPair.getPublic().getEncoded();
+        byte[] publicKey = Arrays.copyOfRange(encodedPublic, encodedPublic.length - KEY_LENGTH, encodedPublic.length);
         
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-                log.debug("[xray x25519] {}", line);
-            }
-        }
+        RealityKeys keys = new RealityKeys();
+        keys.setPrivateKey(encode(privateKey));
+        keys.setPublicKey(encode(publicKey));
+        keys.setCreatedAt(Instant.now());
+        Arrays.fill(privateKey, (byte) 0);
         
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new IOException("Ошибка генерации ключей, код выхода: " + exitCode);
+        log.info("✅ Reality ключи сгенерированы, public key: {}...", keys.getPublicKey().substring(0, 20));
+        return keys;
+    }
+    
+    /**
+     * Загрузить сохранённые ключи (после ротации)
+     * @return null, если файла нет
+     */
+    public RealityKeys loadKeys(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
         }
         
-        // Парсим вывод
-        // Новый формат xray x25519:
-        // PrivateKey: xxx (приватный ключ для сервера)
-        // Password: yyy (публичный ключ для клиентов)
-        String outputStr = output.toString();
-        String privateKey = extractKey(outputStr, "PrivateKey");
-        String publicKey = extractKey(outputStr, "Password");
-        
-        if (privateKey == null || publicKey == null) {
-            log.error("Вывод xray x25519:\n{}", outputStr);
-            throw new IOException("Не удалось распарсить ключи из вывода xray. " +
-                "Ожидается формат: PrivateKey: xxx и Password: yyy");
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
         }
         
         RealityKeys keys = new RealityKeys();
-        keys.setPrivateKey(privateKey);
-        keys.setPublicKey(publicKey);
-        
-        log.info("✅ Reality ключи успешно сгенерированы");
-        log.info("Private key: {}...", privateKey.substring(0, Math.min(20, privateKey.length())));
-        log.info("Public key: {}...", publicKey.substring(0, Math.min(20, publicKey.length())));
-        
+        keys.setPrivateKey(properties.getProperty("privateKey"));
+        keys.setPublicKey(properties.getProperty("publicKey"));
+        keys.setCreatedAt(Instant.parse(properties.getProperty("createdAt", Instant.EPOCH.toString())));
+        if (keys.getPrivateKey() == null || keys.getPublicKey() == null) {
+            throw new IOException("Неполный файл Reality ключей: " + path);
+        }
         return keys;
     }
     
     /**
-     * Извлекает ключ из вывода команды xray x25519
+     * Сохранить ключи атомарно и только для владельца процесса
      */
-    private String extractKey(String output, String prefix) {
-        String[] lines = output.split("\n");
-        for (String line : lines) {
-            if (line.contains(prefix)) {
-                // Формат: "PrivateKey: значение" или "Password: значение"
-                String[] parts = line.split(":", 2);
-                if (parts.length == 2) {
-                    return parts[1].trim();
-                }
-            }
+    public void saveKeys(Path path, RealityKeys keys) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("privateKey", keys.getPrivateKey());
+        properties.setProperty("publicKey", keys.getPublicKey());
+        properties.setProperty("createdAt", keys.getCreatedAt().toString());
+        
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            properties.store(writer, "Reality ключи (ротация)");
+        }
+        try {
+            Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            log.debug("POSIX права недоступны для {}", temp);
         }
-        return null;
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static String encode(byte[] key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key);
     }
     
     /**
@@ -92,5 +114,6 @@ public class RealityKeyService {
     public static class RealityKeys {
         private String privateKey;  // Приватный ключ (для сервера)
         private String publicKey;   // Публичный ключ (для клиентов)
+        private Instant createdAt;  // Когда сгенерирована пара
     }
 }
@@ -0,0 +1,313 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Ресурсы процесса Xray по лимитам контейнера
+ *
+ * Go runtime видит все CPU хоста, а не квоту cgroup: при квоте 2 CPU на 32-ядерном хосте
+ * GOMAXPROCS=32, и планировщик упирается в троттлинг CFS. Куча растёт до OOM kill,
+ * потому что сборщик мусора не знает о лимите памяти. Перед запуском Xray
+ * лимиты читаются из cgroup (v2, затем v1) и передаются через GOMAXPROCS/GOMEMLIMIT/GOGC.
+ * Потребление процесса (RSS, CPU) берётся из /proc для /api/vpn/status.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResourceGovernorService {
+    
+    // cgroup v1 без лимита памяти отдаёт число около Long.MAX_VALUE (округлённое до страницы)
+    private static final long UNLIMITED_V1 = 1L << 60;
+    
+    private final VpnProperties vpnProperties;
+    
+    // Лимиты cgroup не меняются за время жизни контейнера - читаем один раз
+    private volatile Limits limits;
+    
+    // Переменные, переданные последнему запущенному процессу
+    private volatile Map<String, String> appliedEnv = Map.of();
+    
+    // Предыдущий замер CPU для расчёта загрузки между замерами
+    private volatile CpuSample lastCpuSample;
+    
+    /**
+     * Лимиты контейнера
+     * @param cpus квота CPU (null - без квоты)
+     * @param memoryBytes лимит памяти (null - без лимита)
+     */
+    public record Limits(Double cpus, Long memoryBytes) {
+    }
+    
+    /**
+     * Потребление процесса Xray
+     * @param cpuPercent загрузка с прошлого замера, 100 = одно ядро (null при первом замере)
+     */
+    public record Usage(long rssBytes, long peakRssBytes, int threads, long cpuMillis, Double cpuPercent) {
+    }
+    
+    private record CpuSample(long pid, long atNanos, long cpuNanos) {
+    }
+    
+    public boolean isEnabled() {
+        return vpnProperties.getResources().isEnabled();
+    }
+    
+    /**
+     * Настроить запуск Xray: переменные Go runtime и закрепление за CPU
+     * Переменные, уже заданные в окружении приложения, не переопределяются
+     */
+    public void apply(ProcessBuilder processBuilder) {
+        VpnProperties.Resources settings = vpnProperties.getResources();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        
+        String cpuSet = blankToNull(settings.getCpuSet());
+        if (cpuSet != null) {
+            List<String> command = new ArrayList<>(List.of("taskset", "-c", cpuSet));
+            command.addAll(processBuilder.command());
+            processBuilder.command(command);
+        }
+        
+        Limits current = getLimits();
+        Map<String, String> env = processBuilder.environment();
+        Map<String, String> applied = new LinkedHashMap<>();
+        
+        Integer maxProcs = goMaxProcs(current.cpus(), cpuSet);
+        if (maxProcs != null) {
+            putIfAbsent(env, applied, "GOMAXPROCS", String.valueOf(maxProcs));
+        }
+        if (current.memoryBytes() != null) {
+            long memLimit = (long) (current.memoryBytes() * settings.getMemoryLimitRatio());
+            putIfAbsent(env, applied, "GOMEMLIMIT", String.valueOf(memLimit));
+        }
+        String gogc = blankToNull(settings.getGogc());
+        if (gogc != null) {
+            putIfAbsent(env, applied, "GOGC", gogc);
+        }
+        appliedEnv = Map.copyOf(applied);
+        
+        log.info("⚙️ Ресурсы Xray: лимит CPU {}, памяти {} МБ → {}{}",
+            current.cpus() != null ? current.cpus() : "нет",
+            current.memoryBytes() != null ? current.memoryBytes() / (1024 * 1024) : "нет",
+            applied.isEmpty() ? "без изменений" : applied,
+            cpuSet != null ? ", CPU " + cpuSet : "");
+    }
+    
+    public Limits getLimits() {
+        Limits current = limits;
+        if (current == null) {
+            current = readLimits(Path.of(vpnProperties.getResources().getCgroupRoot()));
+            limits = current;
+        }
+        return current;
+    }
+    
+    public Map<String, String> getAppliedEnv() {
+        return appliedEnv;
+    }
+    
+    /**
+     * Замер потребления процесса из /proc/<pid>/status и /proc/<pid>/stat
+     * @return null, если процесс не запущен или /proc недоступен (не Linux)
+     */
+    public Usage sample(Process process) {
+        if (process == null || !process.isAlive()) {
+            return null;
+        }
+        long pid = process.pid();
+        
+        Map<String, Long> status = readProcStatus(pid);
+        if (status == null) {
+            return null;
+        }
+        
+        // Время CPU (utime + stime из /proc/<pid>/stat в тиках ядра) - ProcessHandle переводит тики сам
+        long cpuNanos = process.info().totalCpuDuration().map(Duration::toNanos).orElse(0L);
+        long now = System.nanoTime();
+        
+        Double cpuPercent = null;
+        CpuSample previous = lastCpuSample;
+        if (previous != null && previous.pid() == pid && now > previous.atNanos()) {
+            cpuPercent = Math.round((cpuNanos - previous.cpuNanos()) * 1000.0 / (now - previous.atNanos())) / 10.0;
+        }
+        lastCpuSample = new CpuSample(pid, now, cpuNanos);
+        
+        return new Usage(
+            status.getOrDefault("VmRSS", 0L) * 1024,
+            status.getOrDefault("VmHWM", 0L) * 1024,
+            status.getOrDefault("Threads", 0L).intValue(),
+            cpuNanos / 1_000_000,
+            cpuPercent);
+    }
+    
+    private static Limits readLimits(Path root) {
+        Double cpus;
+        Long memory;
+        if (Files.exists(root.resolve("cgroup.controllers"))) {
+            // cgroup v2: "max 100000" или "200000 100000" (квота и период в мкс), memory.max: "max" или байты
+            Path group = ownCgroupV2(root);
+            cpus = minOverAncestors(root, group, ResourceGovernorService::cpuV2);
+            Double memoryValue = minOverAncestors(root, group, dir -> readLong(dir.resolve("memory.max")));
+            memory = memoryValue != null ? memoryValue.longValue() : null;
+        } else {
+            // cgroup v1: квота -1 - без ограничения
+            Long quota = readLong(root.resolve("cpu/cpu.cfs_quota_us"));
+            Long period = readLong(root.resolve("cpu/cpu.cfs_period_us"));
+            cpus = quota != null && quota > 0 && period != null && period > 0 ? (double) quota / period : null;
+            Long limit = readLong(root.resolve("memory/memory.limit_in_bytes"));
+            memory = limit != null && limit < UNLIMITED_V1 ? limit : null;
+        }
+        log.info("📦 Лимиты cgroup: CPU {}, память {}", cpus != null ? cpus : "без квоты",
+            memory != null ? memory + " байт" : "без лимита");
+        return new Limits(cpus, memory);
+    }
+    
+    /**
+     * Каталог cgroup процесса: с cgroup namespace (контейнер) это сам корень,
+     * без него - путь из /proc/self/cgroup ("0::/system.slice/vpn.service")
+     */
+    private static Path ownCgroupV2(Path root) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/cgroup"))) {
+                if (line.startsWith("0::")) {
+                    Path group = root.resolve(line.substring(3).replaceFirst("^/", "")).normalize();
+                    return group.startsWith(root) && Files.isDirectory(group) ? group : root;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("/proc/self/cgroup недоступен: {}", e.getMessage());
+        }
+        return root;
+    }
+    
+    /**
+     * Действует самый строгий лимит на пути от cgroup процесса до корня
+     */
+    private static Double minOverAncestors(Path root, Path group,
+                                           Function<Path, Number> reader) {
+        Double result = null;
+        for (Path dir = group; dir != null && dir.startsWith(root); dir = dir.getParent()) {
+            Number value = reader.apply(dir);
+            if (value != null && (result == null || value.doubleValue() < result)) {
+                result = value.doubleValue();
+            }
+        }
+        return result;
+    }
+    
+    private static Double cpuV2(Path dir) {
+        String[] parts = readString(dir.resolve("cpu.max"));
+        if (parts == null || parts.length < 2 || "max".equals(parts[0])) {
+            return null;
+        }
+        try {
+            double quota = Long.parseLong(parts[0]);
+            double period = Long.parseLong(parts[1]);
+            return period > 0 ? quota / period : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * GOMAXPROCS: квота, округлённая вверх, но не больше числа закреплённых CPU
+     * @return null - оставить значение Go по умолчанию
+     */
+    private static Integer goMaxProcs(Double cpus, String cpuSet) {
+        Integer fromQuota = cpus != null ? Math.max(1, (int) Math.ceil(cpus)) : null;
+        Integer fromSet = cpuSet != null ? countCpus(cpuSet) : null;
+        if (fromQuota != null && fromSet != null) {
+            return Math.min(fromQuota, fromSet);
+        }
+        return fromQuota != null ? fromQuota : fromSet;
+    }
+    
+    /**
+     * Число CPU в списке taskset: "0-3,6" → 5
+     */
+    private static Integer countCpus(String cpuSet) {
+        int count = 0;
+        try {
+            for (String part : cpuSet.split(",")) {
+                String[] range = part.trim().split("-");
+                count += range.length == 2
+                    ? Integer.parseInt(range[1].trim()) - Integer.parseInt(range[0].trim()) + 1
+                    : 1;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("⚠️ Некорректный vpn.resources.cpu-set: {}", cpuSet);
+            return null;
+        }
+        return count > 0 ? count : null;
+    }
+    
+    /**
+     * Поля "VmRSS:   123456 kB", "Threads:  12" из /proc/<pid>/status (значения в кБ и штуках)
+     */
+    private static Map<String, Long> readProcStatus(long pid) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String key = line.substring(0, colon);
+                if (key.equals("VmRSS") || key.equals("VmHWM") || key.equals("Threads")) {
+                    values.put(key, Long.parseLong(line.substring(colon + 1).trim().split("\\s+")[0]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.debug("/proc/{}/status недоступен: {}", pid, e.getMessage());
+            return null;
+        }
+        return values;
+    }
+    
+    private static Long readLong(Path file) {
+        String[] parts = readString(file);
+        if (parts == null || parts.length == 0 || "max".equals(parts[0])) {
+            return null;
+        }
+        try {
+            return Long.parseLong(parts[0]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private static String[] readString(Path file) {
+        try {
+            return Files.readString(file).trim().split("\\s+");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    private static void putIfAbsent(Map<String, String> env, Map<String, String> applied, String name, String value) {
+        if (env.containsKey(name)) {
+            log.info("ℹ️ {}={} задан в окружении, не переопределяем", name, env.get(name));
+            return;
+        }
+        env.put(name, value);
+        applied.put(name, value);
+    }
+    
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.XrayConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Правила маршрутизации Xray из настроек оператора
+ *
+ * Порядок правил: API → правила оператора → заблокированные протоколы → локальные сети →
+ * списки блокировки из файлов → закреплённые egress пользователи и балансировщик.
+ * Блокировка = outbound "block" (blackhole): соединение сбрасывается на сервере,
+ * не расходуя канал. Списки сжимает RoutingRuleCompiler; результат кэшируется,
+ * пока файлы не изменились. Изменения файлов без перезапуска применяет RoutingReloader.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RoutingPolicyService {
+    
+    public static final String BLOCK_TAG = "block";
+    
+    private static final List<String> PRIVATE_NETWORKS = List.of(
+        "0.0.0.0/8", "10.0.0.0/8", "100.64.0.0/10", "127.0.0.0/8", "169.254.0.0/16",
+        "172.16.0.0/12", "192.168.0.0/16", "::1/128", "fc00::/7", "fe80::/10");
+    
+    private final VpnProperties vpnProperties;
+    private final EgressService egressService;
+    
+    // Скомпилированные правила политики и версия файлов, из которых они собраны
+    private volatile Compiled compiled;
+    
+    // Версия файлов, правила которой подтверждённо работают в Xray (запуск, живая замена или hot swap)
+    private volatile String appliedFingerprint;
+    
+    private record Compiled(String fingerprint, List<XrayConfig.RoutingRule> rules,
+                            int sourceEntries, int compactedEntries) {
+    }
+    
+    public boolean isEnabled() {
+        return vpnProperties.getRouting().isEnabled();
+    }
+    
+    /**
+     * Секция routing: правила политики + egress
+     * @return null, если ни политика, ни egress не включены
+     */
+    public XrayConfig.Routing buildRouting(List<String> inboundTags) {
+        XrayConfig.Routing egress = egressService.buildRouting(inboundTags);
+        if (!isEnabled()) {
+            return egress;
+        }
+        
+        Compiled policy = compile();
+        
+        List<XrayConfig.RoutingRule> rules = new ArrayList<>();
+        rules.addAll(policy.rules());
+        if (egress != null) {
+            rules.addAll(egress.getRules());
+        }
+        
+        XrayConfig.Routing routing = new XrayConfig.Routing();
+        routing.setDomainStrategy(vpnProperties.getRouting().getDomainStrategy());
+        routing.setRules(rules);
+        routing.setBalancers(egress != null ? egress.getBalancers() : null);
+        return routing;
+    }
+    
+    /**
+     * Outbound для заблокированного трафика
+     * @return null, если политика выключена
+     */
+    public XrayConfig.Outbound blockOutbound() {
+        if (!isEnabled()) {
+            return null;
+        }
+        XrayConfig.Outbound block = new XrayConfig.Outbound();
+        block.setProtocol("blackhole");
+        block.setTag(BLOCK_TAG);
+        return block;
+    }
+    
+    /**
+     * Определение домена и протокола по трафику - только для правил, адрес назначения не меняется
+     * @return null, если не нужно
+     */
+    public XrayConfig.Sniffing buildSniffing() {
+        if (!isEnabled() || !vpnProperties.getRouting().isSniffing()) {
+            return null;
+        }
+        XrayConfig.Sniffing sniffing = new XrayConfig.Sniffing();
+        sniffing.setDestOverride(List.of("http", "tls", "quic"));
+        sniffing.setRouteOnly(true);
+        return sniffing;
+    }
+    
+    /**
+     * Версия файлов списков сейчас (путь, размер, время изменения)
+     */
+    public String currentFingerprint() {
+        StringBuilder fingerprint = new StringBuilder();
+        for (String file : vpnProperties.getRouting().getBlockListFiles()) {
+            Path path = Path.of(file);
+            try {
+                fingerprint.append(file).append(':').append(Files.size(path)).append(':')
+                    .append(Files.getLastModifiedTime(path).toMillis()).append(';');
+            } catch (IOException e) {
+                fingerprint.append(file).append(":missing;");
+            }
+        }
+        return fingerprint.toString();
+    }
+    
+    /**
+     * Версия файлов, из которой собраны последние правила (null - ещё не собирались)
+     */
+    public String getCompiledFingerprint() {
+        Compiled current = compiled;
+        return current != null ? current.fingerprint() : null;
+    }
+    
+    /**
+     * Правила этой версии применены к Xray
+     * Вызывается только после подтверждения: иначе неприменённое изменение не повторится
+     */
+    public void markApplied(String fingerprint) {
+        appliedFingerprint = fingerprint;
+    }
+    
+    public String getAppliedFingerprint() {
+        return appliedFingerprint;
+    }
+    
+    public int getRuleCount() {
+        Compiled current = compiled;
+        return current != null ? current.rules().size() : 0;
+    }
+    
+    public int getSourceEntries() {
+        Compiled current = compiled;
+        return current != null ? current.sourceEntries() : 0;
+    }
+    
+    public int getCompactedEntries() {
+        Compiled current = compiled;
+        return current != null ? current.compactedEntries() : 0;
+    }
+    
+    private synchronized Compiled compile() {
+        String fingerprint = currentFingerprint();
+        Compiled current = compiled;
+        if (current != null && current.fingerprint().equals(fingerprint)) {
+            return current;
+        }
+        
+        long start = System.nanoTime();
+        VpnProperties.RoutingPolicy settings = vpnProperties.getRouting();
+        List<XrayConfig.RoutingRule> rules = new ArrayList<>();
+        int[] entries = new int[2];
+        
+        for (VpnProperties.PolicyRule policyRule : settings.getRules()) {
+            XrayConfig.RoutingRule rule = operatorRule(policyRule);
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+        
+        if (!settings.getBlockProtocols().isEmpty()) {
+            XrayConfig.RoutingRule protocols = blockRule("block-protocols");
+            protocols.setProtocol(settings.getBlockProtocols());
+            rules.add(protocols);
+        }
+        
+        if (settings.isBlockPrivateNetworks()) {
+            XrayConfig.RoutingRule privateNetworks = blockRule("block-private");
+            privateNetworks.setIp(PRIVATE_NETWORKS);
+            rules.add(privateNetworks);
+        }
+        
+        // Все файлы → одно правило доменов и одно правило IP: Xray проверяет большой список
+        // в одном правиле быстрее, чем много мелких правил
+        List<String> domains = new ArrayList<>();
+        List<String> ips = new ArrayList<>();
+        for (String file : settings.getBlockListFiles()) {
+            readBlockList(Path.of(file), domains, ips);
+        }
+        entries[0] = domains.size() + ips.size();
+        
+        if (!domains.isEmpty()) {
+            XrayConfig.RoutingRule rule = blockRule("blocklist-domain");
+            rule.setDomain(RoutingRuleCompiler.compactDomains(domains));
+            entries[1] += rule.getDomain().size();
+            rules.add(rule);
+        }
+        if (!ips.isEmpty()) {
+            XrayConfig.RoutingRule rule = blockRule("blocklist-ip");
+            rule.setIp(RoutingRuleCompiler.compactIps(ips,
+                invalid -> log.warn("⚠️ Некорректная запись в списке блокировки пропущена: {}", invalid)));
+            entries[1] += rule.getIp().size();
+            rules.add(rule);
+        }
+        
+        current = new Compiled(fingerprint, List.copyOf(rules), entries[0], entries[1]);
+        compiled = current;
+        log.info("🧭 Правила маршрутизации собраны за {} мс: {} правил, списки {} → {} записей",
+            (System.nanoTime() - start) / 1_000_000, rules.size(), entries[0], entries[1]);
+        return current;
+    }
+    
+    private XrayConfig.RoutingRule operatorRule(VpnProperties.PolicyRule policyRule) {
+        XrayConfig.RoutingRule rule = new XrayConfig.RoutingRule();
+        rule.setType("field");
+        rule.setRuleTag("policy-" + policyRule.getName());
+        rule.setOutboundTag(policyRule.getAction() == VpnProperties.PolicyRule.Action.BLOCK
+            ? BLOCK_TAG : EgressService.DIRECT_TAG);
+        
+        if (!policyRule.getDomains().isEmpty()) {
+            rule.setDomain(RoutingRuleCompiler.compactDomains(policyRule.getDomains()));
+        }
+        if (!policyRule.getIps().isEmpty()) {
+            rule.setIp(RoutingRuleCompiler.compactIps(policyRule.getIps()));
+        }
+        if (!policyRule.getProtocols().isEmpty()) {
+            rule.setProtocol(policyRule.getProtocols());
+        }
+        rule.setPort(policyRule.getPorts());
+        rule.setNetwork(policyRule.getNetwork());
+        
+        // Правило без условий Xray не принимает
+        if (rule.getDomain() == null && rule.getIp() == null && rule.getProtocol() == null
+                && rule.getPort() == null && rule.getNetwork() == null) {
+            log.warn("⚠️ Правило {} без условий пропущено", policyRule.getName());
+            return null;
+        }
+        return rule;
+    }
+    
+    private static XrayConfig.RoutingRule blockRule(String ruleTag) {
+        XrayConfig.RoutingRule rule = new XrayConfig.RoutingRule();
+        rule.setType("field");
+        rule.setRuleTag(ruleTag);
+        rule.setOutboundTag(BLOCK_TAG);
+        return rule;
+    }
+    
+    private static void readBlockList(Path path, List<String> domains, List<String> ips) {
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String entry = line.trim();
+                if (entry.isEmpty() || entry.startsWith("#")) {
+                    continue;
+                }
+                (RoutingRuleCompiler.isIpEntry(entry) ? ips : domains).add(entry);
+            }
+        } catch (IOException e) {
+            log.warn("⚠️ Список блокировки {} не прочитан: {}", path, e.getMessage());
+        }
+    }
+}
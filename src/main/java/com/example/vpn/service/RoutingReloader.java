@@ -0,0 +1,123 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.XrayConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Применение изменённых списков блокировки без перезапуска Xray
+ *
+ * Правила целиком заменяются через RoutingService.AddRule, туннели не рвутся.
+ * Если замена невозможна (geosite:/geoip:/ext: в правилах, старый Xray без RoutingService) -
+ * конфиг применяется через hot swap. Без hot swap остаётся только полный перезапуск,
+ * который рвёт все туннели, - его нет: правила применятся при следующем запуске Xray.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RoutingReloader implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final RoutingPolicyService routingPolicyService;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final XrayService xrayService;
+    private final XrayHotSwapService xrayHotSwapService;
+    private final StartupOrchestrator startupOrchestrator;
+    
+    private final LongAdder liveReloads = new LongAdder();
+    
+    // Версия, о которой уже предупредили (hot swap выключен) - не повторять предупреждение каждую проверку
+    private String deferredFingerprint;
+    
+    @Scheduled(fixedDelayString = "#{@vpnProperties.routing.checkInterval.toMillis()}")
+    public void reloadIfChanged() {
+        if (!routingPolicyService.isEnabled() || !xrayService.isRunning() || !startupOrchestrator.isReady()) {
+            return;
+        }
+        if (routingPolicyService.currentFingerprint().equals(routingPolicyService.getAppliedFingerprint())) {
+            return;
+        }
+        
+        log.info("🧭 Списки блокировки изменились, обновляем правила маршрутизации");
+        reload();
+    }
+    
+    /**
+     * Пересобрать правила и применить их к работающему Xray
+     * Версия файлов отмечается применённой только после живой замены или hot swap
+     * (hot swap, занятый другой заменой, бросает исключение - повтор при следующей проверке)
+     * При выключенном hot swap Xray не перезапускается: версия остаётся неприменённой
+     */
+    public synchronized void reload() {
+        XrayConfig.Routing routing = routingPolicyService.buildRouting(xrayService.userInboundTags());
+        String fingerprint = routingPolicyService.getCompiledFingerprint();
+        
+        if (replaceLive(routing)) {
+            liveReloads.increment();
+            routingPolicyService.markApplied(fingerprint);
+            try {
+                xrayService.writeRoutingSection(vpnProperties.getConfigPath(), routing);
+            } catch (Exception e) {
+                log.warn("⚠️ Правила применены, но не записаны в конфиг: {}", e.getMessage());
+            }
+            return;
+        }
+        
+        if (!vpnProperties.getHotSwap().isEnabled()) {
+            if (!fingerprint.equals(deferredFingerprint)) {
+                deferredFingerprint = fingerprint;
+                log.warn("⚠️ Правила нельзя заменить на лету, а hot swap выключен (vpn.hot-swap.enabled): " +
+                    "применятся при следующем запуске Xray");
+            }
+            return;
+        }
+        
+        try {
+            xrayHotSwapService.reload();
+            routingPolicyService.markApplied(fingerprint);
+        } catch (Exception e) {
+            log.error("❌ Правила маршрутизации не применены, повтор при следующей проверке", e);
+        }
+    }
+    
+    private boolean replaceLive(XrayConfig.Routing routing) {
+        try {
+            xrayGrpcClient.replaceRoutingRules(routing);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            log.info("ℹ️ {} - применяем через hot swap", e.getMessage());
+        } catch (Exception e) {
+            log.warn("⚠️ Живая замена правил не удалась ({}), применяем через hot swap", e.getMessage());
+        }
+        return false;
+    }
+    
+    public long getLiveReloadCount() {
+        return liveReloads.sum();
+    }
+    
+    @Override
+    public String statusSection() {
+        return "routing";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        if (!routingPolicyService.isEnabled()) {
+            return null;
+        }
+        Map<String, Long> routing = new LinkedHashMap<>();
+        routing.put("policyRules", (long) routingPolicyService.getRuleCount());
+        routing.put("listEntries", (long) routingPolicyService.getSourceEntries());
+        routing.put("compactedEntries", (long) routingPolicyService.getCompactedEntries());
+        routing.put("liveReloads", liveReloads.sum());
+        return routing;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.vpn.service;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Сжатие наборов доменов и подсетей для правил маршрутизации Xray
+ *
+ * Домены: дубликаты убираются, "domain:a.com" поглощает "domain:x.a.com" и "full:x.a.com".
+ * Подсети: пересекающиеся и соседние диапазоны сливаются и раскладываются обратно
+ * в минимальный набор CIDR (два /25 → один /24).
+ * geosite:, geoip:, ext: и regexp: не разбираются и только дедуплицируются.
+ */
+public final class RoutingRuleCompiler {
+    
+    private static final Pattern IPV4 = Pattern.compile("^\\d{1,3}(\\.\\d{1,3}){3}(/\\d{1,2})?$");
+    private static final Pattern IPV6 = Pattern.compile("^[0-9a-fA-F:.]*:[0-9a-fA-F:.]*(/\\d{1,3})?$");
+    
+    private RoutingRuleCompiler() {
+    }
+    
+    /**
+     * Строка списка - IP/CIDR (иначе домен)
+     */
+    public static boolean isIpEntry(String entry) {
+        String value = entry.trim();
+        return value.startsWith("geoip:") || IPV4.matcher(value).matches() || IPV6.matcher(value).matches();
+    }
+    
+    /**
+     * Домены в формате Xray; домен без префикса считается "domain:" (вместе с поддоменами),
+     * "keyword:x" - подстрока (в Xray - строка без префикса)
+     */
+    public static List<String> compactDomains(Collection<String> entries) {
+        Set<String> roots = new HashSet<>();
+        Set<String> full = new TreeSet<>();
+        Set<String> keywords = new TreeSet<>();
+        Set<String> other = new TreeSet<>();
+        
+        for (String entry : entries) {
+            String value = entry.trim();
+            if (value.isEmpty() || value.startsWith("#")) {
+                continue;
+            }
+            String lower = value.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("domain:")) {
+                roots.add(stripDot(lower.substring("domain:".length())));
+            } else if (lower.startsWith("full:")) {
+                full.add(stripDot(lower.substring("full:".length())));
+            } else if (lower.startsWith("keyword:")) {
+                keywords.add(lower.substring("keyword:".length()));
+            } else if (lower.contains(":")) {
+                // regexp: чувствителен к регистру - оставляем как есть
+                other.add(value);
+            } else {
+                roots.add(stripDot(lower));
+            }
+        }
+        
+        List<String> result = new ArrayList<>();
+        new TreeSet<>(roots).stream()
+            .filter(root -> !coveredByParent(root, roots))
+            .forEach(root -> result.add("domain:" + root));
+        full.stream()
+            .filter(name -> !roots.contains(name) && !coveredByParent(name, roots))
+            .forEach(name -> result.add("full:" + name));
+        result.addAll(keywords);
+        result.addAll(other);
+        return result;
+    }
+    
+    /**
+     * IP и CIDR: слияние диапазонов, отдельно для IPv4 и IPv6
+     * @throws IllegalArgumentException для строки, которая не является IP/CIDR
+     */
+    public static List<String> compactIps(Collection<String> entries) {
+        return compactIps(entries, invalid -> {
+            throw new IllegalArgumentException("Не IP/CIDR: " + invalid);
+        });
+    }
+    
+    /**
+     * То же, но некорректные строки пропускаются и передаются в onInvalid (для больших файлов списков)
+     */
+    public static List<String> compactIps(Collection<String> entries, Consumer<String> onInvalid) {
+        List<BigInteger[]> v4 = new ArrayList<>();
+        List<BigInteger[]> v6 = new ArrayList<>();
+        Set<String> other = new TreeSet<>();
+        
+        for (String entry : entries) {
+            String value = entry.trim();
+            if (value.isEmpty() || value.startsWith("#")) {
+                continue;
+            }
+            if (value.startsWith("geoip:") || value.startsWith("ext:")) {
+                other.add(value);
+                continue;
+            }
+            if (!isIpEntry(value)) {
+                onInvalid.accept(value);
+                continue;
+            }
+            
+            String[] parts = value.split("/", 2);
+            byte[] address = parseLiteral(parts[0]);
+            int bits = address != null ? address.length * 8 : 0;
+            int prefix = parts.length > 1 ? Integer.parseInt(parts[1]) : bits;
+            if (address == null || prefix > bits) {
+                onInvalid.accept(value);
+                continue;
+            }
+            
+            int hostBits = bits - prefix;
+            BigInteger start = new BigInteger(1, address).shiftRight(hostBits).shiftLeft(hostBits);
+            BigInteger end = start.add(BigInteger.ONE.shiftLeft(hostBits)).subtract(BigInteger.ONE);
+            (bits == 32 ? v4 : v6).add(new BigInteger[]{start, end});
+        }
+        
+        List<String> result = new ArrayList<>();
+        for (BigInteger[] range : merge(v4)) {
+            toCidrs(range[0], range[1], 32, result);
+        }
+        for (BigInteger[] range : merge(v6)) {
+            toCidrs(range[0], range[1], 128, result);
+        }
+        result.addAll(other);
+        return result;
+    }
+    
+    private static List<BigInteger[]> merge(List<BigInteger[]> ranges) {
+        ranges.sort(Comparator.comparing((BigInteger[] range) -> range[0]));
+        List<BigInteger[]> merged = new ArrayList<>();
+        for (BigInteger[] range : ranges) {
+            BigInteger[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            // Пересекаются или идут подряд
+            if (last != null && range[0].compareTo(last[1].add(BigInteger.ONE)) <= 0) {
+                last[1] = last[1].max(range[1]);
+            } else {
+                merged.add(new BigInteger[]{range[0], range[1]});
+            }
+        }
+        return merged;
+    }
+    
+    /**
+     * Минимальный набор CIDR, покрывающий [start, end]
+     */
+    private static void toCidrs(BigInteger start, BigInteger end, int bits, List<String> out) {
+        while (start.compareTo(end) <= 0) {
+            // Самый большой блок, выровненный по start и не выходящий за end
+            int size = start.signum() == 0 ? bits : start.getLowestSetBit();
+            BigInteger remaining = end.subtract(start).add(BigInteger.ONE);
+            size = Math.min(size, remaining.bitLength() - 1);
+            
+            out.add(format(start, bits) + "/" + (bits - size));
+            start = start.add(BigInteger.ONE.shiftLeft(size));
+        }
+    }
+    
+    private static String format(BigInteger value, int bits) {
+        byte[] raw = value.toByteArray();
+        byte[] address = new byte[bits / 8];
+        int copy = Math.min(raw.length, address.length);
+        System.arraycopy(raw, raw.length - copy, address, address.length - copy, copy);
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Только литералы: имя хоста здесь не резолвится
+     * @return null, если строка не IP адрес
+     */
+    private static byte[] parseLiteral(String value) {
+        if (!IPV4.matcher(value).matches() && !IPV6.matcher(value).matches()) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(value).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+    
+    private static boolean coveredByParent(String name, Set<String> roots) {
+        for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+            if (roots.contains(name.substring(dot + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String stripDot(String name) {
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.event.PresenceChangedEvent;
+import com.example.vpn.model.VpnClient;
+import com.example.vpn.repository.VpnClientRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Отключение клиентов, которые давно не подключались
+ *
+ * Без него каждый когда-либо подключившийся клиент навсегда остаётся isActive = true:
+ * попадает в конфиг при каждом старте и в список пользователей inbound Xray.
+ * Проход: активные клиенты с lastConnectedAt старше inactiveAfter, затем никогда не подключавшиеся
+ * с createdAt старше inactiveAfter - два запроса, каждый по своему диапазону индекса → порция
+ * отключается одним UPDATE → RemoveUser с ограниченным числом одновременных запросов.
+ * Отключённые выпадают из выборки, поэтому следующая порция - снова первые limit строк, без keyset.
+ * Вернувшийся клиент включается снова в ProvisioningService при заходе за QR.
+ *
+ * lastConnectedAt обновляется по онлайн присутствию: при появлении онлайн и перед каждым проходом
+ * для всех, кто онлайн сейчас, - долгая непрерывная сессия не считается неактивностью.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StaleClientPruner implements StatusContributor {
+    
+    // UUID в одном UPDATE lastConnectedAt
+    private static final int TOUCH_CHUNK = 1000;
+    
+    private final VpnProperties vpnProperties;
+    private final VpnClientRepository vpnClientRepository;
+    private final VpnClientCache vpnClientCache;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final XrayService xrayService;
+    private final StartupOrchestrator startupOrchestrator;
+    private final OnlinePresenceService onlinePresenceService;
+    
+    private final LongAdder deactivatedTotal = new LongAdder();
+    private final LongAdder removeFailedTotal = new LongAdder();
+    private volatile int lastRunDeactivated;
+    private volatile long lastRunMillis;
+    
+    /**
+     * Пользователи появились онлайн - отметить подключение
+     */
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        if (!event.joined().isEmpty()) {
+            touch(event.joined());
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "#{@vpnProperties.pruning.interval.toMillis()}")
+    public void prune() {
+        VpnProperties.Pruning settings = vpnProperties.getPruning();
+        if (!settings.isEnabled() || !xrayService.isRunning() || !startupOrchestrator.isReady()) {
+            return;
+        }
+        
+        long start = System.nanoTime();
+        touch(onlinePresenceService.getOnlineUuids());
+        
+        LocalDateTime cutoff = LocalDateTime.now().minus(settings.getInactiveAfter());
+        Limit limit = Limit.of(Math.max(1, settings.getBatchSize()));
+        int deactivated = pruneAll(() -> vpnClientRepository.findStaleConnected(cutoff, limit), limit, cutoff)
+            + pruneAll(() -> vpnClientRepository.findNeverConnected(cutoff, limit), limit, cutoff);
+        
+        lastRunDeactivated = deactivated;
+        lastRunMillis = (System.nanoTime() - start) / 1_000_000;
+        if (deactivated > 0) {
+            log.info("🧹 Отключено неактивных клиентов: {} (без подключений с {}) за {} мс",
+                deactivated, cutoff.toLocalDate(), lastRunMillis);
+        }
+    }
+    
+    public long getDeactivatedTotal() {
+        return deactivatedTotal.sum();
+    }
+    
+    public long getRemoveFailedTotal() {
+        return removeFailedTotal.sum();
+    }
+    
+    @Override
+    public String statusSection() {
+        return "pruning";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        if (!vpnProperties.getPruning().isEnabled()) {
+            return null;
+        }
+        Map<String, Long> pruning = new LinkedHashMap<>();
+        pruning.put("lastRunDeactivated", (long) getLastRunDeactivated());
+        pruning.put("lastRunMs", getLastRunMillis());
+        pruning.put("deactivatedTotal", deactivatedTotal.sum());
+        pruning.put("removeFailedTotal", removeFailedTotal.sum());
+        return pruning;
+    }
+    
+    public int getLastRunDeactivated() {
+        return lastRunDeactivated;
+    }
+    
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+    
+    /**
+     * Порции из finder, пока он возвращает полные порции
+     * Остановка и на порции, из которой никого не отключили: все успели подключиться,
+     * следующая выборка была бы уже другой, но проход и так повторится через interval
+     */
+    private int pruneAll(Supplier<List<VpnClientRepository.ClientKeys>> finder, Limit limit, LocalDateTime cutoff) {
+        int deactivated = 0;
+        while (true) {
+            List<VpnClientRepository.ClientKeys> batch = finder.get();
+            if (batch.isEmpty()) {
+                return deactivated;
+            }
+            int pruned = pruneBatch(batch, cutoff);
+            deactivated += pruned;
+            if (pruned == 0 || batch.size() < limit.max()) {
+                return deactivated;
+            }
+        }
+    }
+    
+    /**
+     * Порция: UPDATE в БД → сброс кэша → удаление из Xray
+     * Сначала БД: если удаление из Xray не удастся, клиент не вернётся после перезапуска
+     * @return сколько клиентов отключено
+     */
+    private int pruneBatch(List<VpnClientRepository.ClientKeys> batch, LocalDateTime cutoff) {
+        List<Long> ids = batch.stream().map(VpnClientRepository.ClientKeys::getId).toList();
+        if (vpnClientRepository.deactivateStale(ids, cutoff) == 0) {
+            return 0;
+        }
+        
+        // UPDATE мог пропустить клиентов, подключившихся после выборки
+        Set<Long> inactive = new HashSet<>(vpnClientRepository.findInactiveIds(ids));
+        List<String> uuids = new ArrayList<>(inactive.size());
+        for (VpnClientRepository.ClientKeys client : batch) {
+            if (inactive.contains(client.getId())) {
+                vpnClientCache.invalidate(client.getUuid(), client.getKeycloakUserId(), client.getEmail());
+                uuids.add(client.getUuid());
+            }
+        }
+        deactivatedTotal.add(uuids.size());
+        
+        removeAll(uuids);
+        
+        // Вернулся за QR между UPDATE и RemoveUser - RemoveUser мог убрать его из Xray после повторного включения
+        for (VpnClient client : vpnClientRepository.findActiveByIds(ids)) {
+            if (uuids.contains(client.getUuid())) {
+                restore(client);
+            }
+        }
+        return uuids.size();
+    }
+    
+    /**
+     * RemoveUser для всех UUID, не больше maxConcurrency запросов одновременно
+     */
+    private void removeAll(List<String> uuids) {
+        Set<String> failed = ConcurrentHashMap.newKeySet();
+        Semaphore permits = new Semaphore(Math.max(1, vpnProperties.getPruning().getMaxConcurrency()));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String uuid : uuids) {
+                permits.acquireUninterruptibly();
+                executor.submit(() -> {
+                    try {
+                        xrayGrpcClient.removeUser(uuid);
+                    } catch (RuntimeException e) {
+                        if (!isAlreadyRemoved(e)) {
+                            failed.add(uuid);
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        
+        if (!failed.isEmpty()) {
+            // Клиенты уже отключены в БД - при следующем перезапуске Xray их не будет в конфиге
+            removeFailedTotal.add(failed.size());
+            log.warn("⚠️ Не удалось удалить из Xray {} отключённых клиентов, останутся до перезапуска", failed.size());
+        }
+    }
+    
+    private void restore(VpnClient client) {
+        try {
+            xrayGrpcClient.addUser(client.getUuid(), client.getPolicyLevel() != null ? client.getPolicyLevel() : 0);
+            log.info("🔄 Клиент {} вернулся во время отключения, возвращён в Xray", client.getUuid());
+        } catch (RuntimeException e) {
+            // ProvisioningService успел добавить его сам уже после RemoveUser
+            if (!hasMessage(e, "already exists")) {
+                log.error("❌ Не удалось вернуть в Xray клиента {}", client.getUuid(), e);
+            }
+        }
+    }
+    
+    private void touch(Set<String> uuids) {
+        if (uuids.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<String> all = new ArrayList<>(uuids);
+        try {
+            for (int from = 0; from < all.size(); from += TOUCH_CHUNK) {
+                vpnClientRepository.touchLastConnected(all.subList(from, Math.min(from + TOUCH_CHUNK, all.size())), now);
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ Не удалось обновить lastConnectedAt: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Xray отвечает "not found", если пользователя уже нет (например, после перезапуска)
+     */
+    private static boolean isAlreadyRemoved(Throwable e) {
+        return hasMessage(e, "not found");
+    }
+    
+    private static boolean hasMessage(Throwable e, String text) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && message.contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
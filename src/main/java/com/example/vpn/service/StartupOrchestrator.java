@@ -0,0 +1,187 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Оркестратор запуска VPN сервера по стадиям
+ *
+ * reality-keys ┐
+ *              ├→ xray-config → xray-start → xray-api-ready → READY
+ * db-clients   ┘
+ *
+ * Независимые стадии (генерация ключей и запрос клиентов из БД) идут параллельно.
+ * Длительность каждой стадии записывается для настройки холодного старта.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StartupOrchestrator implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final RealityKeyService realityKeyService;
+    private final XrayConfigCacheService xrayConfigCacheService;
+    private final XrayService xrayService;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final RoutingPolicyService routingPolicyService;
+    
+    // Длительности стадий в порядке завершения
+    private final Map<String, Duration> stageDurations = Collections.synchronizedMap(new LinkedHashMap<>());
+    
+    // Готов ли сервер выдавать QR коды
+    private volatile boolean ready = false;
+    
+    /**
+     * Выполнить все стадии запуска
+     */
+    public void run() throws Exception {
+        try {
+            runStages();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+    
+    private void runStages() {
+        long start = System.nanoTime();
+        
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<Void> keys = CompletableFuture.runAsync(
+                () -> stage("reality-keys", this::ensureRealityKeys), executor);
+            CompletableFuture<String> clientsDigest = CompletableFuture.supplyAsync(
+                () -> timed("db-clients", xrayConfigCacheService::loadClientsDigest), executor);
+            
+            // Конфиг зависит и от ключей, и от клиентов
+            keys.join();
+            String digest = clientsDigest.join();
+            stage("xray-config", () -> xrayConfigCacheService.prepareConfig(digest));
+        }
+        
+        stage("xray-start", xrayService::startXray);
+        stage("xray-api-ready", () -> {
+            String apiServer = xrayService.getActiveApiServer();
+            if (!xrayGrpcClient.waitForApi(apiServer, vpnProperties.getApiReadyTimeout())) {
+                throw new IllegalStateException("API Xray " + apiServer + " не ответил за "
+                    + vpnProperties.getApiReadyTimeout());
+            }
+        });
+        
+        // Xray запущен с правилами, собранными при подготовке конфига
+        routingPolicyService.markApplied(routingPolicyService.getCompiledFingerprint());
+        
+        ready = true;
+        stageDurations.put("total", Duration.ofNanos(System.nanoTime() - start));
+        log.info("⏱️ Стадии запуска: {}", stageDurations);
+    }
+    
+    /**
+     * Готов ли сервер (Xray запущен и API отвечает)
+     */
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * Длительности стадий последнего запуска
+     */
+    public Map<String, Duration> getStageDurations() {
+        synchronized (stageDurations) {
+            return new LinkedHashMap<>(stageDurations);
+        }
+    }
+    
+    @Override
+    public String statusSection() {
+        return "startupStages";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        Map<String, Long> startupStages = new LinkedHashMap<>();
+        getStageDurations().forEach((stage, duration) -> startupStages.put(stage, duration.toMillis()));
+        return startupStages;
+    }
+    
+    /**
+     * Генерирует Reality ключи, если их нет в конфигурации
+     * При включённой ротации приоритет у сохранённой после ротации пары
+     */
+    private void ensureRealityKeys() throws Exception {
+        VpnProperties.Reality reality = vpnProperties.getReality();
+        if (!reality.isEnabled()) {
+            return;
+        }
+        
+        Path keysFile = Path.of(reality.getRotation().getKeysFile());
+        if (reality.getRotation().isEnabled()) {
+            RealityKeyService.RealityKeys stored = realityKeyService.loadKeys(keysFile);
+            if (stored != null) {
+                reality.setPrivateKey(stored.getPrivateKey());
+                reality.setPublicKey(stored.getPublicKey());
+                log.info("🔑 Reality ключи загружены из {} (от {})", keysFile, stored.getCreatedAt());
+                return;
+            }
+        }
+        
+        if (!reality.getPrivateKey().isEmpty() && !reality.getPublicKey().isEmpty()) {
+            return;
+        }
+        
+        log.info("🔑 Reality ключи не найдены, генерируем новые...");
+        RealityKeyService.RealityKeys keys = realityKeyService.generateKeys();
+        
+        reality.setPrivateKey(keys.getPrivateKey());
+        reality.setPublicKey(keys.getPublicKey());
+        
+        if (reality.getRotation().isEnabled()) {
+            realityKeyService.saveKeys(keysFile, keys);
+            log.info("💾 Reality ключи сохранены в {}", keysFile);
+        } else {
+            log.info("📋 ВАЖНО: Сохраните эти ключи в application.yml:");
+            log.info("vpn.reality.private-key: {}", keys.getPrivateKey());
+            log.info("vpn.reality.public-key: {}", keys.getPublicKey());
+        }
+    }
+    
+    private void stage(String name, StageAction action) {
+        timed(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+    
+    private <T> T timed(String name, StageSupplier<T> supplier) {
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            Duration duration = Duration.ofNanos(System.nanoTime() - start);
+            stageDurations.put(name, duration);
+            log.info("⏱️ Стадия {}: {} мс", name, duration.toMillis());
+        }
+    }
+    
+    @FunctionalInterface
+    private interface StageAction {
+        void run() throws Exception;
+    }
+    
+    @FunctionalInterface
+    private interface StageSupplier<T> {
+        T get() throws Exception;
+    }
+}
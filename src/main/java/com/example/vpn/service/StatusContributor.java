@@ -0,0 +1,19 @@
+package com.example.vpn.service;
+
+/**
+ * Секция снимка /api/vpn/status, которую подсистема собирает сама
+ * StatusService находит все реализации среди бинов и вызывает их при каждом обновлении снимка
+ */
+public interface StatusContributor {
+    
+    /**
+     * Ключ секции в JSON статуса (уникален среди всех реализаций)
+     */
+    String statusSection();
+    
+    /**
+     * Значение секции: число, строка или Map для Gson
+     * @return null - секцию не выводить (например, подсистема выключена)
+     */
+    Object statusSnapshot();
+}
@@ -0,0 +1,157 @@
+package com.example.vpn.service;
+
+import com.google.gson.Gson;
+import com.xray.app.stats.command.SysStatsResponse;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Снимок состояния VPN сервера для /api/vpn/status
+ * Обновляется по расписанию, запрос статуса только отдаёт готовые байты JSON и ETag
+ *
+ * Здесь собирается только состояние процесса Xray (процесс, gRPC, GetSysStats, ресурсы),
+ * остальные секции отдают сами подсистемы через StatusContributor - в порядке имён секций.
+ * Время обновления в JSON не пишется: иначе ETag менялся бы на каждом обновлении,
+ * и If-None-Match ничего бы не экономил. Время последнего изменения - заголовок Last-Modified.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StatusService {
+    
+    private static final String VPN_RUNNING_MESSAGE = "VPN сервер работает";
+    private static final String VPN_STOPPED_MESSAGE = "VPN сервер остановлен";
+    
+    private final XrayService xrayService;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final StartupOrchestrator startupOrchestrator;
+    private final ResourceGovernorService resourceGovernorService;
+    private final List<StatusContributor> contributors;
+    private final Gson gson = new Gson();
+    
+    private volatile Snapshot snapshot;
+    
+    /**
+     * Готовый к отдаче снимок: JSON, его ETag и время последнего изменения содержимого
+     */
+    public record Snapshot(byte[] json, String etag, Instant changedAt) {
+    }
+    
+    @PostConstruct
+    public void init() {
+        Set<String> sections = new HashSet<>();
+        for (StatusContributor contributor : contributors) {
+            if (!sections.add(contributor.statusSection())) {
+                throw new IllegalStateException("Секция статуса '" + contributor.statusSection() + "' задана дважды");
+            }
+        }
+        refresh();
+    }
+    
+    /**
+     * Текущий снимок (без обращений к Xray и БД)
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Пересобрать снимок: процесс, gRPC, GetSysStats, ресурсы Xray и секции подсистем
+     */
+    @Scheduled(fixedDelayString = "#{@vpnProperties.status.refreshInterval.toMillis()}")
+    public void refresh() {
+        boolean running = xrayService.isRunning();
+        
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running);
+        status.put("message", running ? VPN_RUNNING_MESSAGE : VPN_STOPPED_MESSAGE);
+        status.put("ready", startupOrchestrator.isReady());
+        
+        boolean grpcReachable = false;
+        if (running && startupOrchestrator.isReady()) {
+            try {
+                SysStatsResponse sysStats = xrayGrpcClient.getSysStats();
+                Map<String, Object> sys = new LinkedHashMap<>();
+                sys.put("goroutines", sysStats.getNumGoroutine());
+                sys.put("numGc", sysStats.getNumGC());
+                sys.put("allocBytes", sysStats.getAlloc());
+                sys.put("sysBytes", sysStats.getSys());
+                sys.put("liveObjects", sysStats.getLiveObjects());
+                sys.put("uptimeSeconds", sysStats.getUptime());
+                status.put("xray", sys);
+                
+                grpcReachable = true;
+            } catch (Exception e) {
+                log.debug("gRPC недоступен при обновлении статуса: {}", e.getMessage());
+            }
+        }
+        status.put("grpcReachable", grpcReachable);
+        
+        Map<String, Object> sections = new TreeMap<>();
+        for (StatusContributor contributor : contributors) {
+            Object section = contributor.statusSnapshot();
+            if (section != null) {
+                sections.put(contributor.statusSection(), section);
+            }
+        }
+        Map<String, Object> resources = resources();
+        if (resources != null) {
+            sections.put("resources", resources);
+        }
+        status.putAll(sections);
+        
+        byte[] json = gson.toJson(status).getBytes(StandardCharsets.UTF_8);
+        String etag = etag(json);
+        Snapshot previous = snapshot;
+        Instant changedAt = previous != null && previous.etag().equals(etag) ? previous.changedAt() : Instant.now();
+        snapshot = new Snapshot(json, etag, changedAt);
+    }
+    
+    /**
+     * Лимиты cgroup и потребление процесса Xray
+     * @return null, если vpn.resources выключен
+     */
+    private Map<String, Object> resources() {
+        if (!resourceGovernorService.isEnabled()) {
+            return null;
+        }
+        ResourceGovernorService.Limits limits = resourceGovernorService.getLimits();
+        Map<String, Object> resources = new LinkedHashMap<>();
+        resources.put("cpuQuota", limits.cpus());
+        resources.put("memoryLimitBytes", limits.memoryBytes());
+        resources.put("goEnv", resourceGovernorService.getAppliedEnv());
+        ResourceGovernorService.Usage usage = resourceGovernorService.sample(xrayService.getProcess());
+        if (usage != null) {
+            resources.put("rssBytes", usage.rssBytes());
+            resources.put("peakRssBytes", usage.peakRssBytes());
+            resources.put("threads", usage.threads());
+            resources.put("cpuMillis", usage.cpuMillis());
+            resources.put("cpuPercent", usage.cpuPercent());
+        }
+        return resources;
+    }
+    
+    private static String etag(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 8) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
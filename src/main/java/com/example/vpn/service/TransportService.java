@@ -0,0 +1,59 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Inbounds, через которые подключаются пользователи
+ *
+ * Основной - TCP + Reality с XTLS Vision. Дополнительные (vpn.transports) - XHTTP или gRPC:
+ * много потоков поверх одного TLS/Reality соединения, без Vision (flow для них пустой).
+ * Пользователь один и тот же на всех inbounds (email = UUID), статистика общая.
+ */
+@Service
+@RequiredArgsConstructor
+public class TransportService {
+    
+    public static final String VISION_FLOW = "xtls-rprx-vision";
+    
+    private final VpnProperties vpnProperties;
+    
+    /**
+     * Профиль inbound: тег, порт, сеть Xray, flow пользователей
+     * @param transport настройки дополнительного транспорта (null для основного TCP)
+     */
+    public record InboundProfile(String tag, int port, String network, String flow,
+                                 VpnProperties.Transport transport) {
+        
+        public boolean isPrimary() {
+            return transport == null;
+        }
+    }
+    
+    /**
+     * Все пользовательские inbounds, основной первым
+     */
+    public List<InboundProfile> inbounds() {
+        List<InboundProfile> inbounds = new ArrayList<>();
+        inbounds.add(new InboundProfile(vpnProperties.getInboundTag(), vpnProperties.getXrayPort(), "tcp",
+            VISION_FLOW, null));
+        
+        for (VpnProperties.Transport transport : vpnProperties.getTransports()) {
+            String network = transport.getNetwork().name().toLowerCase(Locale.ROOT);
+            String tag = transport.getTag() != null
+                ? transport.getTag()
+                : "inbound-" + network + "-" + transport.getPort();
+            inbounds.add(new InboundProfile(tag, transport.getPort(), network, "", transport));
+        }
+        return inbounds;
+    }
+    
+    public List<String> userInboundTags() {
+        return inbounds().stream().map(InboundProfile::tag).toList();
+    }
+}
@@ -0,0 +1,429 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.VpnClient;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Near cache VPN клиентов в памяти
+ * Одна запись на клиента (ключ - UUID для Xray) + вторичные индексы keycloakUserId и email
+ * Отсутствие клиента тоже кэшируется (negative cache) с отдельным TTL
+ *
+ * В кластере изменения рассылаются через PostgreSQL LISTEN/NOTIFY,
+ * остальные узлы сбрасывают у себя все ключи изменённого клиента
+ *
+ * Загрузка из БД идёт без блокировок, поэтому у каждого ключа есть версия сброса:
+ * результат загрузки, начатой до invalidate(), в кэше не остаётся
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VpnClientCache implements StatusContributor {
+    
+    private final VpnProperties vpnProperties;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    
+    // Идентификатор узла - свои уведомления не обрабатываем
+    private final String nodeId = UUID.randomUUID().toString();
+    
+    private static final int VERSION_STRIPES = 1024;
+    // Переполненный кэш чистится с запасом: один проход на каждые 10% вставок, а не на каждую
+    private static final double EVICT_TARGET = 0.9;
+    
+    private final ConcurrentHashMap<String, Entry> byUuid = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, String> byKeycloakUserId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> byEmail = new ConcurrentHashMap<>();
+    
+    // Ключ поиска ("uuid:...", "kc:...", "email:...") → момент истечения (nanoTime)
+    private final ConcurrentHashMap<String, Long> negative = new ConcurrentHashMap<>();
+    
+    // Версии сброса по ключам поиска (полосы по хэшу ключа, общая полоса - лишний промах, не ошибка)
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    
+    // Очистку делает один поток, остальные не ждут
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    
+    private volatile boolean listening = false;
+    private Thread listenerThread;
+    
+    @PostConstruct
+    public void init() {
+        VpnProperties.ClientCache settings = vpnProperties.getClientCache();
+        if (!settings.isEnabled() || !settings.isCluster()) {
+            return;
+        }
+        
+        if (!settings.getNotifyChannel().matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalStateException("Недопустимое имя канала NOTIFY: " + settings.getNotifyChannel());
+        }
+        
+        listening = true;
+        listenerThread = new Thread(this::listen, "vpn-client-cache-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        listening = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+    
+    /**
+     * Найти клиента по UUID для Xray
+     */
+    public Optional<VpnClient> getByUuid(String uuid, Supplier<Optional<VpnClient>> loader) {
+        return lookup("uuid:" + uuid, uuid, loader);
+    }
+    
+    /**
+     * Найти клиента по Keycloak User ID
+     */
+    public Optional<VpnClient> getByKeycloakUserId(UUID keycloakUserId, Supplier<Optional<VpnClient>> loader) {
+        return lookup("kc:" + keycloakUserId, byKeycloakUserId.get(keycloakUserId), loader);
+    }
+    
+    /**
+     * Найти клиента по email
+     */
+    public Optional<VpnClient> getByEmail(String email, Supplier<Optional<VpnClient>> loader) {
+        return lookup("email:" + email, byEmail.get(email), loader);
+    }
+    
+    /**
+     * Клиент сохранён: сбросить старые ключи (локально и на других узлах) и положить свежую версию
+     */
+    public void update(VpnClient client) {
+        invalidate(client);
+        put(client);
+    }
+    
+    /**
+     * Клиент изменён или удалён: сбросить все его ключи локально и на других узлах
+     */
+    public void invalidate(VpnClient client) {
+        invalidate(client.getUuid(), client.getKeycloakUserId(), client.getEmail());
+    }
+    
+    /**
+     * То же по ключам клиента - после пакетного UPDATE, когда сущности не загружались
+     */
+    public void invalidate(String uuid, UUID keycloakUserId, String email) {
+        if (!vpnProperties.getClientCache().isEnabled()) {
+            return;
+        }
+        
+        bumpVersions(uuid, keycloakUserId, email);
+        evictLocal(uuid, keycloakUserId, email);
+        publish(uuid, keycloakUserId, email);
+    }
+    
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    /**
+     * Записей в кэше: клиенты и отрицательные ответы
+     */
+    public int getSize() {
+        return byUuid.size() + negative.size();
+    }
+    
+    @Override
+    public String statusSection() {
+        return "clientCache";
+    }
+    
+    @Override
+    public Object statusSnapshot() {
+        Map<String, Long> clientCache = new LinkedHashMap<>();
+        clientCache.put("hits", hits.sum());
+        clientCache.put("misses", misses.sum());
+        clientCache.put("size", (long) getSize());
+        return clientCache;
+    }
+    
+    private Optional<VpnClient> lookup(String negativeKey, String uuid, Supplier<Optional<VpnClient>> loader) {
+        VpnProperties.ClientCache settings = vpnProperties.getClientCache();
+        if (!settings.isEnabled()) {
+            return loader.get();
+        }
+        
+        long now = System.nanoTime();
+        if (uuid != null) {
+            Entry entry = byUuid.get(uuid);
+            if (entry != null && entry.expiresAt - now > 0) {
+                hits.increment();
+                return Optional.of(entry.client);
+            }
+        }
+        
+        Long negativeExpiresAt = negative.get(negativeKey);
+        if (negativeExpiresAt != null && negativeExpiresAt - now > 0) {
+            hits.increment();
+            return Optional.empty();
+        }
+        
+        misses.increment();
+        long version = versionOf(negativeKey);
+        Optional<VpnClient> loaded = loader.get();
+        if (loaded.isPresent()) {
+            put(loaded.get());
+        } else {
+            negative.put(negativeKey, now + settings.getNegativeTtl().toNanos());
+            evictIfNeeded();
+        }
+        
+        // invalidate() во время загрузки: прочитанное могло устареть. Проверка после вставки,
+        // а не до: сброс между проверкой и вставкой иначе оставил бы старую версию
+        if (versionOf(negativeKey) != version) {
+            if (loaded.isPresent()) {
+                VpnClient client = loaded.get();
+                evictLocal(client.getUuid(), client.getKeycloakUserId(), client.getEmail());
+            }
+            negative.remove(negativeKey);
+        }
+        return loaded;
+    }
+    
+    private long versionOf(String key) {
+        return versions.get(stripe(key));
+    }
+    
+    private void bumpVersions(String uuid, UUID keycloakUserId, String email) {
+        if (uuid != null) {
+            versions.incrementAndGet(stripe("uuid:" + uuid));
+        }
+        if (keycloakUserId != null) {
+            versions.incrementAndGet(stripe("kc:" + keycloakUserId));
+        }
+        if (email != null) {
+            versions.incrementAndGet(stripe("email:" + email));
+        }
+    }
+    
+    private static int stripe(String key) {
+        return Math.floorMod(key.hashCode(), VERSION_STRIPES);
+    }
+    
+    private void put(VpnClient client) {
+        if (!vpnProperties.getClientCache().isEnabled() || client.getUuid() == null) {
+            return;
+        }
+        
+        long expiresAt = System.nanoTime() + vpnProperties.getClientCache().getTtl().toNanos();
+        Entry previous = byUuid.put(client.getUuid(), new Entry(client, expiresAt));
+        if (previous != null) {
+            removeIndexes(previous.client);
+        }
+        
+        if (client.getKeycloakUserId() != null) {
+            byKeycloakUserId.put(client.getKeycloakUserId(), client.getUuid());
+            negative.remove("kc:" + client.getKeycloakUserId());
+        }
+        if (client.getEmail() != null) {
+            byEmail.put(client.getEmail(), client.getUuid());
+            negative.remove("email:" + client.getEmail());
+        }
+        negative.remove("uuid:" + client.getUuid());
+        
+        evictIfNeeded();
+    }
+    
+    private void evictLocal(String uuid, UUID keycloakUserId, String email) {
+        if (uuid != null) {
+            Entry removed = byUuid.remove(uuid);
+            if (removed != null) {
+                removeIndexes(removed.client);
+            }
+            negative.remove("uuid:" + uuid);
+        }
+        if (keycloakUserId != null) {
+            byKeycloakUserId.remove(keycloakUserId);
+            negative.remove("kc:" + keycloakUserId);
+        }
+        if (email != null) {
+            byEmail.remove(email);
+            negative.remove("email:" + email);
+        }
+    }
+    
+    private void removeIndexes(VpnClient client) {
+        if (client.getKeycloakUserId() != null) {
+            byKeycloakUserId.remove(client.getKeycloakUserId(), client.getUuid());
+        }
+        if (client.getEmail() != null) {
+            byEmail.remove(client.getEmail(), client.getUuid());
+        }
+    }
+    
+    /**
+     * Ограничение размера: при превышении max-size сначала истёкшие записи, затем произвольные
+     * до 90% max-size. Проход O(n), но следующий будет не раньше чем через 10% max-size вставок
+     */
+    private void evictIfNeeded() {
+        int maxSize = vpnProperties.getClientCache().getMaxSize();
+        if (byUuid.size() + negative.size() <= maxSize || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        
+        try {
+            evict(maxSize, (int) (maxSize * EVICT_TARGET));
+        } finally {
+            evicting.set(false);
+        }
+    }
+    
+    private void evict(int maxSize, int targetSize) {
+        long now = System.nanoTime();
+        byUuid.entrySet().removeIf(e -> {
+            boolean expired = e.getValue().expiresAt - now <= 0;
+            if (expired) {
+                removeIndexes(e.getValue().client);
+            }
+            return expired;
+        });
+        negative.values().removeIf(expiresAt -> expiresAt - now <= 0);
+        
+        // Отрицательным записям - не больше четверти кэша
+        Iterator<String> negatives = negative.keySet().iterator();
+        while (negative.size() > maxSize / 4 && negatives.hasNext()) {
+            negatives.next();
+            negatives.remove();
+        }
+        
+        Iterator<Map.Entry<String, Entry>> entries = byUuid.entrySet().iterator();
+        while (byUuid.size() + negative.size() > targetSize && entries.hasNext()) {
+            Entry evicted = entries.next().getValue();
+            entries.remove();
+            removeIndexes(evicted.client);
+        }
+    }
+    
+    /**
+     * Разослать сброс ключей клиента другим узлам через pg_notify
+     */
+    private void publish(String uuid, UUID keycloakUserId, String email) {
+        if (!vpnProperties.getClientCache().isCluster()) {
+            return;
+        }
+        
+        String payload = String.join("\t",
+            nodeId,
+            nullToEmpty(uuid),
+            keycloakUserId != null ? keycloakUserId.toString() : "",
+            nullToEmpty(email));
+        
+        try {
+            jdbcTemplate.queryForList("SELECT pg_notify(?, ?)",
+                vpnProperties.getClientCache().getNotifyChannel(), payload);
+        } catch (Exception e) {
+            log.warn("⚠️ Не удалось отправить NOTIFY для сброса кэша клиента {}: {}", uuid, e.getMessage());
+        }
+    }
+    
+    /**
+     * Фоновый поток: держит соединение с LISTEN и сбрасывает ключи по уведомлениям
+     */
+    private void listen() {
+        String channel = vpnProperties.getClientCache().getNotifyChannel();
+        
+        while (listening) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                log.info("✅ Кэш клиентов подписан на NOTIFY канал {}", channel);
+                
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (listening) {
+                    PGNotification[] notifications = pgConnection.getNotifications(1000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            handleNotification(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!listening) {
+                    return;
+                }
+                // Пока не слушали - могли пропустить уведомления, локальным данным больше не верим
+                log.warn("⚠️ Потеряно соединение LISTEN {}: {}, кэш сброшен", channel, e.getMessage());
+                clear();
+                sleepBeforeReconnect();
+            }
+        }
+    }
+    
+    private void handleNotification(String payload) {
+        String[] parts = payload.split("\t", -1);
+        if (parts.length != 4 || nodeId.equals(parts[0])) {
+            return;
+        }
+        
+        String uuid = parts[1].isEmpty() ? null : parts[1];
+        UUID keycloakUserId = parts[2].isEmpty() ? null : UUID.fromString(parts[2]);
+        String email = parts[3].isEmpty() ? null : parts[3];
+        bumpVersions(uuid, keycloakUserId, email);
+        evictLocal(uuid, keycloakUserId, email);
+    }
+    
+    private void clear() {
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+        byUuid.clear();
+        byKeycloakUserId.clear();
+        byEmail.clear();
+        negative.clear();
+    }
+    
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            listening = false;
+        }
+    }
+    
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+    
+    private record Entry(VpnClient client, long expiresAt) {
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Сервис для управления VPN клиентами в БД
@@ -21,26 +22,28 @@ import java.util.UUID;
 public class VpnClientService {
     
     private final VpnClientRepository vpnClientRepository;
+    private final VpnClientCache vpnClientCache;
     
     /**
      * Получить клиента по UUID для Xray
      */
     public Optional<VpnClient> getClientByUuid(String uuid) {
-        return vpnClientRepository.findByUuid(uuid);
+        return vpnClientCache.getByUuid(uuid, () -> vpnClientRepository.findByUuid(uuid));
     }
     
     /**
      * Получить клиента по Keycloak User ID
      */
     public Optional<VpnClient> getClientByKeycloakUserId(UUID keycloakUserId) {
-        return vpnClientRepository.findByKeycloakUserId(keycloakUserId);
+        return vpnClientCache.getByKeycloakUserId(keycloakUserId,
+            () -> vpnClientRepository.findByKeycloakUserId(keycloakUserId));
     }
     
     /**
      * Получить клиента по email
      */
     public Optional<VpnClient> getClientByEmail(String email) {
-        return vpnClientRepository.findByEmail(email);
+        return vpnClientCache.getByEmail(email, () -> vpnClientRepository.findByEmail(email));
     }
     
     /**
@@ -52,6 +55,13 @@ public class VpnClientService {
             .toList();
     }
     
+    /**
+     * Версия набора активных клиентов (меняется при любом изменении секции clients)
+     */
+    public String getActiveClientsDigest() {
+        return vpnClientRepository.activeClientsDigest();
+    }
+    
     /**
      * Получить всех клиентов
      */
@@ -70,7 +80,7 @@ public class VpnClientService {
     public VpnClient getOrCreateClient(UUID keycloakUserId, String email, String xrayUuid) {
         log.debug("🔍 Поиск клиента по Keycloak ID: {}", keycloakUserId);
         
-        Optional<VpnClient> existingClient = vpnClientRepository.findByKeycloakUserId(keycloakUserId);
+        Optional<VpnClient> existingClient = getClientByKeycloakUserId(keycloakUserId);
         
         if (existingClient.isPresent()) {
             log.info("✅ Найден существующий клиент: {}", email);
@@ -84,14 +94,38 @@ public class VpnClientService {
         newClient.setUuid(xrayUuid);
         newClient.setIsActive(true);
         
-        return vpnClientRepository.save(newClient);
+        return saveClient(newClient);
     }
     
     /**
      * Сохранить клиента
      */
     public VpnClient saveClient(VpnClient client) {
-        return vpnClientRepository.save(client);
+        VpnClient saved = vpnClientRepository.save(client);
+        vpnClientCache.update(saved);
+        return saved;
+    }
+    
+    /**
+     * Изменить клиента и сохранить
+     * Меняется свежая копия из БД, а не объект из кэша: его одновременно читают другие потоки,
+     * и до сохранения они не должны видеть наполовину изменённого клиента
+     */
+    public Optional<VpnClient> updateClient(String uuid, Consumer<VpnClient> change) {
+        return vpnClientRepository.findByUuid(uuid)
+            .map(client -> {
+                change.accept(client);
+                return saveClient(client);
+            });
+    }
+    
+    /**
+     * Сохранить пачку новых клиентов одной транзакцией
+     * Кэш не обновляется: UUID и ключи новые, их нет ни в кэше, ни в negative cache
+     */
+    @Transactional
+    public List<VpnClient> saveAllClients(List<VpnClient> clients) {
+        return vpnClientRepository.saveAll(clients);
     }
     
     /**
@@ -99,20 +133,25 @@ public class VpnClientService {
      */
     public void deleteClient(String uuid) {
         vpnClientRepository.findByUuid(uuid)
-            .ifPresent(vpnClientRepository::delete);
+            .ifPresent(client -> {
+                vpnClientRepository.delete(client);
+                vpnClientCache.invalidate(client);
+            });
     }
     
     /**
      * Проверить существует ли клиент по UUID
+     * Отвечает из кэша, в том числе отрицательного
      */
     public boolean existsByUuid(String uuid) {
-        return vpnClientRepository.existsByUuid(uuid);
+        return getClientByUuid(uuid).isPresent();
     }
     
     /**
      * Проверить существует ли клиент по Keycloak User ID
+     * Отвечает из кэша, в том числе отрицательного
      */
     public boolean existsByKeycloakUserId(UUID keycloakUserId) {
-        return vpnClientRepository.existsByKeycloakUserId(keycloakUserId);
+        return getClientByKeycloakUserId(keycloakUserId).isPresent();
     }
 }
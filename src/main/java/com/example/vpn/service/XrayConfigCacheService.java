@@ -0,0 +1,142 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * Кэш конфига Xray по содержимому входных данных
+ * Рядом с конфигом хранится файл .digest с хэшами настроек, набора клиентов и самого файла
+ *
+ * - ничего не изменилось → генерация пропускается
+ * - изменились только клиенты → переписывается только секция clients
+ * - иначе → полная генерация
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class XrayConfigCacheService {
+    
+    private static final String SETTINGS_KEY = "settings";
+    private static final String CLIENTS_KEY = "clients";
+    private static final String FILE_KEY = "file";
+    private static final String FULL_GENERATION_MS_KEY = "fullGenerationMs";
+    
+    private final VpnProperties vpnProperties;
+    private final XrayService xrayService;
+    private final VpnClientService vpnClientService;
+    
+    /**
+     * Подготовить конфиг к запуску Xray с минимальной работой
+     */
+    public void prepareConfig() throws IOException {
+        prepareConfig(loadClientsDigest());
+    }
+    
+    /**
+     * Подготовить конфиг с уже полученной версией клиентов
+     * Версию можно запросить из БД параллельно с генерацией Reality ключей
+     */
+    public void prepareConfig(String clientsDigest) throws IOException {
+        long start = System.nanoTime();
+        
+        Path configFile = Path.of(vpnProperties.getConfigPath());
+        Path digestFile = Path.of(vpnProperties.getConfigPath() + ".digest");
+        
+        String settingsDigest = sha256(xrayService.renderSettings(xrayService.getActiveApiServer()));
+        Properties stored = readDigest(digestFile);
+        
+        // Файл мог быть изменён извне (hot swap, ручная правка) - тогда кэшу не верим
+        boolean fileIntact = Files.exists(configFile)
+            && stored.getProperty(FILE_KEY, "").equals(sha256(Files.readString(configFile)));
+        boolean settingsSame = fileIntact && settingsDigest.equals(stored.getProperty(SETTINGS_KEY));
+        boolean clientsSame = clientsDigest != null && clientsDigest.equals(stored.getProperty(CLIENTS_KEY));
+        long lastFullMs = Long.parseLong(stored.getProperty(FULL_GENERATION_MS_KEY, "0"));
+        
+        if (settingsSame && clientsSame) {
+            long elapsedMs = elapsedMs(start);
+            log.info("⚡ Конфиг Xray не изменился, генерация пропущена за {} мс (сэкономлено ~{} мс)",
+                elapsedMs, Math.max(0, lastFullMs - elapsedMs));
+            return;
+        }
+        
+        long fullGenerationMs = lastFullMs;
+        if (settingsSame && clientsDigest != null) {
+            log.info("🔄 Изменился только набор клиентов, обновляем секцию clients");
+            xrayService.writeClientsSection(vpnProperties.getConfigPath(), xrayService.loadXrayClients());
+            long elapsedMs = elapsedMs(start);
+            log.info("⚡ Частичное обновление конфига за {} мс (сэкономлено ~{} мс)",
+                elapsedMs, Math.max(0, lastFullMs - elapsedMs));
+        } else {
+            xrayService.generateConfigFile();
+            fullGenerationMs = elapsedMs(start);
+            log.info("📝 Полная генерация конфига Xray за {} мс", fullGenerationMs);
+        }
+        
+        // Без версии клиентов (таблицы ещё нет) кэш не сохраняем - следующий старт сгенерирует заново
+        if (clientsDigest != null) {
+            Properties digest = new Properties();
+            digest.setProperty(SETTINGS_KEY, settingsDigest);
+            digest.setProperty(CLIENTS_KEY, clientsDigest);
+            digest.setProperty(FILE_KEY, sha256(Files.readString(configFile)));
+            digest.setProperty(FULL_GENERATION_MS_KEY, Long.toString(fullGenerationMs));
+            writeDigest(digestFile, digest);
+        }
+    }
+    
+    /**
+     * Версия набора активных клиентов или null, если БД ещё не готова
+     */
+    public String loadClientsDigest() {
+        try {
+            return vpnClientService.getActiveClientsDigest();
+        } catch (Exception e) {
+            // При первом запуске таблица может не существовать
+            log.warn("Не удалось получить версию клиентов из БД: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private Properties readDigest(Path digestFile) {
+        Properties properties = new Properties();
+        if (Files.exists(digestFile)) {
+            try (Reader reader = Files.newBufferedReader(digestFile, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                log.warn("Не удалось прочитать {}: {}", digestFile, e.getMessage());
+            }
+        }
+        return properties;
+    }
+    
+    private void writeDigest(Path digestFile, Properties digest) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(digestFile, StandardCharsets.UTF_8)) {
+            digest.store(writer, "Xray config digest");
+        }
+    }
+    
+    private static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+    
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
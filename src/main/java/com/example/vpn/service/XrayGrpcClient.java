@@ -1,20 +1,49 @@
 package com.example.vpn.service;
 
 import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.XrayConfig;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.ByteString;
+import com.xray.app.proxyman.SenderConfig;
 import com.xray.app.proxyman.command.*;
+import com.xray.app.router.BalancingRule;
+import com.xray.app.router.CIDR;
+import com.xray.app.router.Domain;
+import com.xray.app.router.GeoIP;
+import com.xray.app.router.RoutingRule;
+import com.xray.app.router.StrategyLeastLoadConfig;
+import com.xray.app.router.command.AddRuleRequest;
+import com.xray.app.router.command.RoutingServiceGrpc;
 import com.xray.app.stats.command.*;
+import com.xray.common.net.IPOrDomain;
+import com.xray.common.net.Network;
+import com.xray.common.net.PortList;
+import com.xray.common.net.PortRange;
 import com.xray.common.protocol.User;
 import com.xray.common.serial.TypedMessage;
+import com.xray.core.OutboundHandlerConfig;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * gRPC клиент для взаимодействия с Xray API
@@ -25,33 +54,150 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class XrayGrpcClient {
     
+    // Сколько AlterInbound пакетного добавления одновременно в полёте
+    private static final int PIPELINE_WINDOW = 128;
+    
     private final VpnProperties vpnProperties;
-    private ManagedChannel channel;
-    private HandlerServiceGrpc.HandlerServiceBlockingStub handlerStub;
-    private StatsServiceGrpc.StatsServiceBlockingStub statsStub;
+    private final TransportService transportService;
+    private volatile ManagedChannel channel;
+    private volatile HandlerServiceGrpc.HandlerServiceBlockingStub handlerStub;
+    private volatile HandlerServiceGrpc.HandlerServiceFutureStub handlerFutureStub;
+    private volatile StatsServiceGrpc.StatsServiceBlockingStub statsStub;
+    private volatile RoutingServiceGrpc.RoutingServiceBlockingStub routingStub;
+    
+    // Скользящая средняя задержки AddUser (нс), для сброса нагрузки
+    private final AtomicLong addUserLatencyNanos = new AtomicLong();
+    private volatile long lastAddUserAt = System.nanoTime();
+    
+    @PreDestroy
+    public void shutdown() {
+        closeChannel(channel);
+    }
     
-    @PostConstruct
-    public void init() {
-        String[] parts = vpnProperties.getApiServer().split(":");
+    /**
+     * Переключить клиент на API другого процесса Xray (hot swap)
+     * Старый канал закрывается после переключения стабов
+     */
+    public synchronized void switchTarget(String apiServer) {
+        ManagedChannel previous = channel;
+        connect(apiServer);
+        closeChannel(previous);
+    }
+    
+    /**
+     * Ждать пока API Xray начнёт отвечать на GetSysStats
+     * @return true если API готов до истечения таймаута
+     */
+    public boolean waitForApi(String apiServer, Duration timeout) {
+        ManagedChannel probeChannel = buildChannel(apiServer);
+        try {
+            StatsServiceGrpc.StatsServiceBlockingStub probe = StatsServiceGrpc.newBlockingStub(probeChannel);
+            long deadline = System.nanoTime() + timeout.toNanos();
+            
+            while (System.nanoTime() < deadline) {
+                try {
+                    probe.withDeadlineAfter(1, TimeUnit.SECONDS)
+                        .getSysStats(SysStatsRequest.getDefaultInstance());
+                    return true;
+                } catch (Exception e) {
+                    log.debug("API Xray {} ещё не готов: {}", apiServer, e.getMessage());
+                }
+                
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            closeChannel(probeChannel);
+        }
+    }
+    
+    /**
+     * Удалить inbound у процесса Xray по указанному адресу API
+     * Процесс перестаёт принимать новые подключения, открытые туннели живут
+     */
+    public void removeInbound(String apiServer, String tag) {
+        ManagedChannel oneShot = buildChannel(apiServer);
+        try {
+            HandlerServiceGrpc.newBlockingStub(oneShot)
+                .withDeadlineAfter(5, TimeUnit.SECONDS)
+                .removeInbound(RemoveInboundRequest.newBuilder().setTag(tag).build());
+            log.info("✅ Inbound {} снят с процесса {}", tag, apiServer);
+        } catch (Exception e) {
+            log.error("❌ Ошибка снятия inbound {} через gRPC", tag, e);
+            throw new RuntimeException("Не удалось снять inbound", e);
+        } finally {
+            closeChannel(oneShot);
+        }
+    }
+    
+    /**
+     * Канал создаётся лениво при первом вызове - к этому моменту Xray уже запущен
+     */
+    private HandlerServiceGrpc.HandlerServiceBlockingStub handler() {
+        if (handlerStub == null) {
+            connectIfAbsent();
+        }
+        return handlerStub;
+    }
+    
+    private HandlerServiceGrpc.HandlerServiceFutureStub handlerFuture() {
+        if (handlerFutureStub == null) {
+            connectIfAbsent();
+        }
+        return handlerFutureStub;
+    }
+    
+    private StatsServiceGrpc.StatsServiceBlockingStub stats() {
+        if (statsStub == null) {
+            connectIfAbsent();
+        }
+        return statsStub;
+    }
+    
+    private RoutingServiceGrpc.RoutingServiceBlockingStub routing() {
+        if (routingStub == null) {
+            connectIfAbsent();
+        }
+        return routingStub;
+    }
+    
+    private synchronized void connectIfAbsent() {
+        if (channel == null) {
+            connect(vpnProperties.getApiServer());
+        }
+    }
+    
+    private void connect(String apiServer) {
+        ManagedChannel newChannel = buildChannel(apiServer);
+        handlerStub = HandlerServiceGrpc.newBlockingStub(newChannel);
+        handlerFutureStub = HandlerServiceGrpc.newFutureStub(newChannel);
+        statsStub = StatsServiceGrpc.newBlockingStub(newChannel);
+        routingStub = RoutingServiceGrpc.newBlockingStub(newChannel);
+        channel = newChannel;
+        
+        log.info("✅ gRPC клиент инициализирован: {}", apiServer);
+    }
+    
+    private ManagedChannel buildChannel(String apiServer) {
+        String[] parts = apiServer.split(":");
         String host = parts[0];
         int port = Integer.parseInt(parts[1]);
         
-        channel = ManagedChannelBuilder
+        return ManagedChannelBuilder
             .forAddress(host, port)
             .usePlaintext()
             .build();
-        
-        handlerStub = HandlerServiceGrpc.newBlockingStub(channel);
-        statsStub = StatsServiceGrpc.newBlockingStub(channel);
-        
-        log.info("✅ gRPC клиент инициализирован: {}:{}", host, port);
     }
     
-    @PreDestroy
-    public void shutdown() {
-        if (channel != null) {
+    private void closeChannel(ManagedChannel target) {
+        if (target != null) {
             try {
-                channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+                target.shutdown().awaitTermination(5, TimeUnit.SECONDS);
                 log.info("✅ gRPC клиент остановлен");
             } catch (InterruptedException e) {
                 log.warn("⚠️ Ошибка при остановке gRPC клиента", e);
@@ -62,52 +208,20 @@ public class XrayGrpcClient {
     
     /**
      * Добавить пользователя через gRPC (БЕЗ перезапуска!)
+     * Пользователь добавляется на все пользовательские inbounds (TCP и vpn.transports) одной пачкой
+     * @param level уровень политики Xray (тариф), см. vpn.policy-tiers
      */
-    public void addUser(String uuid, String email) {
+    public void addUser(String uuid, int level) {
         try {
-            log.info("🔧 Добавление пользователя через gRPC: UUID={}, email={}", uuid, email);
-            
-            // Создаём VLESS Account с UUID
-            com.xray.proxy.vless.Account vlessAccount = com.xray.proxy.vless.Account.newBuilder()
-                .setId(uuid)
-                .setFlow("xtls-rprx-vision")  // Для Reality
-                .build();
+            log.debug("🔧 Добавление пользователя через gRPC: UUID={}, level={}", uuid, level);
             
-            // Упаковываем Account в TypedMessage
-            TypedMessage accountMsg = TypedMessage.newBuilder()
-                .setType("xray.proxy.vless.Account")
-                .setValue(vlessAccount.toByteString())
-                .build();
+            long start = System.nanoTime();
+            // Vision только на TCP inbound
+            Map<String, Throwable> failures = alterAllInbounds(profile -> addUserOperation(uuid, level, profile.flow()));
+            recordAddUserLatency(System.nanoTime() - start);
             
-            // Создаём пользователя с Account
-            User user = User.newBuilder()
-                .setEmail(uuid)  // Используем UUID как email для уникальной идентификации
-                .setLevel(0)
-                .setAccount(accountMsg)
-                .build();
-            
-            // Создаём операцию добавления
-            AddUserOperation addOp = AddUserOperation.newBuilder()
-                .setUser(user)
-                .build();
-            
-            // Упаковываем операцию в TypedMessage
-            TypedMessage operation = TypedMessage.newBuilder()
-                .setType("xray.app.proxyman.command.AddUserOperation")
-                .setValue(addOp.toByteString())
-                .build();
-            
-            // Отправляем запрос
-            AlterInboundRequest request = AlterInboundRequest.newBuilder()
-                .setTag(vpnProperties.getInboundTag())
-                .setOperation(operation)
-                .build();
-            
-            AlterInboundResponse response = handlerStub.alterInbound(request);
-            
-            if (response == null) {
-                throw new RuntimeException("Получен null ответ от Xray API");
-            }
+            // Повтор после частичной ошибки: на части inbounds пользователь уже есть
+            throwUnlessOnly(failures, "already exists");
             
             log.info("✅ Пользователь добавлен через gRPC: {}", uuid);
             
@@ -117,12 +231,113 @@ public class XrayGrpcClient {
         }
     }
     
+    /**
+     * Добавить пачку новых пользователей одной сессией gRPC
+     * AlterInbound (пользователь × inbound) отправляются окнами по PIPELINE_WINDOW без ожидания
+     * каждого ответа: пачка из N пользователей стоит N / PIPELINE_WINDOW round-trip, а не N
+     * @return UUID, которые не добавились хотя бы на один inbound
+     */
+    public Set<String> addUsers(List<String> uuids, int level) throws InterruptedException {
+        List<TransportService.InboundProfile> inbounds = transportService.inbounds();
+        HandlerServiceGrpc.HandlerServiceFutureStub stub = handlerFuture().withDeadlineAfter(60, TimeUnit.SECONDS);
+        Deque<Map.Entry<String, ListenableFuture<AlterInboundResponse>>> inFlight = new ArrayDeque<>();
+        Set<String> failed = new LinkedHashSet<>();
+        
+        long start = System.nanoTime();
+        for (String uuid : uuids) {
+            for (TransportService.InboundProfile profile : inbounds) {
+                if (inFlight.size() >= PIPELINE_WINDOW) {
+                    awaitAlter(inFlight.poll(), failed);
+                }
+                AlterInboundRequest request = AlterInboundRequest.newBuilder()
+                    .setTag(profile.tag())
+                    .setOperation(addUserOperation(uuid, level, profile.flow()))
+                    .build();
+                inFlight.add(Map.entry(uuid, stub.alterInbound(request)));
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            awaitAlter(inFlight.poll(), failed);
+        }
+        
+        log.info("✅ Пачка пользователей добавлена через gRPC: {} из {} за {} мс",
+            uuids.size() - failed.size(), uuids.size(), (System.nanoTime() - start) / 1_000_000);
+        return failed;
+    }
+    
+    private static void awaitAlter(Map.Entry<String, ListenableFuture<AlterInboundResponse>> call, Set<String> failed)
+            throws InterruptedException {
+        try {
+            call.getValue().get();
+        } catch (ExecutionException e) {
+            if (failed.add(call.getKey())) {
+                log.warn("⚠️ Пользователь {} не добавлен: {}", call.getKey(), e.getCause().getMessage());
+            }
+        }
+    }
+    
+    /**
+     * AddUserOperation для VLESS пользователя (email = UUID)
+     */
+    private static TypedMessage addUserOperation(String uuid, int level, String flow) {
+        // Создаём VLESS Account с UUID
+        com.xray.proxy.vless.Account vlessAccount = com.xray.proxy.vless.Account.newBuilder()
+            .setId(uuid)
+            .setFlow(flow)
+            .build();
+        
+        // Упаковываем Account в TypedMessage
+        TypedMessage accountMsg = TypedMessage.newBuilder()
+            .setType("xray.proxy.vless.Account")
+            .setValue(vlessAccount.toByteString())
+            .build();
+        
+        // Создаём пользователя с Account
+        User user = User.newBuilder()
+            .setEmail(uuid)  // Используем UUID как email для уникальной идентификации
+            .setLevel(level)
+            .setAccount(accountMsg)
+            .build();
+        
+        // Создаём операцию добавления
+        AddUserOperation addOp = AddUserOperation.newBuilder()
+            .setUser(user)
+            .build();
+        
+        // Упаковываем операцию в TypedMessage
+        return TypedMessage.newBuilder()
+            .setType("xray.app.proxyman.command.AddUserOperation")
+            .setValue(addOp.toByteString())
+            .build();
+    }
+    
+    /**
+     * Средняя задержка AddUser по последним вызовам
+     * Без вызовов за последние 30 секунд считается нулевой - иначе сброс нагрузки
+     * по старому замеру никогда бы не отпустил
+     */
+    public Duration getAddUserLatency() {
+        if (System.nanoTime() - lastAddUserAt > TimeUnit.SECONDS.toNanos(30)) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(addUserLatencyNanos.get());
+    }
+    
+    /**
+     * Экспоненциальное сглаживание с весом 1/8
+     */
+    private void recordAddUserLatency(long sampleNanos) {
+        lastAddUserAt = System.nanoTime();
+        addUserLatencyNanos.accumulateAndGet(sampleNanos, (average, sample) -> average + (sample - average) / 8);
+    }
+    
     /**
      * Удалить пользователя через gRPC (БЕЗ перезапуска!)
+     * Пользователь удаляется со всех пользовательских inbounds одной пачкой
      */
     public void removeUser(String uuid) {
         try {
-            log.info("🔧 Удаление пользователя через gRPC: UUID={}", uuid);
+            log.debug("🔧 Удаление пользователя через gRPC: UUID={}", uuid);
             
             // Создаём операцию удаления (используем UUID как email)
             RemoveUserOperation removeOp = RemoveUserOperation.newBuilder()
@@ -135,17 +350,8 @@ public class XrayGrpcClient {
                 .setValue(removeOp.toByteString())
                 .build();
             
-            // Отправляем запрос
-            AlterInboundRequest request = AlterInboundRequest.newBuilder()
-                .setTag(vpnProperties.getInboundTag())
-                .setOperation(operation)
-                .build();
-            
-            AlterInboundResponse response = handlerStub.alterInbound(request);
-            
-            if (response == null) {
-                throw new RuntimeException("Получен null ответ от Xray API");
-            }
+            // Пользователя нет на части inbounds - удаление всё равно завершено
+            throwUnlessOnly(alterAllInbounds(profile -> operation), "not found");
             
             log.info("✅ Пользователь удалён через gRPC: {}", uuid);
             
@@ -155,6 +361,265 @@ public class XrayGrpcClient {
         }
     }
     
+    /**
+     * Одна операция на всех пользовательских inbounds
+     * Запросы уходят разом по одному каналу (HTTP/2 мультиплексирует их), ответы ждём после отправки всех:
+     * N inbounds стоят один round-trip, а не N
+     * @return ошибки по тегам inbound (пусто - успешно везде)
+     */
+    private Map<String, Throwable> alterAllInbounds(Function<TransportService.InboundProfile, TypedMessage> operation)
+            throws InterruptedException {
+        HandlerServiceGrpc.HandlerServiceFutureStub stub = handlerFuture().withDeadlineAfter(10, TimeUnit.SECONDS);
+        Map<String, ListenableFuture<AlterInboundResponse>> pending = new LinkedHashMap<>();
+        for (TransportService.InboundProfile profile : transportService.inbounds()) {
+            AlterInboundRequest request = AlterInboundRequest.newBuilder()
+                .setTag(profile.tag())
+                .setOperation(operation.apply(profile))
+                .build();
+            pending.put(profile.tag(), stub.alterInbound(request));
+        }
+        
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, ListenableFuture<AlterInboundResponse>> entry : pending.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException e) {
+                failures.put(entry.getKey(), e.getCause());
+            }
+        }
+        return failures;
+    }
+    
+    /**
+     * Ошибка с ожидаемым текстом на части inbounds не считается ошибкой операции
+     * Если она на всех inbounds - пробрасывается (вызывающий код сам решает, что с ней делать)
+     */
+    private void throwUnlessOnly(Map<String, Throwable> failures, String tolerated) {
+        for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+            String message = failure.getValue().getMessage();
+            if (message == null || !message.contains(tolerated)) {
+                throw new RuntimeException("inbound " + failure.getKey() + ": " + message, failure.getValue());
+            }
+        }
+        if (!failures.isEmpty() && failures.size() == transportService.inbounds().size()) {
+            Throwable first = failures.values().iterator().next();
+            throw new RuntimeException(first.getMessage(), first);
+        }
+        if (!failures.isEmpty()) {
+            log.debug("Пропущено на inbounds {}: {}", failures.keySet(), tolerated);
+        }
+    }
+    
+    /**
+     * Теги всех outbound текущего процесса Xray
+     */
+    public List<String> listOutboundTags() {
+        return handler().withDeadlineAfter(5, TimeUnit.SECONDS)
+            .listOutbounds(ListOutboundsRequest.getDefaultInstance())
+            .getOutboundsList().stream()
+            .map(OutboundHandlerConfig::getTag)
+            .toList();
+    }
+    
+    /**
+     * Добавить freedom outbound, исходящие соединения которого идут с адреса sendThrough
+     * @param domainStrategy резолв доменов назначения (USE_IP* - через встроенный DNS Xray)
+     */
+    public void addFreedomOutbound(String tag, String sendThrough, com.xray.proxy.freedom.DomainStrategy domainStrategy) {
+        try {
+            SenderConfig sender = SenderConfig.newBuilder()
+                .setVia(IPOrDomain.newBuilder()
+                    .setIp(ByteString.copyFrom(InetAddress.getByName(sendThrough).getAddress())))
+                .build();
+            
+            OutboundHandlerConfig outbound = OutboundHandlerConfig.newBuilder()
+                .setTag(tag)
+                .setSenderSettings(TypedMessage.newBuilder()
+                    .setType("xray.app.proxyman.SenderConfig")
+                    .setValue(sender.toByteString()))
+                .setProxySettings(TypedMessage.newBuilder()
+                    .setType("xray.proxy.freedom.Config")
+                    .setValue(com.xray.proxy.freedom.Config.newBuilder()
+                        .setDomainStrategy(domainStrategy)
+                        .build().toByteString()))
+                .build();
+            
+            handler().withDeadlineAfter(5, TimeUnit.SECONDS)
+                .addOutbound(AddOutboundRequest.newBuilder().setOutbound(outbound).build());
+            log.info("✅ Outbound {} добавлен через gRPC (sendThrough {})", tag, sendThrough);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректный адрес sendThrough: " + sendThrough, e);
+        } catch (Exception e) {
+            log.error("❌ Ошибка добавления outbound {} через gRPC", tag, e);
+            throw new RuntimeException("Не удалось добавить outbound", e);
+        }
+    }
+    
+    /**
+     * Удалить outbound; открытые через него соединения Xray не рвёт
+     */
+    public void removeOutbound(String tag) {
+        try {
+            handler().withDeadlineAfter(5, TimeUnit.SECONDS)
+                .removeOutbound(RemoveOutboundRequest.newBuilder().setTag(tag).build());
+            log.info("✅ Outbound {} удалён через gRPC", tag);
+        } catch (Exception e) {
+            log.error("❌ Ошибка удаления outbound {} через gRPC", tag, e);
+            throw new RuntimeException("Не удалось удалить outbound", e);
+        }
+    }
+    
+    /**
+     * Заменить все правила и балансировщики маршрутизации (RoutingService.AddRule без append)
+     * @throws UnsupportedOperationException если в правилах есть geosite:/geoip:/ext: -
+     *         их разворачивает только загрузчик JSON конфига, нужен перезапуск
+     */
+    public void replaceRoutingRules(XrayConfig.Routing routing) {
+        com.xray.app.router.Config.Builder config = com.xray.app.router.Config.newBuilder()
+            .setDomainStrategy(routerDomainStrategy(routing.getDomainStrategy()));
+        if (routing.getRules() != null) {
+            for (XrayConfig.RoutingRule rule : routing.getRules()) {
+                config.addRule(toRoutingRule(rule));
+            }
+        }
+        if (routing.getBalancers() != null) {
+            for (XrayConfig.Balancer balancer : routing.getBalancers()) {
+                config.addBalancingRule(toBalancingRule(balancer));
+            }
+        }
+        
+        AddRuleRequest request = AddRuleRequest.newBuilder()
+            .setConfig(TypedMessage.newBuilder()
+                .setType("xray.app.router.Config")
+                .setValue(config.build().toByteString()))
+            .setShouldAppend(false)
+            .build();
+        
+        try {
+            routing().withDeadlineAfter(10, TimeUnit.SECONDS).addRule(request);
+            log.info("✅ Правила маршрутизации заменены через gRPC: {} правил", config.getRuleCount());
+        } catch (Exception e) {
+            log.error("❌ Ошибка замены правил маршрутизации через gRPC", e);
+            throw new RuntimeException("Не удалось заменить правила маршрутизации", e);
+        }
+    }
+    
+    private static RoutingRule toRoutingRule(XrayConfig.RoutingRule rule) {
+        RoutingRule.Builder builder = RoutingRule.newBuilder();
+        if (rule.getBalancerTag() != null) {
+            builder.setBalancingTag(rule.getBalancerTag());
+        } else {
+            builder.setTag(rule.getOutboundTag());
+        }
+        if (rule.getRuleTag() != null) {
+            builder.setRuleTag(rule.getRuleTag());
+        }
+        if (rule.getDomain() != null) {
+            for (String domain : rule.getDomain()) {
+                builder.addDomain(toDomain(domain));
+            }
+        }
+        if (rule.getIp() != null) {
+            builder.addGeoip(toGeoIp(rule.getIp()));
+        }
+        if (rule.getPort() != null) {
+            builder.setPortList(toPortList(rule.getPort()));
+        }
+        if (rule.getNetwork() != null) {
+            for (String network : rule.getNetwork().split(",")) {
+                builder.addNetworks("udp".equalsIgnoreCase(network.trim()) ? Network.UDP : Network.TCP);
+            }
+        }
+        if (rule.getUser() != null) {
+            builder.addAllUserEmail(rule.getUser());
+        }
+        if (rule.getInboundTag() != null) {
+            builder.addAllInboundTag(rule.getInboundTag());
+        }
+        if (rule.getProtocol() != null) {
+            builder.addAllProtocol(rule.getProtocol());
+        }
+        return builder.build();
+    }
+    
+    private static Domain toDomain(String value) {
+        if (value.startsWith("geosite:") || value.startsWith("ext:")) {
+            throw new UnsupportedOperationException("Домены " + value + " применяются только через конфиг");
+        }
+        Domain.Builder domain = Domain.newBuilder();
+        if (value.startsWith("domain:")) {
+            domain.setType(Domain.Type.Domain).setValue(value.substring("domain:".length()));
+        } else if (value.startsWith("full:")) {
+            domain.setType(Domain.Type.Full).setValue(value.substring("full:".length()));
+        } else if (value.startsWith("regexp:")) {
+            domain.setType(Domain.Type.Regex).setValue(value.substring("regexp:".length()));
+        } else if (value.startsWith("keyword:")) {
+            domain.setType(Domain.Type.Plain).setValue(value.substring("keyword:".length()));
+        } else {
+            domain.setType(Domain.Type.Plain).setValue(value);
+        }
+        return domain.build();
+    }
+    
+    private static GeoIP toGeoIp(List<String> cidrs) {
+        GeoIP.Builder geoIp = GeoIP.newBuilder();
+        for (String cidr : cidrs) {
+            if (cidr.startsWith("geoip:") || cidr.startsWith("ext:")) {
+                throw new UnsupportedOperationException("IP " + cidr + " применяются только через конфиг");
+            }
+            String[] parts = cidr.split("/", 2);
+            try {
+                byte[] address = InetAddress.getByName(parts[0]).getAddress();
+                int prefix = parts.length > 1 ? Integer.parseInt(parts[1]) : address.length * 8;
+                geoIp.addCidr(CIDR.newBuilder().setIp(ByteString.copyFrom(address)).setPrefix(prefix));
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("Некорректный CIDR: " + cidr, e);
+            }
+        }
+        return geoIp.build();
+    }
+    
+    private static PortList toPortList(String ports) {
+        PortList.Builder list = PortList.newBuilder();
+        for (String part : ports.split(",")) {
+            String[] range = part.trim().split("-", 2);
+            int from = Integer.parseInt(range[0].trim());
+            int to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+            list.addRange(PortRange.newBuilder().setFrom(from).setTo(to));
+        }
+        return list.build();
+    }
+    
+    private static BalancingRule toBalancingRule(XrayConfig.Balancer balancer) {
+        BalancingRule.Builder builder = BalancingRule.newBuilder()
+            .setTag(balancer.getTag())
+            .addAllOutboundSelector(balancer.getSelector());
+        if (balancer.getFallbackTag() != null) {
+            builder.setFallbackTag(balancer.getFallbackTag());
+        }
+        // Загрузчик JSON Xray приводит тип стратегии к нижнему регистру
+        String strategy = balancer.getStrategy() != null && balancer.getStrategy().getType() != null
+            ? balancer.getStrategy().getType().toLowerCase() : "random";
+        builder.setStrategy(strategy);
+        if ("leastload".equals(strategy)) {
+            builder.setStrategySettings(TypedMessage.newBuilder()
+                .setType("xray.app.router.StrategyLeastLoadConfig")
+                .setValue(StrategyLeastLoadConfig.getDefaultInstance().toByteString()));
+        }
+        return builder.build();
+    }
+    
+    private static com.xray.app.router.Config.DomainStrategy routerDomainStrategy(String domainStrategy) {
+        if (domainStrategy == null) {
+            return com.xray.app.router.Config.DomainStrategy.AsIs;
+        }
+        return switch (domainStrategy) {
+            case "IPIfNonMatch" -> com.xray.app.router.Config.DomainStrategy.IpIfNonMatch;
+            case "IPOnDemand" -> com.xray.app.router.Config.DomainStrategy.IpOnDemand;
+            default -> com.xray.app.router.Config.DomainStrategy.AsIs;
+        };
+    }
+    
     /**
      * Получить статистику пользователя через gRPC
      */
@@ -167,7 +632,7 @@ public class XrayGrpcClient {
                 .setReset(false)
                 .build();
             
-            QueryStatsResponse response = statsStub.queryStats(request);
+            QueryStatsResponse response = stats().queryStats(request);
             
             long uplink = 0;
             long downlink = 0;
@@ -189,6 +654,79 @@ public class XrayGrpcClient {
         }
     }
     
+    /**
+     * Трафик всех пользователей одним запросом: UUID → статистика
+     * В отличие от getUserStats ошибка не маскируется нулями - по ней нельзя удалять клиентов
+     */
+    public Map<String, UserStats> getAllUserStats() {
+        QueryStatsRequest request = QueryStatsRequest.newBuilder()
+            .setPattern("user>>>")
+            .setReset(false)
+            .build();
+        
+        QueryStatsResponse response = stats().withDeadlineAfter(5, TimeUnit.SECONDS).queryStats(request);
+        
+        Map<String, long[]> traffic = new HashMap<>();
+        for (Stat stat : response.getStatList()) {
+            // user>>>UUID>>>traffic>>>uplink
+            String[] parts = stat.getName().split(">>>");
+            if (parts.length < 4) {
+                continue;
+            }
+            long[] counters = traffic.computeIfAbsent(parts[1], key -> new long[2]);
+            if ("uplink".equals(parts[3])) {
+                counters[0] = stat.getValue();
+            } else if ("downlink".equals(parts[3])) {
+                counters[1] = stat.getValue();
+            }
+        }
+        
+        Map<String, UserStats> result = new HashMap<>(traffic.size());
+        traffic.forEach((uuid, counters) -> result.put(uuid, new UserStats(counters[0], counters[1])));
+        return result;
+    }
+    
+    /**
+     * Системная статистика процесса Xray (горутины, память, uptime)
+     */
+    public SysStatsResponse getSysStats() {
+        return stats().withDeadlineAfter(2, TimeUnit.SECONDS)
+            .getSysStats(SysStatsRequest.getDefaultInstance());
+    }
+    
+    /**
+     * Все пользователи онлайн (требует statsUserOnline в политике)
+     * Xray возвращает имена счётчиков "user>>>EMAIL>>>online", отдаём только EMAIL (= UUID)
+     */
+    public List<String> getAllOnlineUsers() {
+        return stats().withDeadlineAfter(2, TimeUnit.SECONDS)
+            .getAllOnlineUsers(GetAllOnlineUsersRequest.getDefaultInstance())
+            .getUsersList().stream()
+            .map(XrayGrpcClient::emailFromOnlineStat)
+            .toList();
+    }
+    
+    /**
+     * IP адреса онлайн пользователя: IP → время последней активности (unix секунды)
+     */
+    public Map<String, Long> getOnlineIpList(String uuid) {
+        GetStatsRequest request = GetStatsRequest.newBuilder()
+            .setName(onlineStatName(uuid))
+            .build();
+        return stats().withDeadlineAfter(2, TimeUnit.SECONDS)
+            .getStatsOnlineIpList(request)
+            .getIpsMap();
+    }
+    
+    private static String onlineStatName(String uuid) {
+        return "user>>>" + uuid + ">>>online";
+    }
+    
+    private static String emailFromOnlineStat(String name) {
+        String email = name.startsWith("user>>>") ? name.substring("user>>>".length()) : name;
+        return email.endsWith(">>>online") ? email.substring(0, email.length() - ">>>online".length()) : email;
+    }
+    
     public static class UserStats {
         private final long uplink;
         private final long downlink;
@@ -210,6 +748,13 @@ public class XrayGrpcClient {
             return uplink > 0 || downlink > 0;
         }
         
+        /**
+         * Трафик только в одну сторону - соединение не установилось до конца
+         */
+        public boolean isPartial() {
+            return (uplink > 0) != (downlink > 0);
+        }
+        
         @Override
         public String toString() {
             return String.format("UserStats{uplink=%d, downlink=%d}", uplink, downlink);
@@ -0,0 +1,275 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.PendingClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Сервис замены процесса Xray без простоя (blue-green)
+ * Применяет изменения конфига (Reality ключи, serverNames, shortIds) без обрыва приёма подключений
+ *
+ * REUSE_PORT: новый процесс поднимается рядом со старым на том же порту (SO_REUSEPORT),
+ * старый снимает inbound, дообслуживает туннели drain-timeout и только потом останавливается.
+ * HANDOFF: конфиг проверяется заранее (xray run -test), затем stop + start без паузы.
+ * Если после stop + start (HANDOFF и обычный перезапуск) API не поднялся, прежний конфиг
+ * возвращается на место и Xray запускается с ним - до rollback настроек вызывающего.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class XrayHotSwapService {
+    
+    private final VpnProperties vpnProperties;
+    private final XrayService xrayService;
+    private final XrayGrpcClient xrayGrpcClient;
+    private final PendingClientService pendingClientService;
+    
+    // Одна замена за раз: параллельные запросы не порождают лишних процессов
+    private final ReentrantLock swapLock = new ReentrantLock();
+    
+    // Время последней замены (для min-interval)
+    private volatile Instant lastSwapAt = Instant.EPOCH;
+    
+    /**
+     * Применить текущие VpnProperties к Xray
+     * Если hot swap выключен или Xray не запущен - перезапуск с переносом pending пользователей
+     * @throws IllegalStateException замена уже выполняется или слишком частая: изменения НЕ применены,
+     *                               вызывающий повторяет позже
+     */
+    public void reload() throws IOException {
+        reload(() -> { }, () -> { });
+    }
+    
+    /**
+     * Изменить настройки и применить их под блокировкой замены
+     * Параллельная замена не подхватит изменение раньше времени, а при ошибке применения
+     * rollback выполняется до того, как следующая замена прочитает настройки
+     * @param change изменение VpnProperties (не вызывается, если замена уже выполняется)
+     * @param rollback отмена изменения, если Xray его не принял
+     */
+    public void reload(Runnable change, Runnable rollback) throws IOException {
+        VpnProperties.HotSwap hotSwap = vpnProperties.getHotSwap();
+        
+        // Ждать текущую замену нельзя (дренирование идёт до drain-timeout), молча пропускать тоже:
+        // изменения вызывающего не попадут в Xray
+        if (!swapLock.tryLock()) {
+            throw new IllegalStateException("Hot swap уже выполняется, изменения не применены");
+        }
+        
+        try {
+            boolean swap = hotSwap.isEnabled() && xrayService.isRunning();
+            if (swap) {
+                Duration sinceLast = Duration.between(lastSwapAt, Instant.now());
+                if (sinceLast.compareTo(hotSwap.getMinInterval()) < 0) {
+                    throw new IllegalStateException("Слишком частая замена Xray, следующая возможна через "
+                        + hotSwap.getMinInterval().minus(sinceLast).toSeconds() + " сек");
+                }
+            }
+            
+            change.run();
+            try {
+                if (!swap) {
+                    restart(hotSwap);
+                } else if (hotSwap.getMode() == VpnProperties.HotSwap.Mode.HANDOFF) {
+                    handoff(hotSwap);
+                } else {
+                    reusePortSwap(hotSwap);
+                }
+            } catch (IOException | RuntimeException e) {
+                rollback.run();
+                throw e;
+            }
+            
+            if (swap) {
+                lastSwapAt = Instant.now();
+            }
+        } finally {
+            swapLock.unlock();
+        }
+    }
+    
+    /**
+     * Blue-green замена: оба процесса слушают порт, старый дренируется
+     */
+    private void reusePortSwap(VpnProperties.HotSwap hotSwap) throws IOException {
+        String oldApi = xrayService.getActiveApiServer();
+        String newApi = oldApi.equals(vpnProperties.getApiServer())
+            ? hotSwap.getStagingApiServer()
+            : vpnProperties.getApiServer();
+        String stagingPath = vpnProperties.getConfigPath() + ".staging";
+        
+        log.info("🔄 Hot swap Xray: API {} → {}", oldApi, newApi);
+        
+        xrayService.generateConfigFile(stagingPath, newApi);
+        xrayService.validateConfig(stagingPath);
+        
+        Process staging = xrayService.launchProcess(stagingPath, "Xray-staging");
+        if (!xrayGrpcClient.waitForApi(newApi, hotSwap.getReadyTimeout())) {
+            xrayService.stopProcess(staging);
+            throw new IOException("Staging Xray не поднял API за " + hotSwap.getReadyTimeout());
+        }
+        
+        // Конфиг копируется до переключения: после promote ошибка уже не откатывается
+        try {
+            Files.copy(Path.of(stagingPath), Path.of(vpnProperties.getConfigPath()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            xrayService.stopProcess(staging);
+            throw e;
+        }
+        
+        // Новый процесс готов - переключаем управление и переносим pending пользователей
+        Process old = xrayService.promote(staging, newApi);
+        xrayGrpcClient.switchTarget(newApi);
+        syncPendingUsers();
+        
+        // Старый процесс больше не принимает новые подключения
+        for (String tag : xrayService.userInboundTags()) {
+            try {
+                xrayGrpcClient.removeInbound(oldApi, tag);
+            } catch (RuntimeException e) {
+                log.warn("⚠️ Не удалось снять inbound {} со старого процесса, дренируем как есть", tag);
+            }
+        }
+        
+        drain(old, hotSwap.getDrainTimeout());
+        
+        // Повторная синхронизация: пользователи, добавленные во время переключения
+        syncPendingUsers();
+        if (old != null && old.isAlive()) {
+            xrayService.stopProcess(old);
+        }
+        
+        log.info("✅ Hot swap завершён, активный API: {}", newApi);
+    }
+    
+    /**
+     * Быстрая пересадка порта: проверенный заранее конфиг, stop + start без паузы
+     */
+    private void handoff(VpnProperties.HotSwap hotSwap) throws IOException {
+        String apiServer = xrayService.getActiveApiServer();
+        String stagingPath = vpnProperties.getConfigPath() + ".staging";
+        
+        log.info("🔄 Handoff Xray на том же порту");
+        
+        xrayService.generateConfigFile(stagingPath, apiServer);
+        xrayService.validateConfig(stagingPath);
+        byte[] previous = readConfig();
+        Files.move(Path.of(stagingPath), Path.of(vpnProperties.getConfigPath()), StandardCopyOption.REPLACE_EXISTING);
+        
+        restartOrRestore(apiServer, hotSwap.getReadyTimeout(), previous);
+        
+        log.info("✅ Handoff завершён");
+    }
+    
+    /**
+     * Перезапуск без hot swap: туннели рвутся, но pending пользователи переносятся так же,
+     * как при замене - иначе их UUID из уже выданных QR кодов перестают работать
+     */
+    private void restart(VpnProperties.HotSwap hotSwap) throws IOException {
+        String apiServer = xrayService.getActiveApiServer();
+        
+        log.info("🔄 Перезапуск Xray (hot swap выключен или Xray не запущен)");
+        
+        byte[] previous = readConfig();
+        xrayService.generateConfigFile();
+        
+        restartOrRestore(apiServer, hotSwap.getReadyTimeout(), previous);
+        
+        log.info("✅ Перезапуск завершён");
+    }
+    
+    /**
+     * stop + start с уже записанным новым конфигом
+     * Если новый процесс не поднял API, возвращается прежний конфиг и Xray запускается с ним:
+     * rollback вызывающего откатывает только VpnProperties, и без этого Xray продолжил бы работать
+     * с новым конфигом (например, с Reality ключом, которого уже нет в выдаваемых ссылках)
+     * @param previous прежний конфиг (null - файла не было, возвращать нечего)
+     */
+    private void restartOrRestore(String apiServer, Duration readyTimeout, byte[] previous) throws IOException {
+        boolean ready;
+        try {
+            // stopProcess ждёт завершения процесса - порт свободен, пауза перед стартом не нужна
+            xrayService.stopXray();
+            xrayService.startXray();
+            ready = xrayGrpcClient.waitForApi(apiServer, readyTimeout);
+        } catch (IOException | RuntimeException e) {
+            restore(previous, apiServer, readyTimeout);
+            throw e;
+        }
+        if (!ready) {
+            restore(previous, apiServer, readyTimeout);
+            throw new IOException("Xray не поднял API за " + readyTimeout + ", возвращён прежний конфиг");
+        }
+        syncPendingUsers();
+    }
+    
+    /**
+     * Вернуть прежний конфиг и перезапустить Xray с ним
+     * Не бросает исключений: вызывающий сообщает исходную ошибку
+     */
+    private void restore(byte[] previous, String apiServer, Duration readyTimeout) {
+        if (previous == null) {
+            log.error("❌ Xray не принял новый конфиг, прежнего конфига нет - Xray остановлен");
+            return;
+        }
+        
+        log.warn("↩️ Xray не принял новый конфиг, возвращаем прежний");
+        try {
+            Files.write(Path.of(vpnProperties.getConfigPath()), previous);
+            xrayService.stopXray();
+            xrayService.startXray();
+            if (xrayGrpcClient.waitForApi(apiServer, readyTimeout)) {
+                syncPendingUsers();
+            } else {
+                log.error("❌ Xray не поднял API и с прежним конфигом");
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("❌ Не удалось вернуть прежний конфиг Xray: {}", e.getMessage(), e);
+        }
+    }
+    
+    private byte[] readConfig() throws IOException {
+        Path configFile = Path.of(vpnProperties.getConfigPath());
+        return Files.exists(configFile) ? Files.readAllBytes(configFile) : null;
+    }
+    
+    /**
+     * Ждём пока старый процесс дообслужит туннели или завершится сам
+     */
+    private void drain(Process old, Duration drainTimeout) {
+        if (old == null) {
+            return;
+        }
+        
+        log.info("⏳ Дренирование старого Xray: до {} сек", drainTimeout.toSeconds());
+        try {
+            old.waitFor(drainTimeout.toMillis(), java.util.concurrent.TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Pending пользователи живут только в памяти Xray - переносим их в новый процесс
+     */
+    private void syncPendingUsers() {
+        for (PendingClient client : pendingClientService.getAll()) {
+            try {
+                xrayGrpcClient.addUser(client.getUuid(), client.getPolicyLevel());
+            } catch (RuntimeException e) {
+                // Пользователь уже есть в новом процессе
+                log.debug("Pending клиент {} уже перенесён", client.getUuid());
+            }
+        }
+    }
+}
@@ -3,8 +3,12 @@ package com.example.vpn.service;
 import com.example.vpn.config.VpnProperties;
 import com.example.vpn.model.VpnClient;
 import com.example.vpn.model.XrayConfig;
+import com.example.vpn.model.XrayConfigTypeAdapterFactory;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -12,6 +16,8 @@ import org.springframework.stereotype.Service;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -29,10 +35,22 @@ public class XrayService {
     
     private final VpnProperties vpnProperties;
     private final VpnClientService vpnClientService;
-    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final PolicyTierService policyTierService;
+    private final EgressService egressService;
+    private final DnsService dnsService;
+    private final RoutingPolicyService routingPolicyService;
+    private final TransportService transportService;
+    private final ResourceGovernorService resourceGovernorService;
+    private final Gson gson = new GsonBuilder()
+        .registerTypeAdapterFactory(new XrayConfigTypeAdapterFactory())
+        .setPrettyPrinting()
+        .create();
     
     // Хранит запущенный процесс Xray
-    private Process xrayProcess;
+    private volatile Process xrayProcess;
+    
+    // Адрес API, на котором слушает текущий процесс (меняется при hot swap)
+    private volatile String activeApiServer;
     
     /**
      * Запускает Xray процесс с конфигурацией
@@ -46,21 +64,74 @@ public class XrayService {
         
         // Запускаем процесс Xray
         log.info("Запуск Xray процесса...");
+        xrayProcess = launchProcess(vpnProperties.getConfigPath(), "Xray");
+        
+        log.info("Xray успешно запущен на порту {}", vpnProperties.getXrayPort());
+    }
+    
+    /**
+     * Запускает отдельный процесс Xray с указанным конфигом
+     * Используется hot swap для staging процесса, текущий процесс не трогает
+     */
+    public Process launchProcess(String configPath, String logPrefix) throws IOException {
         ProcessBuilder processBuilder = new ProcessBuilder(
             vpnProperties.getXrayPath(),  // Путь к бинарнику xray
             "run",                         // Команда запуска
-            "-c", vpnProperties.getConfigPath()  // Указываем файл конфигурации
+            "-c", configPath               // Указываем файл конфигурации
         );
         
         // Перенаправляем вывод процесса в логи Java приложения
         processBuilder.redirectErrorStream(true);
         
-        xrayProcess = processBuilder.start();
+        // GOMAXPROCS/GOMEMLIMIT/GOGC по лимитам контейнера, закрепление за CPU
+        resourceGovernorService.apply(processBuilder);
+        
+        Process process = processBuilder.start();
         
         // Запускаем поток для чтения логов Xray
-        startLogReader();
+        startLogReader(process, logPrefix);
         
-        log.info("Xray успешно запущен на порту {}", vpnProperties.getXrayPort());
+        return process;
+    }
+    
+    /**
+     * Проверяет конфиг без запуска сервера (xray run -test)
+     */
+    public void validateConfig(String configPath) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(
+            vpnProperties.getXrayPath(), "run", "-test", "-c", configPath
+        );
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        
+        try {
+            int exitCode = processBuilder.start().waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Конфиг Xray не прошёл проверку, код выхода: " + exitCode);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Проверка конфига Xray прервана", e);
+        }
+    }
+    
+    /**
+     * Делает новый процесс текущим и возвращает предыдущий
+     * Старый процесс не останавливается - его дренирует вызывающий код
+     */
+    public synchronized Process promote(Process newProcess, String apiServer) {
+        Process previous = xrayProcess;
+        xrayProcess = newProcess;
+        activeApiServer = apiServer;
+        return previous;
+    }
+    
+    /**
+     * Адрес API текущего процесса Xray
+     */
+    public String getActiveApiServer() {
+        String apiServer = activeApiServer;
+        return apiServer != null ? apiServer : vpnProperties.getApiServer();
     }
     
     /**
@@ -69,38 +140,36 @@ public class XrayService {
     public void stopXray() {
         if (xrayProcess != null && xrayProcess.isAlive()) {
             log.info("Остановка Xray процесса...");
-            xrayProcess.destroy(); // Мягкая остановка
-            
-            try {
-                // Ждем 5 секунд для корректного завершения
-                if (!xrayProcess.waitFor(5, java.util.concurrent.TimeUnit.SECONDS)) {
-                    log.warn("Процесс не завершился, принудительное завершение");
-                    xrayProcess.destroyForcibly(); // Жесткая остановка
-                }
-                log.info("Xray успешно остановлен");
-            } catch (InterruptedException e) {
-                log.error("Ошибка при остановке Xray", e);
-                Thread.currentThread().interrupt();
-            }
+            stopProcess(xrayProcess);
         } else {
             log.warn("Xray не запущен");
         }
     }
     
     /**
-     * Перезапускает Xray (остановка + запуск)
+     * Останавливает конкретный процесс Xray (мягко, затем принудительно)
      */
-    public void restartXray() throws IOException {
-        log.info("Перезапуск Xray...");
-        stopXray();
+    public void stopProcess(Process process) {
+        process.destroy(); // Мягкая остановка
         
         try {
-            Thread.sleep(1000); // Пауза между остановкой и запуском
+            // Ждем 5 секунд для корректного завершения
+            if (!process.waitFor(5, java.util.concurrent.TimeUnit.SECONDS)) {
+                log.warn("Процесс не завершился, принудительное завершение");
+                process.destroyForcibly(); // Жесткая остановка
+            }
+            log.info("Xray успешно остановлен");
         } catch (InterruptedException e) {
+            log.error("Ошибка при остановке Xray", e);
             Thread.currentThread().interrupt();
         }
-        
-        startXray();
+    }
+    
+    /**
+     * Текущий процесс Xray (null, если ещё не запускался)
+     */
+    public Process getProcess() {
+        return xrayProcess;
     }
     
     /**
@@ -117,6 +186,121 @@ public class XrayService {
      * Включает gRPC API для управления без перезапуска
      */
     public void generateConfigFile() throws IOException {
+        generateConfigFile(vpnProperties.getConfigPath(), getActiveApiServer());
+    }
+    
+    /**
+     * Генерирует конфиг в указанный файл с указанным адресом API
+     * Используется hot swap для staging конфига
+     */
+    public void generateConfigFile(String configPath, String apiServer) throws IOException {
+        List<XrayConfig.Client> xrayClients = loadXrayClients();
+        XrayConfig config = buildConfig(apiServer, xrayClients);
+        
+        // Пишем конфиг сразу в файл, без промежуточной строки на весь конфиг
+        long start = System.nanoTime();
+        try (Writer writer = Files.newBufferedWriter(Path.of(configPath))) {
+            gson.toJson(config, XrayConfig.class, writer);
+        }
+        
+        log.info("✅ Конфигурационный файл создан с {} клиентами за {} мс",
+            xrayClients.size(), (System.nanoTime() - start) / 1_000_000);
+        log.info("🔧 gRPC API включен на {}", apiServer);
+    }
+    
+    /**
+     * Загружает активных клиентов из БД и конвертирует в клиентов Xray
+     */
+    public List<XrayConfig.Client> loadXrayClients() {
+        // Загружаем всех активных клиентов
+        List<VpnClient> activeClients;
+        try {
+            activeClients = vpnClientService.getActiveClients();
+            log.info("Найдено активных клиентов: {}", activeClients.size());
+        } catch (Exception e) {
+            // При первом запуске таблица может не существовать
+            log.warn("Не удалось загрузить клиентов из БД (возможно первый запуск): {}", e.getMessage());
+            activeClients = new ArrayList<>();
+        }
+        
+        // Конвертируем в Xray клиентов
+        return activeClients.stream()
+            .map(vpnClient -> {
+                XrayConfig.Client client = new XrayConfig.Client();
+                client.setId(vpnClient.getUuid());
+                // UUID как email - так же, как при добавлении через gRPC (статистика и удаление по UUID)
+                client.setEmail(vpnClient.getUuid());
+                client.setLevel(vpnClient.getPolicyLevel());
+                // Для Reality с XTLS Vision
+                if (vpnProperties.getReality().isEnabled()) {
+                    client.setFlow("xtls-rprx-vision");
+                }
+                return client;
+            })
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * Конфиг без клиентов в JSON - всё, что зависит только от настроек
+     * Используется для digest при старте
+     */
+    public String renderSettings(String apiServer) {
+        return gson.toJson(buildConfig(apiServer, List.of()));
+    }
+    
+    /**
+     * Заменяет только список клиентов в существующем конфиге
+     * Остальные секции файла не пересобираются
+     */
+    public void writeClientsSection(String configPath, List<XrayConfig.Client> clients) throws IOException {
+        JsonObject root;
+        try (Reader reader = Files.newBufferedReader(Path.of(configPath))) {
+            root = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        
+        for (TransportService.InboundProfile profile : transportService.inbounds()) {
+            for (JsonElement inbound : root.getAsJsonArray("inbounds")) {
+                JsonObject inboundObject = inbound.getAsJsonObject();
+                if (profile.tag().equals(inboundObject.get("tag").getAsString())) {
+                    inboundObject.getAsJsonObject("settings").add("clients", gson.toJsonTree(clientsFor(profile, clients)));
+                }
+            }
+        }
+        
+        try (Writer writer = Files.newBufferedWriter(Path.of(configPath))) {
+            gson.toJson(root, writer);
+        }
+        log.info("✅ В конфиге обновлена секция клиентов: {} клиентов", clients.size());
+    }
+    
+    /**
+     * Заменяет только секцию routing в существующем конфиге (после живой замены правил)
+     * Иначе перезапуск Xray вернул бы старые правила
+     */
+    public void writeRoutingSection(String configPath, XrayConfig.Routing routing) throws IOException {
+        JsonObject root;
+        try (Reader reader = Files.newBufferedReader(Path.of(configPath))) {
+            root = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        
+        root.add("routing", gson.toJsonTree(routing));
+        
+        try (Writer writer = Files.newBufferedWriter(Path.of(configPath))) {
+            gson.toJson(root, writer);
+        }
+    }
+    
+    /**
+     * Теги inbound, через которые подключаются пользователи
+     */
+    public List<String> userInboundTags() {
+        return transportService.userInboundTags();
+    }
+    
+    /**
+     * Собирает модель конфига Xray с указанными клиентами
+     */
+    public XrayConfig buildConfig(String apiServer, List<XrayConfig.Client> xrayClients) {
         XrayConfig config = new XrayConfig();
         
         // === Логирование ===
@@ -127,8 +311,11 @@ public class XrayService {
         // === gRPC API ===
         XrayConfig.Api api = new XrayConfig.Api();
         api.setTag("api");
-        api.setListen(vpnProperties.getApiServer());
-        api.setServices(List.of("HandlerService", "StatsService", "LoggerService"));
+        api.setListen(apiServer);
+        // RoutingService - замена правил маршрутизации без перезапуска
+        api.setServices(routingPolicyService.isEnabled()
+            ? List.of("HandlerService", "StatsService", "LoggerService", "RoutingService")
+            : List.of("HandlerService", "StatsService", "LoggerService"));
         config.setApi(api);
         
         // === Статистика ===
@@ -137,10 +324,8 @@ public class XrayService {
         // === Политики ===
         XrayConfig.Policy policy = new XrayConfig.Policy();
         
-        // Создаём Map для уровней политик
-        java.util.Map<String, XrayConfig.PolicyLevel> levels = new java.util.HashMap<>();
-        levels.put("0", new XrayConfig.PolicyLevel());
-        policy.setLevels(levels);
+        // Уровни политик = тарифы пользователей
+        policy.setLevels(policyTierService.buildLevels());
         
         XrayConfig.PolicySystem policySystem = new XrayConfig.PolicySystem();
         policySystem.setStatsInboundUplink(true);
@@ -150,48 +335,61 @@ public class XrayService {
         policy.setSystem(policySystem);
         config.setPolicy(policy);
         
-        // === Настройка входящего подключения (inbound) для VPN ===
-        XrayConfig.Inbound vpnInbound = new XrayConfig.Inbound();
-        vpnInbound.setTag(vpnProperties.getInboundTag());
-        vpnInbound.setPort(vpnProperties.getXrayPort());
-        vpnInbound.setProtocol("vless");
+        // === Входящие подключения (inbound): TCP + Reality и дополнительные транспорты ===
+        List<XrayConfig.Inbound> inbounds = new ArrayList<>();
+        for (TransportService.InboundProfile profile : transportService.inbounds()) {
+            inbounds.add(buildInbound(profile, clientsFor(profile, xrayClients)));
+        }
+        config.setInbounds(inbounds);
         
-        // Загружаем всех активных клиентов
-        List<VpnClient> activeClients;
-        try {
-            activeClients = vpnClientService.getActiveClients();
-            log.info("Найдено активных клиентов: {}", activeClients.size());
-        } catch (Exception e) {
-            // При первом запуске таблица может не существовать
-            log.warn("Не удалось загрузить клиентов из БД (возможно первый запуск): {}", e.getMessage());
-            activeClients = new ArrayList<>();
+        // === Исходящие подключения (outbound) - прямой доступ в интернет, по адресу на egress ===
+        List<XrayConfig.Outbound> outbounds = egressService.buildOutbounds();
+        XrayConfig.Outbound block = routingPolicyService.blockOutbound();
+        if (block != null) {
+            outbounds.add(block);
         }
+        config.setOutbounds(outbounds);
         
-        // Конвертируем в Xray клиентов
-        List<XrayConfig.Client> xrayClients = activeClients.stream()
-            .map(vpnClient -> {
-                XrayConfig.Client client = new XrayConfig.Client();
-                client.setId(vpnClient.getUuid());
-                client.setEmail(vpnClient.getDeviceInfo() != null ? 
-                    vpnClient.getDeviceInfo() : "client");
-                // Для Reality с XTLS Vision
-                if (vpnProperties.getReality().isEnabled()) {
-                    client.setFlow("xtls-rprx-vision");
-                }
-                return client;
-            })
-            .collect(Collectors.toList());
+        // === Маршрутизация: блокировки, прямой выход, балансировка egress ===
+        config.setRouting(routingPolicyService.buildRouting(userInboundTags()));
+        config.setBurstObservatory(egressService.buildObservatory());
+        
+        // === Встроенный DNS с общим кэшем ===
+        config.setDns(dnsService.buildDns());
+        
+        return config;
+    }
+    
+    /**
+     * VLESS inbound для профиля транспорта
+     */
+    private XrayConfig.Inbound buildInbound(TransportService.InboundProfile profile, List<XrayConfig.Client> clients) {
+        XrayConfig.Inbound inbound = new XrayConfig.Inbound();
+        inbound.setTag(profile.tag());
+        inbound.setPort(profile.port());
+        inbound.setProtocol("vless");
         
-        XrayConfig.InboundSettings vpnInboundSettings = new XrayConfig.InboundSettings();
-        vpnInboundSettings.setClients(xrayClients);
-        vpnInbound.setSettings(vpnInboundSettings);
+        XrayConfig.InboundSettings inboundSettings = new XrayConfig.InboundSettings();
+        inboundSettings.setClients(clients);
+        inbound.setSettings(inboundSettings);
         
         // Настройка транспорта с Reality
         XrayConfig.StreamSettings streamSettings = new XrayConfig.StreamSettings();
-        streamSettings.setNetwork("tcp");
+        streamSettings.setNetwork(profile.network());
+        
+        VpnProperties.Transport transport = profile.transport();
+        if (transport != null && transport.getNetwork() == VpnProperties.Transport.Network.XHTTP) {
+            XrayConfig.XhttpSettings xhttp = new XrayConfig.XhttpSettings();
+            xhttp.setPath(transport.getPath());
+            xhttp.setMode(transport.getMode());
+            streamSettings.setXhttpSettings(xhttp);
+        } else if (transport != null && transport.getNetwork() == VpnProperties.Transport.Network.GRPC) {
+            XrayConfig.GrpcSettings grpc = new XrayConfig.GrpcSettings();
+            grpc.setServiceName(transport.getServiceName());
+            streamSettings.setGrpcSettings(grpc);
+        }
         
         if (vpnProperties.getReality().isEnabled()) {
-            log.info("🔐 Reality протокол включен");
             streamSettings.setSecurity("reality");
             
             XrayConfig.RealitySettings realitySettings = new XrayConfig.RealitySettings();
@@ -204,44 +402,74 @@ public class XrayService {
             
             streamSettings.setRealitySettings(realitySettings);
             
-            log.info("Reality dest: {}", realitySettings.getDest());
-            log.info("Reality serverNames: {}", realitySettings.getServerNames());
-            log.info("Reality shortIds: {}", realitySettings.getShortIds());
+            if (profile.isPrimary()) {
+                log.info("🔐 Reality протокол включен");
+                log.info("Reality dest: {}", realitySettings.getDest());
+                log.info("Reality serverNames: {}", realitySettings.getServerNames());
+                log.info("Reality shortIds: {}", realitySettings.getShortIds());
+            }
         } else {
-            log.warn("⚠️ Reality отключен - соединение НЕ защищено от DPI!");
+            if (profile.isPrimary()) {
+                log.warn("⚠️ Reality отключен - соединение НЕ защищено от DPI!");
+            }
             streamSettings.setSecurity("none");
         }
         
-        vpnInbound.setStreamSettings(streamSettings);
-        
-        config.setInbounds(List.of(vpnInbound));
-        
-        // === Настройка исходящего подключения (outbound) - прямой доступ в интернет ===
-        XrayConfig.Outbound outbound = new XrayConfig.Outbound();
-        outbound.setProtocol("freedom"); // "freedom" = прямое подключение без прокси
-        outbound.setTag("direct");
-        
-        config.setOutbounds(List.of(outbound));
+        // Для hot swap старый и новый процесс слушают один порт одновременно
+        if (vpnProperties.getHotSwap().isEnabled()
+                && vpnProperties.getHotSwap().getMode() == VpnProperties.HotSwap.Mode.REUSE_PORT) {
+            streamSettings.setSockopt(reusePortSockopt());
+        }
         
-        // Сохраняем конфиг в файл
-        String jsonConfig = gson.toJson(config);
-        Files.writeString(Path.of(vpnProperties.getConfigPath()), jsonConfig);
+        inbound.setStreamSettings(streamSettings);
+        inbound.setSniffing(routingPolicyService.buildSniffing());
+        return inbound;
+    }
+    
+    /**
+     * Клиенты для inbound: Vision только на основном TCP, на XHTTP/gRPC flow не задаётся
+     */
+    private List<XrayConfig.Client> clientsFor(TransportService.InboundProfile profile, List<XrayConfig.Client> clients) {
+        if (profile.isPrimary()) {
+            return clients;
+        }
+        return clients.stream()
+            .map(client -> {
+                XrayConfig.Client copy = new XrayConfig.Client();
+                copy.setId(client.getId());
+                copy.setEmail(client.getEmail());
+                copy.setLevel(client.getLevel());
+                return copy;
+            })
+            .toList();
+    }
+    
+    /**
+     * SO_REUSEPORT (SOL_SOCKET=1, SO_REUSEPORT=15 в Linux) на слушающем сокете inbound
+     */
+    private XrayConfig.Sockopt reusePortSockopt() {
+        XrayConfig.CustomSockopt reusePort = new XrayConfig.CustomSockopt();
+        reusePort.setSystem("linux");
+        reusePort.setType("int");
+        reusePort.setLevel("1");
+        reusePort.setOpt("15");
+        reusePort.setValue("1");
         
-        log.info("✅ Конфигурационный файл создан с {} клиентами", xrayClients.size());
-        log.info("🔧 gRPC API включен на {}", vpnProperties.getApiServer());
-        log.debug("Содержимое конфига:\n{}", jsonConfig);
+        XrayConfig.Sockopt sockopt = new XrayConfig.Sockopt();
+        sockopt.setCustomSockopt(List.of(reusePort));
+        return sockopt;
     }
     
     /**
      * Читает логи из процесса Xray и выводит их в наши логи
      */
-    private void startLogReader() {
+    private void startLogReader(Process process, String logPrefix) {
         new Thread(() -> {
             try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(xrayProcess.getInputStream()))) {
+                    new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
-                    log.info("[Xray] {}", line);
+                    log.info("[{}] {}", logPrefix, line);
                 }
             } catch (IOException e) {
                 log.error("Ошибка чтения логов Xray", e);
@@ -0,0 +1,53 @@
+package com.example.vpn;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Общий код замеров (@Tag("benchmark"), запуск: ./gradlew benchmark)
+ *
+ * Без JMH: прогрев, затем замер в том же потоке. Пропускная способность - операций в секунду,
+ * аллокации - байт на операцию по счётчику потока (com.sun.management.ThreadMXBean).
+ * Цифры для сравнения вариантов между собой на одной машине, а не абсолютные.
+ */
+public final class BenchmarkSupport {
+    
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    private BenchmarkSupport() {
+    }
+    
+    public record Result(String name, long operations, double opsPerSecond, double bytesPerOp, double microsPerOp) {
+        
+        @Override
+        public String toString() {
+            return "%-40s %,14.0f оп/с %,10.1f байт/оп %,10.2f мкс/оп".formatted(
+                name, opsPerSecond, bytesPerOp, microsPerOp);
+        }
+    }
+    
+    /**
+     * Прогреть operation warmup раз, затем замерить iterations вызовов и напечатать результат
+     */
+    public static Result measure(String name, int warmup, int iterations, Runnable operation) {
+        for (int i = 0; i < warmup; i++) {
+            operation.run();
+        }
+        
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        
+        Result result = new Result(name, iterations,
+            iterations * 1_000_000_000.0 / elapsed,
+            (double) allocated / iterations,
+            elapsed / 1000.0 / iterations);
+        System.out.println(result);
+        return result;
+    }
+}
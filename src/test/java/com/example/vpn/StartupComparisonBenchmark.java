@@ -0,0 +1,189 @@
+package com.example.vpn;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Сравнение режимов запуска (JVM, AOT + CDS, native image): время от запуска процесса до готовности
+ * и до первого QR кода. Процесс приложения запускается извне, в самом приложении замеров нет
+ *
+ * Режимы - системные свойства startup.<режим>=<команда>, например:
+ *   ./gradlew benchmark --tests '*StartupComparisonBenchmark' \
+ *     -Dstartup.jvm="java -jar build/libs/vpn-0.0.1-SNAPSHOT.jar" \
+ *     -Dstartup.jvm-aot="java -XX:SharedArchiveFile=build/cds/application.jsa -Dspring.aot.enabled=true -jar build/cds/vpn-0.0.1-SNAPSHOT.jar" \
+ *     -Dstartup.native=build/native/nativeCompile/vpn \
+ *     -Dstartup.cookie="JSESSIONID=..."
+ * Нужны БД, Keycloak и бинарник Xray, как для обычного запуска.
+ * Готовность - строка "Стадии запуска" в выводе процесса. Первый QR - ответ GET / со страницей QR кода;
+ * для него нужна cookie сессии вошедшего пользователя (startup.cookie), без неё замеряется только готовность.
+ * startup.url - адрес главной страницы (по умолчанию https://localhost:8080/), startup.runs - запусков на режим.
+ * Сертификат приложения самоподписанный (src/main/resources/ssl) - проверка сертификата отключена.
+ */
+@Tag("benchmark")
+class StartupComparisonBenchmark {
+    
+    private static final String READY_MARKER = "Стадии запуска";
+    private static final String QR_MARKER = "data:image/png;base64,";
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(20);
+    
+    private static final List<String> RESERVED = List.of("url", "cookie", "runs");
+    
+    private final HttpClient http = HttpClient.newBuilder()
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .connectTimeout(Duration.ofSeconds(1))
+        .sslContext(trustAll())
+        .build();
+    
+    private record Run(long readyMillis, long firstQrMillis) {
+    }
+    
+    @Test
+    void compareStartupModes() throws Exception {
+        Map<String, String> modes = modes();
+        assumeFalse(modes.isEmpty(), "Режимы не заданы: -Dstartup.<режим>=<команда>");
+        
+        URI url = URI.create(System.getProperty("startup.url", "https://localhost:8080/"));
+        String cookie = System.getProperty("startup.cookie");
+        int runs = Integer.getInteger("startup.runs", 3);
+        
+        for (Map.Entry<String, String> mode : modes.entrySet()) {
+            List<Run> results = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                results.add(measure(mode.getValue(), url, cookie));
+            }
+            assertFalse(results.isEmpty());
+            System.out.printf("%-10s готовность %s, первый QR %s%n", mode.getKey(),
+                summary(results.stream().mapToLong(Run::readyMillis).toArray()),
+                cookie != null ? summary(results.stream().mapToLong(Run::firstQrMillis).toArray()) : "- (нет startup.cookie)");
+        }
+    }
+    
+    private Run measure(String command, URI url, String cookie) throws Exception {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder("sh", "-c", "exec " + command)
+            .redirectErrorStream(true)
+            .start();
+        try {
+            CompletableFuture<Long> ready = CompletableFuture.supplyAsync(() -> awaitMarker(process, start));
+            long firstQr = cookie != null ? awaitFirstQr(url, cookie, start) : -1;
+            return new Run(ready.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS), firstQr);
+        } finally {
+            process.descendants().forEach(ProcessHandle::destroy);
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+    
+    /**
+     * Читает вывод процесса до конца: иначе при заполнении pipe процесс встанет
+     */
+    private static long awaitMarker(Process process, long start) {
+        long readyAt = -1;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (readyAt < 0 && line.contains(READY_MARKER)) {
+                    readyAt = (System.nanoTime() - start) / 1_000_000;
+                }
+            }
+        } catch (IOException e) {
+            // Процесс остановлен - вывод закрыт
+        }
+        if (readyAt < 0) {
+            throw new IllegalStateException("Процесс завершился без строки \"" + READY_MARKER + "\"");
+        }
+        return readyAt;
+    }
+    
+    private long awaitFirstQr(URI url, String cookie, long start) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(url)
+            .header("Cookie", cookie)
+            .timeout(Duration.ofSeconds(5))
+            .build();
+        long deadline = start + TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200 && response.body().contains(QR_MARKER)) {
+                    return (System.nanoTime() - start) / 1_000_000;
+                }
+            } catch (IOException e) {
+                // Ещё не слушает порт
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+        throw new IllegalStateException("Нет QR кода на " + url + " за " + TIMEOUT);
+    }
+    
+    private static SSLContext trustAll() {
+        System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] {new X509TrustManager() {
+                @Override
+                public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                }
+                
+                @Override
+                public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                }
+                
+                @Override
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+            }}, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static Map<String, String> modes() {
+        Map<String, String> modes = new TreeMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("startup.") && !RESERVED.contains(name.substring("startup.".length()))) {
+                modes.put(name.substring("startup.".length()), System.getProperty(name));
+            }
+        }
+        return modes;
+    }
+    
+    private static String summary(long[] millis) {
+        long min = Long.MAX_VALUE;
+        long total = 0;
+        for (long value : millis) {
+            min = Math.min(min, value);
+            total += value;
+        }
+        return "мин %d / ср %d мс".formatted(min, total / millis.length);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.vpn.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.example.vpn.BenchmarkSupport;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Аллокации и пропускная способность логирования запроса GET / (две строки на запрос)
+ *
+ * Варианты: строки на INFO без сэмплирования (как было), INFO с LogSamplingFilter 1/100,
+ * DEBUG при уровне INFO (как сейчас на проде). Вывод синхронный в пустой поток, чтобы
+ * в замер попало форматирование, а не очередь AsyncAppender.
+ */
+@Tag("benchmark")
+class LogSamplingBenchmark {
+    
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+    
+    private final String email = "user@example.com";
+    private final String uuid = UUID.randomUUID().toString();
+    
+    @Test
+    void homePageLogging() {
+        Logger info = logger(false);
+        Logger sampled = logger(true);
+        
+        BenchmarkSupport.Result unsampled = BenchmarkSupport.measure("INFO, все строки", WARMUP, ITERATIONS, () -> {
+            info.info("📄 Загрузка главной страницы для пользователя {}", email);
+            info.info("✅ Главная страница загружена. UUID: {}", uuid);
+        });
+        BenchmarkSupport.Result oneInHundred = BenchmarkSupport.measure("INFO, одна из 100", WARMUP, ITERATIONS, () -> {
+            sampled.info("📄 Загрузка главной страницы для пользователя {}", email);
+            sampled.info("✅ Главная страница загружена. UUID: {}", uuid);
+        });
+        BenchmarkSupport.Result debug = BenchmarkSupport.measure("DEBUG при уровне INFO", WARMUP, ITERATIONS, () -> {
+            info.debug("📄 Загрузка главной страницы для пользователя {}", email);
+            info.debug("✅ Главная страница загружена. UUID: {}", uuid);
+        });
+        
+        assertTrue(oneInHundred.bytesPerOp() < unsampled.bytesPerOp());
+        assertTrue(debug.bytesPerOp() < unsampled.bytesPerOp());
+    }
+    
+    private static Logger logger(boolean sampling) {
+        LoggerContext context = new LoggerContext();
+        
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{ISO8601} %-5level [%thread] %logger{36} - %msg%n");
+        encoder.start();
+        
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(context);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+        
+        if (sampling) {
+            LogSamplingFilter filter = new LogSamplingFilter();
+            filter.setContext(context);
+            filter.addLogger("com.example.vpn.controller.HomeController");
+            filter.setSampleRate(100);
+            filter.start();
+            context.addTurboFilter(filter);
+        }
+        
+        Logger logger = context.getLogger("com.example.vpn.controller.HomeController");
+        logger.setLevel(Level.INFO);
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+        return logger;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.vpn.model;
+
+import com.example.vpn.BenchmarkSupport;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Запись XrayConfig с 10k, 100k и 1M клиентов: reflection Gson против XrayConfigTypeAdapterFactory
+ * Вывод в Writer.nullWriter() - в замер попадает только сериализация, не диск
+ * Аллокация на запись - колонка байт/оп в выводе BenchmarkSupport
+ */
+@Tag("benchmark")
+class XrayConfigSerializationBenchmark {
+    
+    // Около 2M записанных клиентов на замер: 200 итераций для 10k, 3 для 1M
+    private static final int CLIENTS_PER_RUN = 2_000_000;
+    private static final int MIN_ITERATIONS = 3;
+    // Сверка вывода целиком - только на размерах, где две строки JSON помещаются в heap теста
+    private static final int MAX_COMPARED_CLIENTS = 100_000;
+    
+    @ParameterizedTest(name = "{0} клиентов")
+    @ValueSource(ints = {10_000, 100_000, 1_000_000})
+    void configWithManyClients(int clients) {
+        XrayConfig config = config(clients);
+        Gson reflection = new GsonBuilder().setPrettyPrinting().create();
+        Gson adapter = new GsonBuilder()
+            .registerTypeAdapterFactory(new XrayConfigTypeAdapterFactory())
+            .setPrettyPrinting()
+            .create();
+        
+        // Сравниваем одинаковую работу
+        if (clients <= MAX_COMPARED_CLIENTS) {
+            assertEquals(reflection.toJson(config), adapter.toJson(config));
+        }
+        
+        int iterations = Math.max(MIN_ITERATIONS, CLIENTS_PER_RUN / clients);
+        int warmup = Math.max(1, iterations / 4);
+        BenchmarkSupport.measure("reflection, " + clients + " клиентов",
+            warmup, iterations, () -> reflection.toJson(config, Writer.nullWriter()));
+        BenchmarkSupport.measure("адаптер, " + clients + " клиентов",
+            warmup, iterations, () -> adapter.toJson(config, Writer.nullWriter()));
+    }
+    
+    private static XrayConfig config(int count) {
+        List<XrayConfig.Client> clients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            XrayConfig.Client client = new XrayConfig.Client();
+            String uuid = UUID.randomUUID().toString();
+            client.setId(uuid);
+            client.setEmail(uuid);
+            client.setFlow("xtls-rprx-vision");
+            client.setLevel(i % 3);
+            clients.add(client);
+        }
+        
+        XrayConfig.InboundSettings settings = new XrayConfig.InboundSettings();
+        settings.setClients(clients);
+        XrayConfig.Inbound inbound = new XrayConfig.Inbound();
+        inbound.setTag("vless-in");
+        inbound.setPort(443);
+        inbound.setProtocol("vless");
+        inbound.setSettings(settings);
+        
+        XrayConfig config = new XrayConfig();
+        config.setLog(new XrayConfig.Log());
+        config.setInbounds(List.of(inbound));
+        return config;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.vpn.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class XrayConfigTypeAdapterFactoryTest {
+    
+    private final Gson reflection = new Gson();
+    private final Gson adapter = new GsonBuilder()
+        .registerTypeAdapterFactory(new XrayConfigTypeAdapterFactory())
+        .create();
+    
+    /**
+     * Все поля всех классов XrayConfig заполнены: поле, добавленное в модель, но забытое
+     * в ручной записи, пропадёт из вывода адаптера и тест упадёт
+     */
+    @Test
+    void writesSameJsonAsReflectionForEveryField() throws Exception {
+        XrayConfig config = (XrayConfig) fill(XrayConfig.class);
+        
+        String expected = reflection.toJson(config);
+        String actual = adapter.toJson(config);
+        
+        assertEquals(expected, actual);
+        assertEquals(config, adapter.fromJson(actual, XrayConfig.class));
+    }
+    
+    @Test
+    void writesSameJsonAsReflectionForDefaults() {
+        XrayConfig config = new XrayConfig();
+        XrayConfig.Inbound inbound = new XrayConfig.Inbound();
+        inbound.setSettings(new XrayConfig.InboundSettings());
+        inbound.setStreamSettings(new XrayConfig.StreamSettings());
+        inbound.setSniffing(new XrayConfig.Sniffing());
+        config.setInbounds(List.of(inbound));
+        config.setLog(new XrayConfig.Log());
+        config.setStats(new XrayConfig.Stats());
+        
+        assertEquals(reflection.toJson(config), adapter.toJson(config));
+    }
+    
+    @Test
+    void dnsServerWithAddressOnlyIsWrittenAsString() {
+        XrayConfig.DnsServer server = new XrayConfig.DnsServer();
+        server.setAddress("1.1.1.1");
+        XrayConfig.Dns dns = new XrayConfig.Dns();
+        dns.setServers(List.of(server));
+        XrayConfig config = new XrayConfig();
+        config.setDns(dns);
+        
+        // Единственное намеренное расхождение с reflection: так Xray принимает сервер без опций
+        assertEquals("{\"dns\":{\"servers\":[\"1.1.1.1\"]}}", adapter.toJson(config));
+    }
+    
+    private static Object fill(Class<?> type) throws Exception {
+        Object value = type.getDeclaredConstructor().newInstance();
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                continue;
+            }
+            field.setAccessible(true);
+            field.set(value, sample(field.getName(), field.getGenericType()));
+        }
+        return value;
+    }
+    
+    private static Object sample(String name, Type type) throws Exception {
+        if (type == String.class) {
+            return name + "-value";
+        }
+        if (type == int.class || type == Integer.class) {
+            return 7;
+        }
+        if (type == long.class || type == Long.class) {
+            return 9L;
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            // Примитивы по умолчанию бывают true - проверяем значение, отличное от умолчания
+            return false;
+        }
+        if (type instanceof ParameterizedType parameterized) {
+            Type[] arguments = parameterized.getActualTypeArguments();
+            if (parameterized.getRawType() == List.class) {
+                return List.of(sample(name, arguments[0]));
+            }
+            if (parameterized.getRawType() == Map.class && arguments[0] == String.class) {
+                return Map.of("1", sample(name, arguments[1]));
+            }
+        }
+        if (type instanceof Class<?> nested && nested.getEnclosingClass() == XrayConfig.class) {
+            return fill(nested);
+        }
+        fail("Тип поля " + name + " не поддержан тестом: " + type);
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.PendingClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdmissionControlServiceTest {
+    
+    private VpnProperties vpnProperties;
+    private PendingClientService pendingClientService;
+    private XrayGrpcClient xrayGrpcClient;
+    private AdmissionControlService admission;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        // Интервалы в минуты: за время теста корзины не успевают восполниться
+        VpnProperties.Admission settings = vpnProperties.getAdmission();
+        settings.setPerUserPerMinute(1);
+        settings.setPerUserBurst(3);
+        settings.setGlobalPerSecond(1);
+        settings.setGlobalBurst(100);
+        pendingClientService = new PendingClientService();
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        when(xrayGrpcClient.getAddUserLatency()).thenReturn(Duration.ZERO);
+        admission = new AdmissionControlService(vpnProperties, pendingClientService, xrayGrpcClient);
+    }
+    
+    @Test
+    void userBurstThenRateLimited() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AdmissionControlService.Decision.ADMIT, admission.tryAdmit("alice"));
+        }
+        assertEquals(AdmissionControlService.Decision.RATE_LIMITED, admission.tryAdmit("alice"));
+        
+        // Корзины пользователей независимы
+        assertEquals(AdmissionControlService.Decision.ADMIT, admission.tryAdmit("bob"));
+        assertEquals(1, admission.getRejectedRateLimitCount());
+    }
+    
+    @Test
+    void globalRejectionDoesNotSpendUserToken() {
+        vpnProperties.getAdmission().setGlobalBurst(2);
+        assertEquals(AdmissionControlService.Decision.ADMIT, admission.tryAdmit("bob"));
+        assertEquals(AdmissionControlService.Decision.ADMIT, admission.tryAdmit("carol"));
+        
+        // Общая корзина пуста: отказы не должны тратить места alice
+        for (int i = 0; i < 5; i++) {
+            assertEquals(AdmissionControlService.Decision.OVERLOADED, admission.tryAdmit("alice"));
+        }
+        
+        vpnProperties.getAdmission().setGlobalBurst(100);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AdmissionControlService.Decision.ADMIT, admission.tryAdmit("alice"));
+        }
+        assertEquals(AdmissionControlService.Decision.RATE_LIMITED, admission.tryAdmit("alice"));
+    }
+    
+    @Test
+    void overloadedByPendingOrSlowGrpc() {
+        vpnProperties.getAdmission().setMaxPending(1);
+        pendingClientService.add(new PendingClient("uuid", "VPN Client", Duration.ofMinutes(5)));
+        assertEquals(AdmissionControlService.Decision.OVERLOADED, admission.tryAdmit("alice"));
+        
+        vpnProperties.getAdmission().setMaxPending(100);
+        when(xrayGrpcClient.getAddUserLatency()).thenReturn(Duration.ofSeconds(1));
+        assertEquals(AdmissionControlService.Decision.OVERLOADED, admission.tryAdmit("alice"));
+        assertEquals(2, admission.getRejectedOverloadCount());
+    }
+    
+    @Test
+    void disabledAdmitsEverything() {
+        vpnProperties.getAdmission().setEnabled(false);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(AdmissionControlService.Decision.ADMIT, admission.tryAdmit("alice"));
+        }
+    }
+}
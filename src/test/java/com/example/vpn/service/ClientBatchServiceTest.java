@@ -0,0 +1,59 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.VpnClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClientBatchServiceTest {
+    
+    private VpnClientService vpnClientService;
+    private XrayGrpcClient xrayGrpcClient;
+    private ClientBatchService batchService;
+    
+    @BeforeEach
+    void setUp() {
+        VpnProperties vpnProperties = new VpnProperties();
+        vpnClientService = mock(VpnClientService.class);
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        ConfigService configService = mock(ConfigService.class);
+        when(configService.generateLinks(anyString(), anyString())).thenAnswer(invocation -> List.of(
+            new ConfigService.LinkProfile("tcp", "tcp", "vless://" + invocation.getArgument(0))));
+        
+        batchService = new ClientBatchService(vpnProperties, vpnClientService, new PolicyTierService(vpnProperties),
+            xrayGrpcClient, configService, new QrCodeService());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchClientsHaveNoKeycloakIdentity() throws Exception {
+        when(xrayGrpcClient.addUsers(any(), anyInt())).thenReturn(Set.of());
+        
+        ClientBatchService.Result result = batchService.provision(3, "Офис", null);
+        
+        ArgumentCaptor<List<VpnClient>> saved = ArgumentCaptor.forClass(List.class);
+        verify(vpnClientService).saveAllClients(saved.capture());
+        assertEquals(3, saved.getValue().size());
+        for (VpnClient client : saved.getValue()) {
+            // Без выдуманных keycloakUserId и email: происхождение - явная отметка
+            assertEquals(VpnClient.Origin.BATCH, client.getOrigin());
+            assertNull(client.getKeycloakUserId());
+            assertNull(client.getEmail());
+        }
+        assertEquals("Офис #1", result.clients().get(0).deviceInfo());
+        assertEquals(0, result.failed());
+    }
+}
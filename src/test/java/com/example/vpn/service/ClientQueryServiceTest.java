@@ -0,0 +1,123 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.ClientSummary;
+import com.example.vpn.model.VpnClient;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClientQueryServiceTest {
+    
+    private static final ClientQueryService.Filter NO_FILTER = new ClientQueryService.Filter(null, null, null, null);
+    private static final LocalDateTime CREATED = LocalDateTime.of(2026, 3, 1, 12, 30, 15, 123_000_000);
+    
+    private EntityManager entityManager;
+    private TypedQuery<ClientSummary> query;
+    private ClientQueryService queryService;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        entityManager = mock(EntityManager.class);
+        query = mock(TypedQuery.class);
+        when(entityManager.createQuery(anyString(), eq(ClientSummary.class))).thenReturn(query);
+        when(query.setMaxResults(anyInt())).thenReturn(query);
+        queryService = new ClientQueryService(new VpnProperties(), entityManager);
+    }
+    
+    @Test
+    void cursorByIdContinuesAfterLastRow() {
+        when(query.getResultList()).thenReturn(rows(1, 4));
+        
+        ClientQueryService.Page first = queryService.list(NO_FILTER, ClientQueryService.SortKey.ID, false, null, 3);
+        
+        assertEquals(3, first.items().size());
+        assertNotNull(first.nextCursor());
+        // base64url без паддинга - курсор можно передать в query string как есть
+        assertTrue(first.nextCursor().matches("[A-Za-z0-9_-]+"));
+        
+        when(query.getResultList()).thenReturn(rows(4, 2));
+        ClientQueryService.Page second = queryService.list(NO_FILTER, ClientQueryService.SortKey.ID, false,
+            first.nextCursor(), 3);
+        
+        verify(query).setParameter("afterId", 3L);
+        assertNull(second.nextCursor());
+        assertTrue(lastJpql().contains("c.id > :afterId"));
+    }
+    
+    @Test
+    void cursorByCreatedAtKeepsTimestampAndId() {
+        when(query.getResultList()).thenReturn(rows(10, 3));
+        
+        ClientQueryService.Page first = queryService.list(NO_FILTER, ClientQueryService.SortKey.CREATED_AT, true,
+            null, 2);
+        queryService.list(NO_FILTER, ClientQueryService.SortKey.CREATED_AT, true, first.nextCursor(), 2);
+        
+        // Составной ключ: у строк одинаковый createdAt, следующая страница различает их по id
+        verify(query).setParameter("afterCreatedAt", CREATED);
+        verify(query).setParameter("afterId", 11L);
+        String jpql = lastJpql();
+        assertTrue(jpql.contains("c.createdAt < :afterCreatedAt OR (c.createdAt = :afterCreatedAt AND c.id < :afterId)"));
+        assertTrue(jpql.endsWith("ORDER BY c.createdAt DESC, c.id DESC"));
+    }
+    
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+            () -> queryService.list(NO_FILTER, ClientQueryService.SortKey.ID, false, "not base64!", 10));
+        // Курсор от сортировки по id не подходит для createdAt
+        String idCursor = Base64.getUrlEncoder().withoutPadding().encodeToString("42".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class,
+            () -> queryService.list(NO_FILTER, ClientQueryService.SortKey.CREATED_AT, false, idCursor, 10));
+        
+        verify(query, never()).getResultList();
+    }
+    
+    @Test
+    void emailPrefixEscapesLikeWildcards() {
+        when(query.getResultList()).thenReturn(List.of());
+        
+        queryService.list(new ClientQueryService.Filter(null, null, null, " a_b%c\\ "),
+            ClientQueryService.SortKey.ID, false, null, 10);
+        
+        verify(query).setParameter("emailPrefix", "a\\_b\\%c\\\\%");
+    }
+    
+    private String lastJpql() {
+        ArgumentCaptor<String> jpql = ArgumentCaptor.forClass(String.class);
+        verify(entityManager, atLeastOnce()).createQuery(jpql.capture(), eq(ClientSummary.class));
+        return jpql.getValue();
+    }
+    
+    private static List<ClientSummary> rows(long firstId, int count) {
+        List<ClientSummary> rows = new ArrayList<>(count);
+        for (long id = firstId; id < firstId + count; id++) {
+            rows.add(new ClientSummary(id, "uuid-" + id, null, null, VpnClient.Origin.BATCH, "device", 0, true,
+                CREATED, null, null));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.vpn.service;
+
+import com.example.vpn.event.PresenceChangedEvent;
+import com.example.vpn.model.PendingClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConnectionEventServiceTest {
+    
+    private static final String UUID = "pending-uuid";
+    
+    private OnlinePresenceService onlinePresenceService;
+    private ConnectionEventService eventService;
+    private PendingClient client;
+    
+    @BeforeEach
+    void setUp() {
+        onlinePresenceService = mock(OnlinePresenceService.class);
+        eventService = new ConnectionEventService(onlinePresenceService);
+        client = new PendingClient(UUID, "VPN Client", Duration.ofMinutes(5));
+    }
+    
+    @Test
+    void onlineBeforeSubscribeCompletesImmediately() {
+        when(onlinePresenceService.isOnline(UUID)).thenReturn(true);
+        
+        SseEmitter emitter = eventService.subscribe(client);
+        
+        assertCompleted(emitter);
+        assertEquals(0, eventService.getSubscriberCount());
+    }
+    
+    @Test
+    void joinAfterSubscribeCompletes() {
+        SseEmitter emitter = eventService.subscribe(client);
+        assertEquals(1, eventService.getSubscriberCount());
+        
+        eventService.onPresenceChanged(joined("other-uuid"));
+        assertDoesNotThrow(() -> emitter.send("ping"));
+        
+        eventService.onPresenceChanged(joined(UUID));
+        
+        assertCompleted(emitter);
+        assertEquals(0, eventService.getSubscriberCount());
+    }
+    
+    @Test
+    void joinBetweenRegistrationAndCheckIsNotLost() {
+        // Проверка видит старый снимок (офлайн), а событие о входе приходит сразу после неё.
+        // Раньше emitter регистрировался после проверки, и такое событие терялось до конца TTL
+        when(onlinePresenceService.isOnline(UUID)).thenAnswer(invocation -> {
+            eventService.onPresenceChanged(joined(UUID));
+            return false;
+        });
+        
+        SseEmitter emitter = eventService.subscribe(client);
+        
+        assertCompleted(emitter);
+        assertEquals(0, eventService.getSubscriberCount());
+    }
+    
+    private static PresenceChangedEvent joined(String uuid) {
+        return new PresenceChangedEvent(Set.of(uuid), Set.of(), Set.of());
+    }
+    
+    /**
+     * После complete() отправка запрещена - так видно, что событие connected ушло
+     */
+    private static void assertCompleted(SseEmitter emitter) {
+        assertThrows(IllegalStateException.class, () -> emitter.send("after-complete"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.event.PresenceChangedEvent;
+import com.example.vpn.model.VpnClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeviceLimitServiceTest {
+    
+    private static final String UUID = "client-uuid";
+    
+    private VpnProperties vpnProperties;
+    private OnlinePresenceService onlinePresenceService;
+    private VpnClientService vpnClientService;
+    private XrayGrpcClient xrayGrpcClient;
+    private DeviceLimitService deviceLimitService;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        vpnProperties.getDeviceLimit().setEnabled(true);
+        onlinePresenceService = mock(OnlinePresenceService.class);
+        vpnClientService = mock(VpnClientService.class);
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        deviceLimitService = new DeviceLimitService(vpnProperties, onlinePresenceService, vpnClientService,
+            xrayGrpcClient);
+        
+        when(vpnClientService.getClientByUuid(UUID)).thenReturn(Optional.of(client(2, 3)));
+    }
+    
+    @Test
+    void clientOverLimitIsRemoved() {
+        when(onlinePresenceService.getIps(UUID)).thenReturn(List.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        
+        deviceLimitService.onPresenceChanged(ipsChanged());
+        
+        verify(xrayGrpcClient).removeUser(UUID);
+        assertTrue(deviceLimitService.isBlocked(UUID));
+        assertEquals(1, deviceLimitService.getBlockCount());
+    }
+    
+    @Test
+    void clientWithinLimitIsKept() {
+        when(onlinePresenceService.getIps(UUID)).thenReturn(List.of("10.0.0.1", "10.0.0.2"));
+        
+        deviceLimitService.onPresenceChanged(ipsChanged());
+        
+        verify(xrayGrpcClient, never()).removeUser(anyString());
+        assertFalse(deviceLimitService.isBlocked(UUID));
+    }
+    
+    @Test
+    void blockedClientIsNotRemovedAgain() {
+        when(onlinePresenceService.getIps(UUID)).thenReturn(List.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        
+        deviceLimitService.onPresenceChanged(ipsChanged());
+        // Снимок IP ещё не обновился после удаления - тот же нарушитель приходит снова
+        deviceLimitService.onPresenceChanged(ipsChanged());
+        
+        verify(xrayGrpcClient, times(1)).removeUser(UUID);
+        assertEquals(1, deviceLimitService.getBlockCount());
+    }
+    
+    @Test
+    void expiredBlockIsReAddedAtPolicyLevel() {
+        vpnProperties.getDeviceLimit().setBlockDuration(Duration.ZERO);
+        when(onlinePresenceService.getIps(UUID)).thenReturn(List.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        deviceLimitService.onPresenceChanged(ipsChanged());
+        
+        deviceLimitService.releaseExpired();
+        
+        verify(xrayGrpcClient).addUser(UUID, 3);
+        assertFalse(deviceLimitService.isBlocked(UUID));
+    }
+    
+    @Test
+    void activeBlockIsKept() {
+        when(onlinePresenceService.getIps(UUID)).thenReturn(List.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        deviceLimitService.onPresenceChanged(ipsChanged());
+        
+        deviceLimitService.releaseExpired();
+        
+        verify(xrayGrpcClient, never()).addUser(anyString(), anyInt());
+        assertTrue(deviceLimitService.isBlocked(UUID));
+    }
+    
+    private static PresenceChangedEvent ipsChanged() {
+        return new PresenceChangedEvent(Set.of(), Set.of(), Set.of(UUID));
+    }
+    
+    private static VpnClient client(int maxDevices, int policyLevel) {
+        VpnClient client = new VpnClient();
+        client.setUuid(UUID);
+        client.setMaxDevices(maxDevices);
+        client.setPolicyLevel(policyLevel);
+        client.setIsActive(true);
+        return client;
+    }
+}
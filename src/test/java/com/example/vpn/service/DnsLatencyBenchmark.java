@@ -0,0 +1,209 @@
+package com.example.vpn.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Задержка установки соединения на резолве: freedom AsIs против UseIPv4 со встроенным DNS Xray
+ *
+ * Вместо upstream резолвера - локальная заглушка на 127.0.0.1 (UDP), отвечает на A запрос
+ * с задержкой UPSTREAM_DELAY_MS. Соединения идут к DOMAINS доменам с распределением,
+ * близким к реальному (немногие популярные домены - большая часть соединений):
+ * - AsIs: системный резолвер на каждое соединение = запрос к заглушке каждый раз
+ * - UseIPv4: общий кэш с TTL ответа, запрос к заглушке только при промахе
+ * Сам Xray не запускается - сравнивается модель резолва, а не процесс.
+ */
+@Tag("benchmark")
+class DnsLatencyBenchmark {
+    
+    private static final int UPSTREAM_DELAY_MS = 5;
+    private static final int TTL_SECONDS = 300;
+    private static final int DOMAINS = 200;
+    private static final int CONNECTIONS = 2_000;
+    
+    @Test
+    void perConnectionResolveVsSharedCache() throws Exception {
+        try (LocalDnsServer server = new LocalDnsServer(UPSTREAM_DELAY_MS)) {
+            String[] domains = connectionDomains();
+            
+            long[] asIs = new long[CONNECTIONS];
+            for (int i = 0; i < CONNECTIONS; i++) {
+                long start = System.nanoTime();
+                resolve(server.address(), domains[i]);
+                asIs[i] = System.nanoTime() - start;
+            }
+            int asIsQueries = server.queries();
+            
+            Map<String, Cached> cache = new ConcurrentHashMap<>();
+            long[] cached = new long[CONNECTIONS];
+            for (int i = 0; i < CONNECTIONS; i++) {
+                long start = System.nanoTime();
+                String domain = domains[i];
+                Cached entry = cache.get(domain);
+                if (entry == null || entry.expiresAt() - start <= 0) {
+                    cache.put(domain, new Cached(resolve(server.address(), domain),
+                        start + TTL_SECONDS * 1_000_000_000L));
+                }
+                cached[i] = System.nanoTime() - start;
+            }
+            int cachedQueries = server.queries() - asIsQueries;
+            
+            print("AsIs (резолв на соединение)", asIs, asIsQueries);
+            print("UseIPv4 + кэш Xray", cached, cachedQueries);
+            assertTrue(cachedQueries <= DOMAINS);
+            assertTrue(percentile(cached, 50) < percentile(asIs, 50));
+        }
+    }
+    
+    private record Cached(byte[] address, long expiresAt) {
+    }
+    
+    /**
+     * Домен каждого соединения: распределение Ципфа, фиксированное зерно
+     */
+    private static String[] connectionDomains() {
+        double[] weights = new double[DOMAINS];
+        double total = 0;
+        for (int i = 0; i < DOMAINS; i++) {
+            weights[i] = 1.0 / (i + 1);
+            total += weights[i];
+        }
+        Random random = new Random(42);
+        String[] domains = new String[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++) {
+            double point = random.nextDouble() * total;
+            int index = 0;
+            while (point > weights[index] && index < DOMAINS - 1) {
+                point -= weights[index];
+                index++;
+            }
+            domains[i] = "site" + index + ".example";
+        }
+        return domains;
+    }
+    
+    private static void print(String name, long[] latencies, int queries) {
+        System.out.printf("%-32s p50 %7.2f мс  p99 %7.2f мс  запросов к резолверу %,d%n",
+            name, percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6, queries);
+    }
+    
+    private static long percentile(long[] values, int percent) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+    
+    /**
+     * A запрос по UDP, возвращает адрес из первого ответа
+     */
+    private static byte[] resolve(InetSocketAddress server, String domain) throws IOException {
+        byte[] query = LocalDnsServer.query(domain);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(2000);
+            socket.send(new DatagramPacket(query, query.length, server));
+            byte[] buffer = new byte[512];
+            DatagramPacket response = new DatagramPacket(buffer, buffer.length);
+            socket.receive(response);
+            byte[] address = Arrays.copyOfRange(buffer, response.getLength() - 4, response.getLength());
+            assertArrayEquals(new byte[] {127, 0, 0, 1}, address);
+            return address;
+        }
+    }
+    
+    /**
+     * Минимальный DNS сервер: на любой A запрос - 127.0.0.1 с TTL_SECONDS после задержки
+     */
+    private static final class LocalDnsServer implements AutoCloseable {
+        
+        private final DatagramSocket socket;
+        private final int delayMillis;
+        private final AtomicInteger queries = new AtomicInteger();
+        private final Thread thread;
+        
+        LocalDnsServer(int delayMillis) throws SocketException {
+            this.socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            this.delayMillis = delayMillis;
+            this.thread = Thread.ofPlatform().daemon().name("dns-stand-in").start(this::serve);
+        }
+        
+        InetSocketAddress address() {
+            return (InetSocketAddress) socket.getLocalSocketAddress();
+        }
+        
+        int queries() {
+            return queries.get();
+        }
+        
+        private void serve() {
+            byte[] buffer = new byte[512];
+            while (!socket.isClosed()) {
+                try {
+                    DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(request);
+                    queries.incrementAndGet();
+                    // Задержка upstream: последовательно, как один перегруженный резолвер
+                    Thread.sleep(delayMillis);
+                    byte[] answer = answer(Arrays.copyOf(request.getData(), request.getLength()));
+                    socket.send(new DatagramPacket(answer, answer.length, request.getSocketAddress()));
+                } catch (IOException | InterruptedException e) {
+                    return;
+                }
+            }
+        }
+        
+        /**
+         * Ответ: заголовок с тем же ID, вопрос как есть, одна A запись через указатель на имя
+         */
+        private static byte[] answer(byte[] query) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(query[0]);
+            out.write(query[1]);
+            out.writeBytes(new byte[] {(byte) 0x81, (byte) 0x80, 0, 1, 0, 1, 0, 0, 0, 0});
+            out.write(query, 12, query.length - 12);
+            out.writeBytes(new byte[] {(byte) 0xC0, 0x0C, 0, 1, 0, 1});
+            out.writeBytes(new byte[] {0, 0, (byte) (TTL_SECONDS >> 8), (byte) TTL_SECONDS});
+            out.writeBytes(new byte[] {0, 4, 127, 0, 0, 1});
+            return out.toByteArray();
+        }
+        
+        static byte[] query(String domain) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int id = domain.hashCode();
+            out.writeBytes(new byte[] {(byte) (id >> 8), (byte) id, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0});
+            for (String label : domain.split("\\.")) {
+                byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+                out.write(bytes.length);
+                out.writeBytes(bytes);
+            }
+            out.writeBytes(new byte[] {0, 0, 1, 0, 1});
+            return out.toByteArray();
+        }
+        
+        @Override
+        public void close() {
+            socket.close();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
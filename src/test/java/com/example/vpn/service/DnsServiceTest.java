@@ -0,0 +1,71 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.XrayConfig;
+import com.xray.proxy.freedom.DomainStrategy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DnsServiceTest {
+    
+    private VpnProperties vpnProperties;
+    private DnsService dnsService;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        dnsService = new DnsService(vpnProperties);
+    }
+    
+    @Test
+    void disabledDnsLeavesConfigAndOutboundsUntouched() {
+        assertNull(dnsService.buildDns());
+        assertNull(dnsService.freedomSettings());
+        assertEquals(DomainStrategy.AS_IS, dnsService.freedomDomainStrategy());
+    }
+    
+    @Test
+    void hostPortServerBecomesObjectOthersStayStrings() {
+        vpnProperties.getDns().setEnabled(true);
+        vpnProperties.getDns().setServers(List.of("127.0.0.1:5353", " 1.1.1.1 ", "https://1.1.1.1/dns-query"));
+        
+        XrayConfig.Dns dns = dnsService.buildDns();
+        
+        assertEquals("127.0.0.1", dns.getServers().get(0).getAddress());
+        assertEquals(5353, dns.getServers().get(0).getPort());
+        assertEquals("1.1.1.1", dns.getServers().get(1).getAddress());
+        assertNull(dns.getServers().get(1).getPort());
+        assertEquals("https://1.1.1.1/dns-query", dns.getServers().get(2).getAddress());
+        assertNull(dns.getServers().get(2).getPort());
+    }
+    
+    @Test
+    void xrayDefaultsAreNotWritten() {
+        vpnProperties.getDns().setEnabled(true);
+        
+        XrayConfig.Dns dns = dnsService.buildDns();
+        assertNull(dns.getDisableCache());
+        assertNull(dns.getDisableFallback());
+        
+        vpnProperties.getDns().setDisableCache(true);
+        assertTrue(dnsService.buildDns().getDisableCache());
+    }
+    
+    @Test
+    void freedomStrategyFollowsSettings() {
+        vpnProperties.getDns().setEnabled(true);
+        
+        assertEquals("UseIPv4", dnsService.freedomSettings().getDomainStrategy());
+        assertEquals(DomainStrategy.USE_IP4, dnsService.freedomDomainStrategy());
+        vpnProperties.getDns().setOutboundDomainStrategy("UseIP");
+        assertEquals(DomainStrategy.USE_IP, dnsService.freedomDomainStrategy());
+        vpnProperties.getDns().setOutboundDomainStrategy("AsIs");
+        assertEquals(DomainStrategy.AS_IS, dnsService.freedomDomainStrategy());
+    }
+}
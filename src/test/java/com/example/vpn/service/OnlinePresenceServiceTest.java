@@ -0,0 +1,98 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.event.PresenceChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OnlinePresenceServiceTest {
+    
+    private VpnProperties vpnProperties;
+    private XrayGrpcClient xrayGrpcClient;
+    private ApplicationEventPublisher eventPublisher;
+    private OnlinePresenceService presenceService;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        vpnProperties.getPresence().setJoinIpBatch(2);
+        vpnProperties.getPresence().setIpRefreshBatch(0);
+        
+        XrayService xrayService = mock(XrayService.class);
+        when(xrayService.isRunning()).thenReturn(true);
+        StartupOrchestrator startupOrchestrator = mock(StartupOrchestrator.class);
+        when(startupOrchestrator.isReady()).thenReturn(true);
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        
+        presenceService = new OnlinePresenceService(vpnProperties, xrayService, xrayGrpcClient,
+            startupOrchestrator, eventPublisher);
+    }
+    
+    @Test
+    void newcomerIpLookupsAreCappedPerTick() {
+        when(xrayGrpcClient.getAllOnlineUsers()).thenReturn(List.of("a", "b", "c"));
+        when(xrayGrpcClient.getOnlineIpList(anyString())).thenReturn(Map.of("198.51.100.1", 1L));
+        
+        presenceService.poll();
+        
+        // Все трое онлайн сразу, но IP запрошены только у первых двух
+        verify(xrayGrpcClient, times(2)).getOnlineIpList(anyString());
+        assertEquals(3, presenceService.getOnlineCount());
+        assertEquals(List.of("198.51.100.1"), presenceService.getIps("a"));
+        assertEquals(List.of(), presenceService.getIps("c"));
+        
+        presenceService.poll();
+        
+        verify(xrayGrpcClient, times(3)).getOnlineIpList(anyString());
+        assertEquals(List.of("198.51.100.1"), presenceService.getIps("c"));
+        
+        ArgumentCaptor<PresenceChangedEvent> events = ArgumentCaptor.forClass(PresenceChangedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(Set.of("a", "b", "c"), events.getAllValues().get(0).joined());
+        assertEquals(Set.of("c"), events.getAllValues().get(1).ipsChanged());
+    }
+    
+    @Test
+    void failedLookupKeepsPreviousIps() {
+        vpnProperties.getPresence().setIpRefreshBatch(10);
+        when(xrayGrpcClient.getAllOnlineUsers()).thenReturn(List.of("a"));
+        when(xrayGrpcClient.getOnlineIpList("a"))
+            .thenReturn(Map.of("198.51.100.1", 1L))
+            .thenThrow(new IllegalStateException("Xray недоступен"));
+        
+        presenceService.poll();
+        presenceService.poll();
+        
+        assertEquals(List.of("198.51.100.1"), presenceService.getIps("a"));
+    }
+    
+    @Test
+    void pagesFollowUuidOrder() {
+        when(xrayGrpcClient.getAllOnlineUsers()).thenReturn(List.of("c", "a", "b"));
+        when(xrayGrpcClient.getOnlineIpList(anyString())).thenReturn(Map.of());
+        presenceService.poll();
+        
+        OnlinePresenceService.Page first = presenceService.getPage(null, 2);
+        assertEquals(List.of("a", "b"), first.items().stream().map(Map.Entry::getKey).toList());
+        assertEquals("b", first.nextCursor());
+        
+        OnlinePresenceService.Page second = presenceService.getPage(first.nextCursor(), 2);
+        assertEquals(List.of("c"), second.items().stream().map(Map.Entry::getKey).toList());
+        assertNull(second.nextCursor());
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.PendingClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PendingExpirySweeperTest {
+    
+    // Отрицательный TTL - клиент истёк сразу после создания
+    private static final Duration EXPIRED = Duration.ofSeconds(-1);
+    
+    private VpnProperties vpnProperties;
+    private PendingClientService pendingClientService;
+    private ConnectionMonitorService connectionMonitorService;
+    private PendingTtlPolicy pendingTtlPolicy;
+    private XrayGrpcClient xrayGrpcClient;
+    private PendingExpirySweeper sweeper;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        pendingClientService = new PendingClientService();
+        connectionMonitorService = mock(ConnectionMonitorService.class);
+        pendingTtlPolicy = mock(PendingTtlPolicy.class);
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        XrayService xrayService = mock(XrayService.class);
+        StartupOrchestrator startupOrchestrator = mock(StartupOrchestrator.class);
+        when(xrayService.isRunning()).thenReturn(true);
+        when(startupOrchestrator.isReady()).thenReturn(true);
+        when(xrayGrpcClient.getAllUserStats()).thenReturn(Map.of());
+        when(connectionMonitorService.settleExpired(any(), any())).thenReturn(true);
+        sweeper = new PendingExpirySweeper(vpnProperties, pendingClientService, connectionMonitorService,
+            pendingTtlPolicy, xrayGrpcClient, xrayService, startupOrchestrator);
+    }
+    
+    @Test
+    void expiredClientsAreRemovedInOnePass() {
+        pendingClientService.add(new PendingClient("expired-1", "VPN Client", EXPIRED));
+        pendingClientService.add(new PendingClient("expired-2", "VPN Client", EXPIRED));
+        pendingClientService.add(new PendingClient("waiting", "VPN Client", Duration.ofMinutes(5)));
+        
+        sweeper.sweep();
+        
+        // Одна статистика на весь проход, не по запросу на клиента
+        verify(xrayGrpcClient, times(1)).getAllUserStats();
+        verify(xrayGrpcClient).removeUser("expired-1");
+        verify(xrayGrpcClient).removeUser("expired-2");
+        verify(xrayGrpcClient, never()).removeUser("waiting");
+        verify(pendingTtlPolicy, times(2)).recordRelease(eq(false), any());
+        assertEquals(1, pendingClientService.count());
+        assertEquals(2, sweeper.getLastSweepSize());
+        assertEquals(2, sweeper.getRemovedTotal());
+    }
+    
+    @Test
+    void settledClientIsKept() {
+        PendingClient connected = new PendingClient("connected", "VPN Client", EXPIRED);
+        pendingClientService.add(connected);
+        when(connectionMonitorService.settleExpired(eq(connected), any())).thenReturn(false);
+        
+        sweeper.sweep();
+        
+        verify(xrayGrpcClient, never()).removeUser(anyString());
+        assertTrue(pendingClientService.exists("connected"));
+    }
+    
+    @Test
+    void missingStatsSkipsPass() {
+        pendingClientService.add(new PendingClient("expired", "VPN Client", EXPIRED));
+        when(xrayGrpcClient.getAllUserStats()).thenThrow(new IllegalStateException("UNAVAILABLE"));
+        
+        sweeper.sweep();
+        
+        // Без статистики нельзя отличить подключившегося клиента от неподключившегося
+        verify(connectionMonitorService, never()).settleExpired(any(), any());
+        verify(xrayGrpcClient, never()).removeUser(anyString());
+        assertTrue(pendingClientService.exists("expired"));
+    }
+    
+    @Test
+    void alreadyRemovedUserLeavesPending() {
+        pendingClientService.add(new PendingClient("gone", "VPN Client", EXPIRED));
+        doThrow(new IllegalStateException("NOT_FOUND: user gone not found")).when(xrayGrpcClient).removeUser("gone");
+        
+        sweeper.sweep();
+        
+        assertFalse(pendingClientService.exists("gone"));
+        assertEquals(0, sweeper.getFailedTotal());
+        assertEquals(0, sweeper.getRetryCount());
+    }
+    
+    @Test
+    void failedRemovalWaitsForBackoff() {
+        pendingClientService.add(new PendingClient("flaky", "VPN Client", EXPIRED));
+        doThrow(new IllegalStateException("UNAVAILABLE")).when(xrayGrpcClient).removeUser("flaky");
+        
+        sweeper.sweep();
+        sweeper.sweep();
+        
+        // Второй проход сразу за первым - backoff ещё не прошёл, повтора нет
+        verify(xrayGrpcClient, times(1)).removeUser("flaky");
+        assertTrue(pendingClientService.exists("flaky"));
+        assertEquals(1, sweeper.getRetryCount());
+        verify(pendingTtlPolicy, never()).recordRelease(eq(false), any());
+    }
+    
+    @Test
+    void lastAttemptDropsClientFromPending() {
+        vpnProperties.getSweeper().setMaxAttempts(2);
+        vpnProperties.getSweeper().setBackoff(Duration.ZERO);
+        pendingClientService.add(new PendingClient("broken", "VPN Client", EXPIRED));
+        doThrow(new IllegalStateException("UNAVAILABLE")).when(xrayGrpcClient).removeUser("broken");
+        
+        sweeper.sweep();
+        assertTrue(pendingClientService.exists("broken"));
+        sweeper.sweep();
+        
+        // В конфиг из БД клиент не попадёт - держать его в pending бессмысленно
+        assertFalse(pendingClientService.exists("broken"));
+        assertEquals(2, sweeper.getFailedTotal());
+        assertEquals(0, sweeper.getRetryCount());
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.PendingClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PendingTtlPolicyTest {
+    
+    private VpnProperties vpnProperties;
+    private PendingClientService pendingClientService;
+    private PendingTtlPolicy policy;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        vpnProperties.getAdmission().setMaxPending(100);
+        // Занятость кучи в тестах не предсказуема - порог недостижим
+        vpnProperties.getPending().setHeapPressureThreshold(2.0);
+        pendingClientService = new PendingClientService();
+        policy = new PendingTtlPolicy(vpnProperties, pendingClientService);
+    }
+    
+    @Test
+    void fullTtlUpToHalfOfMaxPending() {
+        addPending(50);
+        
+        assertEquals(Duration.ofMinutes(5), policy.currentTtl());
+    }
+    
+    @Test
+    void ttlShrinksLinearlyAboveHalf() {
+        addPending(75);
+        
+        // Середина между 5 и 1 минутой
+        assertEquals(Duration.ofMinutes(3), policy.currentTtl());
+    }
+    
+    @Test
+    void minTtlAtAndAboveMaxPending() {
+        addPending(150);
+        
+        assertEquals(Duration.ofMinutes(1), policy.currentTtl());
+    }
+    
+    @Test
+    void minTtlUnderHeapPressure() {
+        vpnProperties.getPending().setHeapPressureThreshold(0.0);
+        
+        assertEquals(Duration.ofMinutes(1), policy.currentTtl());
+    }
+    
+    @Test
+    void minTtlNotBelowTtlKeepsTtl() {
+        vpnProperties.getPending().setMinTtl(Duration.ofMinutes(10));
+        addPending(150);
+        
+        assertEquals(Duration.ofMinutes(5), policy.currentTtl());
+    }
+    
+    @Test
+    void checkPointsAreSortedAndFitIntoTtl() {
+        vpnProperties.getPending().setCheckPoints(List.of(
+            Duration.ofMinutes(2), Duration.ofSeconds(30), Duration.ofMinutes(1)));
+        
+        assertEquals(List.of(Duration.ofSeconds(30), Duration.ofMinutes(1)), policy.checkPoints(Duration.ofMinutes(1).plusSeconds(30)));
+        assertEquals(List.of(), policy.checkPoints(Duration.ofSeconds(30)));
+    }
+    
+    @Test
+    void slotStatsTrackAverageAndMax() {
+        policy.recordRelease(true, Duration.ofSeconds(10));
+        policy.recordRelease(true, Duration.ofSeconds(30));
+        policy.recordRelease(false, Duration.ofMinutes(5));
+        
+        assertEquals(2, policy.getPromotedStats().getCount());
+        assertEquals(20_000, policy.getPromotedStats().getAverageMillis());
+        assertEquals(30_000, policy.getPromotedStats().getMaxMillis());
+        assertEquals(1, policy.getExpiredStats().getCount());
+    }
+    
+    private void addPending(int count) {
+        for (int i = 0; i < count; i++) {
+            pendingClientService.add(new PendingClient("uuid-" + i, "VPN Client", Duration.ofMinutes(5)));
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.XrayConfig;
+import com.example.vpn.model.XrayConfigTypeAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Память Xray на простаивающих VLESS соединениях для каждого тарифа из vpn.policy-tiers по умолчанию
+ *
+ * На тариф - отдельный процесс Xray: все клиенты на уровне политики тарифа, inbound VLESS без TLS
+ * на 127.0.0.1, freedom до локального TCP сервера теста. Каждое соединение отправляет только
+ * заголовок VLESS (свой UUID, назначение - сервер теста) и дальше молчит, как простаивающий туннель.
+ * RSS и потоки - ResourceGovernorService.sample (/proc/<pid>/status) до соединений и с ними.
+ *
+ *   ./gradlew benchmark --tests '*PolicyTierMemoryBenchmark' -Dxray.path=/usr/local/bin/xray
+ *
+ * xray.connections - соединений на тариф (по умолчанию 1000). Нужен Linux и лимит открытых файлов
+ * (ulimit -n) не меньше 2 * xray.connections + FD_RESERVE: соединения держат и тест, и Xray.
+ * Без xray.path или при малом лимите замер пропускается.
+ */
+@Tag("benchmark")
+class PolicyTierMemoryBenchmark {
+    
+    private static final byte[] LOOPBACK = {127, 0, 0, 1};
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+    // Пауза перед замером RSS: Go runtime успевает разложить буферы по горутинам
+    private static final Duration SETTLE = Duration.ofSeconds(2);
+    private static final int FD_RESERVE = 256;
+    
+    private final Gson gson = new GsonBuilder()
+        .registerTypeAdapterFactory(new XrayConfigTypeAdapterFactory())
+        .setPrettyPrinting()
+        .create();
+    
+    @TempDir
+    Path tempDir;
+    
+    private record Result(ResourceGovernorService.Usage idle, ResourceGovernorService.Usage loaded) {
+    }
+    
+    @Test
+    void idleConnectionsPerTier() throws Exception {
+        String xrayPath = System.getProperty("xray.path");
+        assumeTrue(xrayPath != null && Files.isExecutable(Path.of(xrayPath)), "Бинарник Xray не задан: -Dxray.path=<путь>");
+        int connections = Integer.getInteger("xray.connections", 1000);
+        long maxOpenFiles = maxOpenFiles();
+        assumeTrue(maxOpenFiles >= 2L * connections + FD_RESERVE,
+            "Лимит открытых файлов " + maxOpenFiles + " мал для " + connections + " соединений (ulimit -n)");
+        
+        VpnProperties properties = new VpnProperties();
+        PolicyTierService policyTiers = new PolicyTierService(properties);
+        ResourceGovernorService governor = new ResourceGovernorService(properties);
+        
+        for (Map.Entry<String, VpnProperties.Tier> entry : properties.getPolicyTiers().getTiers().entrySet()) {
+            VpnProperties.Tier tier = entry.getValue();
+            Result result = measure(xrayPath, entry.getKey(), policyTiers, governor, connections);
+            long delta = result.loaded().rssBytes() - result.idle().rssBytes();
+            System.out.printf("%-10s уровень %d, буфер %s: RSS %s без соединений, %s с %d, %s на соединение, потоков %d%n",
+                entry.getKey(), tier.getLevel(),
+                tier.getBufferSize() != null ? tier.getBufferSize() + " КБ" : "по умолчанию",
+                megabytes(result.idle().rssBytes()), megabytes(result.loaded().rssBytes()), connections,
+                "%.1f КБ".formatted(delta / 1024.0 / connections), result.loaded().threads());
+        }
+    }
+    
+    private Result measure(String xrayPath, String tierName, PolicyTierService policyTiers,
+                           ResourceGovernorService governor, int connections) throws Exception {
+        InetAddress loopback = InetAddress.getByAddress(LOOPBACK);
+        List<UUID> ids = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            ids.add(UUID.randomUUID());
+        }
+        
+        Queue<Socket> accepted = new ConcurrentLinkedQueue<>();
+        List<Socket> clients = new ArrayList<>(connections);
+        Process process = null;
+        try (ServerSocket target = new ServerSocket(0, connections, loopback)) {
+            // Поток приёма завершается, когда try закрывает target
+            Thread.ofPlatform().daemon().start(() -> acceptAll(target, accepted));
+            
+            int inboundPort = freePort(loopback);
+            Path configPath = tempDir.resolve(tierName + ".json");
+            Files.writeString(configPath, gson.toJson(config(inboundPort, ids, policyTiers, tierName)));
+            process = new ProcessBuilder(xrayPath, "run", "-c", configPath.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(tempDir.resolve(tierName + ".log").toFile())
+                .start();
+            awaitListening(process, new InetSocketAddress(loopback, inboundPort));
+            
+            Thread.sleep(SETTLE);
+            ResourceGovernorService.Usage idle = governor.sample(process);
+            assertNotNull(idle, "/proc недоступен");
+            
+            for (UUID id : ids) {
+                Socket socket = new Socket(loopback, inboundPort);
+                clients.add(socket);
+                OutputStream out = socket.getOutputStream();
+                out.write(vlessRequest(id, target.getLocalPort()));
+                out.flush();
+            }
+            awaitAccepted(process, accepted, connections);
+            
+            Thread.sleep(SETTLE);
+            ResourceGovernorService.Usage loaded = governor.sample(process);
+            assertNotNull(loaded, "Xray завершился, лог: " + tempDir.resolve(tierName + ".log"));
+            assertEquals(connections, accepted.size());
+            return new Result(idle, loaded);
+        } finally {
+            closeAll(clients);
+            closeAll(accepted);
+            if (process != null) {
+                process.destroy();
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+    }
+    
+    private static XrayConfig config(int inboundPort, List<UUID> ids, PolicyTierService policyTiers, String tierName) {
+        int level = policyTiers.levelFor(tierName);
+        List<XrayConfig.Client> clients = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            XrayConfig.Client client = new XrayConfig.Client();
+            client.setId(id.toString());
+            client.setEmail(id.toString());
+            client.setLevel(level);
+            clients.add(client);
+        }
+        
+        XrayConfig.InboundSettings settings = new XrayConfig.InboundSettings();
+        settings.setClients(clients);
+        XrayConfig.StreamSettings streamSettings = new XrayConfig.StreamSettings();
+        streamSettings.setSecurity("none");
+        XrayConfig.Inbound inbound = new XrayConfig.Inbound();
+        inbound.setTag("vless-in");
+        inbound.setListen("127.0.0.1");
+        inbound.setPort(inboundPort);
+        inbound.setProtocol("vless");
+        inbound.setSettings(settings);
+        inbound.setStreamSettings(streamSettings);
+        
+        XrayConfig.Outbound direct = new XrayConfig.Outbound();
+        direct.setProtocol("freedom");
+        direct.setTag("direct");
+        
+        // Статистика пользователей включена, как в рабочем конфиге (XrayService.buildConfig)
+        XrayConfig.Policy policy = new XrayConfig.Policy();
+        policy.setLevels(policyTiers.buildLevels());
+        policy.setSystem(new XrayConfig.PolicySystem());
+        
+        XrayConfig.Log log = new XrayConfig.Log();
+        log.setLoglevel("warning");
+        
+        XrayConfig config = new XrayConfig();
+        config.setLog(log);
+        config.setStats(new XrayConfig.Stats());
+        config.setPolicy(policy);
+        config.setInbounds(List.of(inbound));
+        config.setOutbounds(List.of(direct));
+        return config;
+    }
+    
+    /**
+     * Заголовок запроса VLESS: версия 0, UUID, без addons, TCP до IPv4 127.0.0.1:port
+     */
+    private static byte[] vlessRequest(UUID id, int port) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 16 + 1 + 1 + 2 + 1 + LOOPBACK.length);
+        buffer.put((byte) 0);
+        buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        buffer.put((byte) 0);
+        buffer.put((byte) 1);
+        buffer.putShort((short) port);
+        buffer.put((byte) 1);
+        buffer.put(LOOPBACK);
+        return buffer.array();
+    }
+    
+    private static void acceptAll(ServerSocket target, Queue<Socket> accepted) {
+        try {
+            while (!target.isClosed()) {
+                accepted.add(target.accept());
+            }
+        } catch (IOException e) {
+            // Сервер закрыт - замер окончен
+        }
+    }
+    
+    /**
+     * Ждёт, пока Xray начнёт принимать соединения; пробное соединение закрывается без заголовка
+     */
+    private static void awaitListening(Process process, InetSocketAddress address) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            assertTrue(process.isAlive(), () -> "Xray завершился с кодом " + process.exitValue());
+            try (Socket probe = new Socket()) {
+                probe.connect(address, 200);
+                return;
+            } catch (IOException e) {
+                // Ещё не слушает порт
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+        throw new IllegalStateException("Xray не открыл " + address + " за " + TIMEOUT);
+    }
+    
+    private static void awaitAccepted(Process process, Queue<Socket> accepted, int connections) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (accepted.size() < connections && System.nanoTime() < deadline) {
+            assertTrue(process.isAlive(), () -> "Xray завершился с кодом " + process.exitValue());
+            Thread.sleep(POLL_INTERVAL);
+        }
+        assertEquals(connections, accepted.size(), "Xray довёл до сервера теста не все соединения");
+    }
+    
+    private static int freePort(InetAddress address) throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, address)) {
+            return socket.getLocalPort();
+        }
+    }
+    
+    /**
+     * Мягкий лимит открытых файлов процесса из /proc/self/limits (Xray наследует его)
+     */
+    private static long maxOpenFiles() throws IOException {
+        Path limits = Path.of("/proc/self/limits");
+        if (!Files.exists(limits)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(limits)) {
+            if (line.startsWith("Max open files")) {
+                String soft = line.substring("Max open files".length()).trim().split("\\s+")[0];
+                return "unlimited".equals(soft) ? Long.MAX_VALUE : Long.parseLong(soft);
+            }
+        }
+        return 0;
+    }
+    
+    private static void closeAll(Iterable<Socket> sockets) {
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Уже закрыт
+            }
+        }
+    }
+    
+    private static String megabytes(long bytes) {
+        return "%.1f МБ".formatted(bytes / 1024.0 / 1024.0);
+    }
+}
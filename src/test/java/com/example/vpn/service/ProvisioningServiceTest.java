@@ -0,0 +1,154 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.PendingClient;
+import com.example.vpn.model.VpnClient;
+import com.example.vpn.repository.VpnClientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProvisioningServiceTest {
+    
+    private static final UUID KEYCLOAK_USER_ID = UUID.randomUUID();
+    
+    private VpnClientRepository repository;
+    private VpnClientService vpnClientService;
+    private PendingClientService pendingClientService;
+    private XrayGrpcClient xrayGrpcClient;
+    private ProvisioningService provisioningService;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        VpnProperties vpnProperties = new VpnProperties();
+        repository = mock(VpnClientRepository.class);
+        when(repository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        vpnClientService = new VpnClientService(repository,
+            new VpnClientCache(vpnProperties, mock(JdbcTemplate.class), mock(DataSource.class)));
+        pendingClientService = new PendingClientService();
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        
+        ConfigService configService = mock(ConfigService.class);
+        when(configService.generateLinks(anyString(), anyString())).thenAnswer(invocation -> List.of(
+            new ConfigService.LinkProfile("tcp", "tcp", "vless://" + invocation.getArgument(0))));
+        QrCodeService qrCodeService = mock(QrCodeService.class);
+        when(qrCodeService.generateQrCode(anyString(), anyInt(), anyInt())).thenReturn(new byte[] {1});
+        
+        PendingTtlPolicy pendingTtlPolicy = new PendingTtlPolicy(vpnProperties, pendingClientService);
+        ConnectionMonitorService connectionMonitorService = new ConnectionMonitorService(pendingClientService,
+            xrayGrpcClient, vpnClientService, mock(TaskScheduler.class), pendingTtlPolicy);
+        when(xrayGrpcClient.getUserStats(anyString())).thenReturn(new XrayGrpcClient.UserStats(0, 0));
+        
+        provisioningService = new ProvisioningService(vpnClientService, pendingClientService,
+            connectionMonitorService, pendingTtlPolicy, new PolicyTierService(vpnProperties),
+            xrayGrpcClient, configService, qrCodeService);
+    }
+    
+    @Test
+    void livePendingIsReused() throws Exception {
+        PendingClient pending = new PendingClient("pending-uuid", "VPN Client", KEYCLOAK_USER_ID, "a@b", Duration.ofMinutes(5));
+        pendingClientService.add(pending);
+        
+        ProvisioningService.ProvisionedClient provisioned = provisioningService.provision(KEYCLOAK_USER_ID, "a@b", null);
+        
+        assertEquals("pending-uuid", provisioned.getUuid());
+        verify(xrayGrpcClient, never()).addUser(anyString(), anyInt());
+    }
+    
+    @Test
+    void expiredPendingIsReplacedWithNewUuid() throws Exception {
+        pendingClientService.add(expiredPending());
+        
+        ProvisioningService.ProvisionedClient provisioned = provisioningService.provision(KEYCLOAK_USER_ID, "a@b", null);
+        
+        // Раньше выдавался истёкший UUID, который проход очистки вот-вот удалит из Xray
+        assertNotEquals("pending-uuid", provisioned.getUuid());
+        assertFalse(pendingClientService.exists("pending-uuid"));
+        assertTrue(pendingClientService.exists(provisioned.getUuid()));
+        verify(xrayGrpcClient).removeUser("pending-uuid");
+        verify(xrayGrpcClient).addUser(provisioned.getUuid(), 0);
+    }
+    
+    @Test
+    void expiredPendingWithTrafficIsPromoted() throws Exception {
+        pendingClientService.add(expiredPending());
+        when(xrayGrpcClient.getUserStats("pending-uuid")).thenReturn(new XrayGrpcClient.UserStats(100, 2000));
+        
+        ProvisioningService.ProvisionedClient provisioned = provisioningService.provision(KEYCLOAK_USER_ID, "a@b", null);
+        
+        // Клиент подключился перед истечением срока - ссылка должна продолжить работать
+        assertEquals("pending-uuid", provisioned.getUuid());
+        assertNull(provisioned.getExpiresAt());
+        assertFalse(pendingClientService.exists("pending-uuid"));
+        verify(repository, atLeastOnce()).save(any());
+        verify(xrayGrpcClient, never()).removeUser(anyString());
+        verify(xrayGrpcClient, never()).addUser(anyString(), anyInt());
+    }
+    
+    @Test
+    void expiredPendingWithPartialTrafficGetsGrace() throws Exception {
+        pendingClientService.add(expiredPending());
+        when(xrayGrpcClient.getUserStats("pending-uuid")).thenReturn(new XrayGrpcClient.UserStats(100, 0));
+        
+        ProvisioningService.ProvisionedClient provisioned = provisioningService.provision(KEYCLOAK_USER_ID, "a@b", null);
+        
+        assertEquals("pending-uuid", provisioned.getUuid());
+        assertTrue(provisioned.getExpiresAt().isAfter(LocalDateTime.now()));
+        assertTrue(pendingClientService.exists("pending-uuid"));
+        verify(xrayGrpcClient, never()).removeUser(anyString());
+    }
+    
+    @Test
+    void reactivationDoesNotMutateCachedClient() throws Exception {
+        VpnClient cached = inactiveClient();
+        when(repository.findByKeycloakUserId(KEYCLOAK_USER_ID)).thenReturn(Optional.of(cached));
+        // JPA вернёт новый объект, не тот, что лежит в кэше
+        when(repository.findByUuid("client-uuid")).thenReturn(Optional.of(inactiveClient()));
+        
+        ProvisioningService.ProvisionedClient provisioned = provisioningService.provision(KEYCLOAK_USER_ID, "a@b", null);
+        
+        assertEquals("client-uuid", provisioned.getUuid());
+        assertFalse(cached.getIsActive());
+        assertNull(cached.getLastConnectedAt());
+        VpnClient current = vpnClientService.getClientByKeycloakUserId(KEYCLOAK_USER_ID).orElseThrow();
+        assertTrue(current.getIsActive());
+        verify(xrayGrpcClient).addUser("client-uuid", 0);
+    }
+    
+    private static PendingClient expiredPending() {
+        PendingClient pending = new PendingClient("pending-uuid", "VPN Client", KEYCLOAK_USER_ID, "a@b", Duration.ofMinutes(5));
+        pending.setExpiresAt(LocalDateTime.now().minusSeconds(1));
+        return pending;
+    }
+    
+    private static VpnClient inactiveClient() {
+        VpnClient client = new VpnClient();
+        client.setUuid("client-uuid");
+        client.setKeycloakUserId(KEYCLOAK_USER_ID);
+        client.setEmail("a@b");
+        client.setIsActive(false);
+        return client;
+    }
+}
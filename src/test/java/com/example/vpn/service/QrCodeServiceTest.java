@@ -0,0 +1,76 @@
+package com.example.vpn.service;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QrCodeServiceTest {
+    
+    private static final String LINK = "vless://6f1c0d0e-2b5a-4c1e-9a57-3f3e4b2c1d00@vpn.example.com:443"
+        + "?security=reality&sni=www.example.com&fp=chrome&pbk=abc&sid=01&flow=xtls-rprx-vision#VPN%20Client";
+    private static final Pattern VIEW_BOX = Pattern.compile("viewBox=\"0 0 (\\d+) (\\d+)\"");
+    private static final Pattern RUN = Pattern.compile("M(\\d+) (\\d+)h(\\d+)v1h-(\\d+)z");
+    private static final int SCALE = 4;
+    
+    private final QrCodeService qrCodeService = new QrCodeService();
+    
+    @Test
+    void pngDecodesToLink() throws Exception {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(qrCodeService.generateQrCode(LINK, 400, 400)));
+        
+        assertEquals(LINK, decode(image));
+    }
+    
+    @Test
+    void svgDecodesToLink() throws Exception {
+        String svg = qrCodeService.generateQrSvg(LINK);
+        
+        assertTrue(svg.startsWith("<svg xmlns=\"http://www.w3.org/2000/svg\""));
+        assertEquals(LINK, decode(rasterize(svg)));
+    }
+    
+    /**
+     * Отрисовать путь из прямоугольников-отрезков строк так, как это сделал бы браузер
+     */
+    private static BufferedImage rasterize(String svg) {
+        Matcher viewBox = VIEW_BOX.matcher(svg);
+        assertTrue(viewBox.find());
+        int width = Integer.parseInt(viewBox.group(1));
+        int height = Integer.parseInt(viewBox.group(2));
+        
+        BufferedImage image = new BufferedImage(width * SCALE, height * SCALE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.setColor(Color.BLACK);
+        
+        Matcher run = RUN.matcher(svg);
+        while (run.find()) {
+            int x = Integer.parseInt(run.group(1));
+            int y = Integer.parseInt(run.group(2));
+            int length = Integer.parseInt(run.group(3));
+            assertEquals(length, Integer.parseInt(run.group(4)));
+            graphics.fillRect(x * SCALE, y * SCALE, length * SCALE, SCALE);
+        }
+        graphics.dispose();
+        return image;
+    }
+    
+    private static String decode(BufferedImage image) throws Exception {
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(image)));
+        return new QRCodeReader().decode(bitmap).getText();
+    }
+}
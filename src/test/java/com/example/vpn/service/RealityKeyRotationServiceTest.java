@@ -0,0 +1,101 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RealityKeyRotationServiceTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private VpnProperties vpnProperties;
+    private XrayGrpcClient xrayGrpcClient;
+    private XrayHotSwapService hotSwapService;
+    private RealityKeyRotationService rotationService;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        vpnProperties.setConfigPath(tempDir.resolve("config.json").toString());
+        vpnProperties.getReality().setPrivateKey("old-private");
+        vpnProperties.getReality().setPublicKey("old-public");
+        vpnProperties.getReality().getRotation().setKeysFile(tempDir.resolve("keys.properties").toString());
+        
+        XrayService xrayService = mock(XrayService.class);
+        when(xrayService.getActiveApiServer()).thenReturn(vpnProperties.getApiServer());
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        hotSwapService = new XrayHotSwapService(vpnProperties, xrayService, xrayGrpcClient, new PendingClientService());
+        rotationService = new RealityKeyRotationService(vpnProperties, new RealityKeyService(), hotSwapService,
+            xrayService, mock(StartupOrchestrator.class));
+    }
+    
+    @Test
+    void rotationAppliesNewKeys() throws Exception {
+        when(xrayGrpcClient.waitForApi(anyString(), any())).thenReturn(true);
+        
+        rotationService.rotate();
+        
+        assertNotEquals("old-public", vpnProperties.getReality().getPublicKey());
+        assertTrue(Files.exists(tempDir.resolve("keys.properties")));
+        assertNotNull(rotationService.getLastRotatedAt());
+    }
+    
+    @Test
+    void rejectedRestartRestoresOldKeys() {
+        when(xrayGrpcClient.waitForApi(anyString(), any())).thenReturn(false);
+        
+        assertThrows(IOException.class, () -> rotationService.rotate());
+        
+        assertEquals("old-private", vpnProperties.getReality().getPrivateKey());
+        assertEquals("old-public", vpnProperties.getReality().getPublicKey());
+        assertFalse(Files.exists(tempDir.resolve("keys.properties")));
+        assertNull(rotationService.getLastRotatedAt());
+    }
+    
+    @Test
+    void busyHotSwapLeavesKeysUntouched() throws Exception {
+        CountDownLatch inReload = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(xrayGrpcClient.waitForApi(anyString(), any())).thenAnswer(invocation -> {
+            inReload.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        CompletableFuture<Void> other = CompletableFuture.runAsync(() -> {
+            try {
+                hotSwapService.reload();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(inReload.await(5, TimeUnit.SECONDS));
+        
+        // Раньше reload() молча возвращался, и ротация считалась успешной со старым ключом в Xray
+        assertThrows(IllegalStateException.class, () -> rotationService.rotate());
+        assertEquals("old-public", vpnProperties.getReality().getPublicKey());
+        assertNull(rotationService.getLastRotatedAt());
+        
+        release.countDown();
+        other.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResourceGovernorServiceTest {
+    
+    private static final long GIB = 1024L * 1024 * 1024;
+    
+    @TempDir
+    Path cgroupRoot;
+    
+    private VpnProperties vpnProperties;
+    private ResourceGovernorService governor;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        vpnProperties.getResources().setCgroupRoot(cgroupRoot.toString());
+        governor = new ResourceGovernorService(vpnProperties);
+    }
+    
+    @Test
+    void cgroupV2QuotaAndMemoryLimit() throws IOException {
+        write("cgroup.controllers", "cpu memory");
+        write("cpu.max", "150000 100000\n");
+        write("memory.max", GIB + "\n");
+        
+        ResourceGovernorService.Limits limits = governor.getLimits();
+        
+        assertEquals(1.5, limits.cpus());
+        assertEquals(GIB, limits.memoryBytes());
+        
+        Map<String, String> env = launch();
+        // Квота 1.5 CPU - два потока Go, куча до 90% лимита
+        assertEquals("2", env.get("GOMAXPROCS"));
+        assertEquals(String.valueOf((long) (GIB * 0.9)), env.get("GOMEMLIMIT"));
+    }
+    
+    @Test
+    void cgroupV2WithoutLimits() throws IOException {
+        write("cgroup.controllers", "cpu memory");
+        write("cpu.max", "max 100000\n");
+        write("memory.max", "max\n");
+        
+        ResourceGovernorService.Limits limits = governor.getLimits();
+        
+        assertNull(limits.cpus());
+        assertNull(limits.memoryBytes());
+        assertTrue(launch().isEmpty());
+    }
+    
+    @Test
+    void cgroupV1QuotaAndUnlimitedMemory() throws IOException {
+        write("cpu/cpu.cfs_quota_us", "200000\n");
+        write("cpu/cpu.cfs_period_us", "100000\n");
+        // v1 без лимита: Long.MAX_VALUE, округлённый до страницы
+        write("memory/memory.limit_in_bytes", "9223372036854771712\n");
+        
+        ResourceGovernorService.Limits limits = governor.getLimits();
+        
+        assertEquals(2.0, limits.cpus());
+        assertNull(limits.memoryBytes());
+    }
+    
+    @Test
+    void cgroupV1WithoutQuota() throws IOException {
+        write("cpu/cpu.cfs_quota_us", "-1\n");
+        write("cpu/cpu.cfs_period_us", "100000\n");
+        write("memory/memory.limit_in_bytes", "536870912\n");
+        
+        ResourceGovernorService.Limits limits = governor.getLimits();
+        
+        assertNull(limits.cpus());
+        assertEquals(536870912L, limits.memoryBytes());
+    }
+    
+    @Test
+    void cpuSetCapsQuotaAndWrapsCommand() throws IOException {
+        write("cgroup.controllers", "cpu");
+        write("cpu.max", "800000 100000\n");
+        vpnProperties.getResources().setCpuSet("0-1,4");
+        
+        ProcessBuilder processBuilder = processBuilder();
+        governor.apply(processBuilder);
+        
+        // Квота 8 CPU, но закреплено 3 - больше потоков Go не нужно
+        assertEquals("3", processBuilder.environment().get("GOMAXPROCS"));
+        assertEquals(List.of("taskset", "-c", "0-1,4", "xray", "run"), processBuilder.command());
+    }
+    
+    @Test
+    void environmentValueIsNotOverridden() throws IOException {
+        write("cgroup.controllers", "cpu");
+        write("cpu.max", "400000 100000\n");
+        
+        ProcessBuilder processBuilder = processBuilder();
+        processBuilder.environment().put("GOMAXPROCS", "7");
+        governor.apply(processBuilder);
+        
+        assertEquals("7", processBuilder.environment().get("GOMAXPROCS"));
+        assertTrue(governor.getAppliedEnv().isEmpty());
+    }
+    
+    private Map<String, String> launch() {
+        governor.apply(processBuilder());
+        return governor.getAppliedEnv();
+    }
+    
+    private static ProcessBuilder processBuilder() {
+        ProcessBuilder processBuilder = new ProcessBuilder("xray", "run");
+        processBuilder.environment().keySet().removeAll(List.of("GOMAXPROCS", "GOMEMLIMIT", "GOGC"));
+        return processBuilder;
+    }
+    
+    private void write(String name, String content) throws IOException {
+        Path file = cgroupRoot.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
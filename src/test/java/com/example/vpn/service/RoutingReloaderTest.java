@@ -0,0 +1,99 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoutingReloaderTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private VpnProperties vpnProperties;
+    private RoutingPolicyService routingPolicyService;
+    private XrayGrpcClient xrayGrpcClient;
+    private XrayHotSwapService xrayHotSwapService;
+    private RoutingReloader reloader;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        Path blockList = tempDir.resolve("block.txt");
+        Files.writeString(blockList, "ads.example.com\n10.1.0.0/16\n");
+        
+        vpnProperties = new VpnProperties();
+        vpnProperties.setConfigPath(tempDir.resolve("config.json").toString());
+        vpnProperties.getRouting().setEnabled(true);
+        vpnProperties.getRouting().setBlockListFiles(List.of(blockList.toString()));
+        vpnProperties.getHotSwap().setEnabled(true);
+        
+        EgressService egressService = mock(EgressService.class);
+        routingPolicyService = new RoutingPolicyService(vpnProperties, egressService);
+        
+        XrayService xrayService = mock(XrayService.class);
+        when(xrayService.isRunning()).thenReturn(true);
+        when(xrayService.userInboundTags()).thenReturn(List.of("inbound-443"));
+        StartupOrchestrator startupOrchestrator = mock(StartupOrchestrator.class);
+        when(startupOrchestrator.isReady()).thenReturn(true);
+        
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        // Живая замена невозможна - только через hot swap
+        doThrow(new UnsupportedOperationException("RoutingService недоступен"))
+            .when(xrayGrpcClient).replaceRoutingRules(any());
+        xrayHotSwapService = mock(XrayHotSwapService.class);
+        
+        reloader = new RoutingReloader(vpnProperties, routingPolicyService, xrayGrpcClient, xrayService,
+            xrayHotSwapService, startupOrchestrator);
+    }
+    
+    @Test
+    void skippedHotSwapIsRetriedOnNextCheck() throws Exception {
+        doThrow(new IllegalStateException("Hot swap уже выполняется")).when(xrayHotSwapService).reload();
+        
+        reloader.reloadIfChanged();
+        
+        // Правила не применены - версия не отмечена, следующая проверка повторит
+        assertNull(routingPolicyService.getAppliedFingerprint());
+        
+        doNothing().when(xrayHotSwapService).reload();
+        reloader.reloadIfChanged();
+        
+        assertEquals(routingPolicyService.currentFingerprint(), routingPolicyService.getAppliedFingerprint());
+    }
+    
+    @Test
+    void withoutHotSwapXrayIsNotRestarted() throws Exception {
+        vpnProperties.getHotSwap().setEnabled(false);
+        
+        reloader.reloadIfChanged();
+        reloader.reloadIfChanged();
+        
+        // Полный перезапуск порвал бы все туннели - правила ждут следующего запуска Xray
+        verify(xrayHotSwapService, never()).reload();
+        assertNull(routingPolicyService.getAppliedFingerprint());
+    }
+    
+    @Test
+    void liveReplaceMarksVersionApplied() throws Exception {
+        doNothing().when(xrayGrpcClient).replaceRoutingRules(any());
+        
+        reloader.reloadIfChanged();
+        
+        assertEquals(routingPolicyService.currentFingerprint(), routingPolicyService.getAppliedFingerprint());
+        assertEquals(1, reloader.getLiveReloadCount());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.vpn.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingRuleCompilerTest {
+    
+    @Test
+    void parentDomainAbsorbsSubdomainsAndFullNames() {
+        List<String> result = RoutingRuleCompiler.compactDomains(List.of(
+            "Example.com", "domain:ads.example.com", "full:www.example.com", "full:other.org",
+            "keyword:tracker", "regexp:^Ad[0-9]+\\.", "# комментарий", "example.com."));
+        
+        assertEquals(List.of("domain:example.com", "full:other.org", "tracker", "regexp:^Ad[0-9]+\\."), result);
+    }
+    
+    @Test
+    void fullNameEqualToRootIsDropped() {
+        assertEquals(List.of("domain:a.com"), RoutingRuleCompiler.compactDomains(List.of("a.com", "full:a.com")));
+    }
+    
+    @Test
+    void adjacentSubnetsMergeIntoOneCidr() {
+        assertEquals(List.of("10.0.0.0/24"),
+            RoutingRuleCompiler.compactIps(List.of("10.0.0.0/25", "10.0.0.128/25")));
+    }
+    
+    @Test
+    void overlappingAndContainedRangesCollapse() {
+        assertEquals(List.of("192.168.0.0/16"),
+            RoutingRuleCompiler.compactIps(List.of("192.168.1.0/24", "192.168.0.0/16", "192.168.5.7")));
+    }
+    
+    @Test
+    void unalignedRangeSplitsIntoMinimalCidrs() {
+        // 10.0.0.1 - 10.0.0.6
+        assertEquals(List.of("10.0.0.1/32", "10.0.0.2/31", "10.0.0.4/31", "10.0.0.6/32"),
+            RoutingRuleCompiler.compactIps(List.of("10.0.0.1", "10.0.0.2/31", "10.0.0.4/31", "10.0.0.6")));
+    }
+    
+    @Test
+    void hostBitsAreMaskedByPrefix() {
+        assertEquals(List.of("172.16.0.0/12"), RoutingRuleCompiler.compactIps(List.of("172.20.1.1/12")));
+    }
+    
+    @Test
+    void ipv6IsMergedSeparatelyFromIpv4() {
+        assertEquals(List.of("0.0.0.0/0", "2001:db8:0:0:0:0:0:0/32", "geoip:private"),
+            RoutingRuleCompiler.compactIps(List.of("2001:db8::/33", "2001:db8:8000::/33", "0.0.0.0/0", "geoip:private")));
+    }
+    
+    @Test
+    void invalidEntriesAreReportedOrRejected() {
+        List<String> invalid = new ArrayList<>();
+        List<String> result = RoutingRuleCompiler.compactIps(List.of("10.0.0.0/33", "not-an-ip", "1.2.3.4"), invalid::add);
+        
+        assertEquals(List.of("1.2.3.4/32"), result);
+        assertEquals(List.of("10.0.0.0/33", "not-an-ip"), invalid);
+        assertThrows(IllegalArgumentException.class, () -> RoutingRuleCompiler.compactIps(List.of("example.com")));
+    }
+    
+    @Test
+    void ipEntryDetection() {
+        assertTrue(RoutingRuleCompiler.isIpEntry("10.0.0.0/8"));
+        assertTrue(RoutingRuleCompiler.isIpEntry("fe80::/10"));
+        assertTrue(RoutingRuleCompiler.isIpEntry("geoip:cn"));
+        assertFalse(RoutingRuleCompiler.isIpEntry("example.com"));
+        assertFalse(RoutingRuleCompiler.isIpEntry("geosite:cn"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.repository.VpnClientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StaleClientPrunerTest {
+    
+    private VpnProperties vpnProperties;
+    private VpnClientRepository repository;
+    private XrayGrpcClient xrayGrpcClient;
+    private StaleClientPruner pruner;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        vpnProperties.getPruning().setEnabled(true);
+        vpnProperties.getPruning().setBatchSize(2);
+        repository = mock(VpnClientRepository.class);
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        XrayService xrayService = mock(XrayService.class);
+        when(xrayService.isRunning()).thenReturn(true);
+        StartupOrchestrator startupOrchestrator = mock(StartupOrchestrator.class);
+        when(startupOrchestrator.isReady()).thenReturn(true);
+        OnlinePresenceService onlinePresenceService = mock(OnlinePresenceService.class);
+        when(onlinePresenceService.getOnlineUuids()).thenReturn(Set.of());
+        
+        pruner = new StaleClientPruner(vpnProperties, repository, mock(VpnClientCache.class), xrayGrpcClient,
+            xrayService, startupOrchestrator, onlinePresenceService);
+        
+        when(repository.deactivateStale(anyCollection(), any())).thenAnswer(invocation ->
+            invocation.<Collection<Long>>getArgument(0).size());
+        when(repository.findInactiveIds(anyCollection())).thenAnswer(invocation ->
+            new ArrayList<>(invocation.<Collection<Long>>getArgument(0)));
+    }
+    
+    @Test
+    void prunesConnectedThenNeverConnectedUntilShortBatch() {
+        // Отключённые выпадают из выборки - каждая следующая порция новая
+        when(repository.findStaleConnected(any(), eq(Limit.of(2))))
+            .thenReturn(keys(1, 2))
+            .thenReturn(keys(3));
+        when(repository.findNeverConnected(any(), eq(Limit.of(2))))
+            .thenReturn(keys(4, 5))
+            .thenReturn(List.of());
+        
+        pruner.prune();
+        
+        assertEquals(5, pruner.getLastRunDeactivated());
+        verify(repository, times(2)).findStaleConnected(any(), any());
+        verify(repository, times(2)).findNeverConnected(any(), any());
+        verify(xrayGrpcClient).removeUser("uuid-5");
+    }
+    
+    @Test
+    void stopsWhenNobodyInBatchWasDeactivated() {
+        when(repository.findStaleConnected(any(), any())).thenReturn(keys(1, 2));
+        when(repository.findNeverConnected(any(), any())).thenReturn(List.of());
+        // Все успели подключиться между выборкой и UPDATE
+        when(repository.deactivateStale(anyCollection(), any())).thenReturn(0);
+        
+        pruner.prune();
+        
+        assertEquals(0, pruner.getLastRunDeactivated());
+        verify(repository, times(1)).findStaleConnected(any(), any());
+    }
+    
+    private static List<VpnClientRepository.ClientKeys> keys(long... ids) {
+        List<VpnClientRepository.ClientKeys> keys = new ArrayList<>();
+        for (long id : ids) {
+            keys.add(new VpnClientRepository.ClientKeys() {
+                @Override
+                public Long getId() {
+                    return id;
+                }
+                
+                @Override
+                public String getUuid() {
+                    return "uuid-" + id;
+                }
+                
+                @Override
+                public UUID getKeycloakUserId() {
+                    return null;
+                }
+                
+                @Override
+                public String getEmail() {
+                    return null;
+                }
+            });
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.vpn.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class StatusServiceTest {
+    
+    private Section pending;
+    private Section routing;
+    private StatusService statusService;
+    
+    @BeforeEach
+    void setUp() {
+        pending = new Section("pending", 3);
+        routing = new Section("routing", null);
+        statusService = statusService(List.of(pending, routing));
+        statusService.init();
+    }
+    
+    @Test
+    void etagIsStableWhileNothingChanges() throws Exception {
+        StatusService.Snapshot first = statusService.getSnapshot();
+        Thread.sleep(5);
+        statusService.refresh();
+        StatusService.Snapshot second = statusService.getSnapshot();
+        
+        // Раньше updatedAt в JSON менял ETag на каждом обновлении
+        assertEquals(first.etag(), second.etag());
+        assertEquals(first.changedAt(), second.changedAt());
+    }
+    
+    @Test
+    void etagChangesWithSection() {
+        StatusService.Snapshot before = statusService.getSnapshot();
+        
+        pending.value = 4;
+        statusService.refresh();
+        
+        assertNotEquals(before.etag(), statusService.getSnapshot().etag());
+        assertTrue(json().contains("\"pending\":4"));
+    }
+    
+    @Test
+    void disabledSectionIsOmitted() {
+        assertFalse(json().contains("routing"));
+        
+        routing.value = 7;
+        statusService.refresh();
+        
+        assertTrue(json().contains("\"routing\":7"));
+    }
+    
+    @Test
+    void duplicateSectionIsRejected() {
+        StatusService duplicate = statusService(List.of(new Section("pending", 1), new Section("pending", 2)));
+        
+        assertThrows(IllegalStateException.class, duplicate::init);
+    }
+    
+    private String json() {
+        return new String(statusService.getSnapshot().json(), StandardCharsets.UTF_8);
+    }
+    
+    private static StatusService statusService(List<StatusContributor> contributors) {
+        // Xray не запущен, ресурсы выключены - в снимке только секции подсистем
+        return new StatusService(mock(XrayService.class), mock(XrayGrpcClient.class),
+            mock(StartupOrchestrator.class), mock(ResourceGovernorService.class), contributors);
+    }
+    
+    private static final class Section implements StatusContributor {
+        private final String name;
+        private Object value;
+        
+        Section(String name, Object value) {
+            this.name = name;
+            this.value = value;
+        }
+        
+        @Override
+        public String statusSection() {
+            return name;
+        }
+        
+        @Override
+        public Object statusSnapshot() {
+            return value;
+        }
+    }
+}
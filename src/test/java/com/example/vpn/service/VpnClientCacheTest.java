@@ -0,0 +1,100 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.VpnClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class VpnClientCacheTest {
+    
+    private VpnProperties vpnProperties;
+    private VpnClientCache cache;
+    
+    @BeforeEach
+    void setUp() {
+        vpnProperties = new VpnProperties();
+        cache = new VpnClientCache(vpnProperties, mock(JdbcTemplate.class), mock(DataSource.class));
+    }
+    
+    @Test
+    void cachedClientIsServedWithoutLoader() {
+        VpnClient client = client("a", 0);
+        AtomicInteger loads = new AtomicInteger();
+        
+        cache.getByUuid("a", () -> {
+            loads.incrementAndGet();
+            return Optional.of(client);
+        });
+        Optional<VpnClient> second = cache.getByKeycloakUserId(client.getKeycloakUserId(), () -> {
+            loads.incrementAndGet();
+            return Optional.of(client);
+        });
+        
+        assertEquals(1, loads.get());
+        assertEquals("a", second.orElseThrow().getUuid());
+    }
+    
+    @Test
+    void loadRacingInvalidateIsNotCached() {
+        VpnClient stale = client("a", 0);
+        VpnClient fresh = client("a", 1);
+        
+        // Загрузка прочитала старую строку, пока другой поток сохранял новую и сбрасывал кэш
+        cache.getByUuid("a", () -> {
+            cache.invalidate(stale);
+            return Optional.of(stale);
+        });
+        
+        Optional<VpnClient> reloaded = cache.getByUuid("a", () -> Optional.of(fresh));
+        assertEquals(1, reloaded.orElseThrow().getPolicyLevel());
+    }
+    
+    @Test
+    void negativeLoadRacingInvalidateIsNotCached() {
+        VpnClient created = client("a", 0);
+        
+        cache.getByUuid("a", () -> {
+            cache.invalidate(created);
+            return Optional.empty();
+        });
+        
+        assertTrue(cache.getByUuid("a", () -> Optional.of(created)).isPresent());
+    }
+    
+    @Test
+    void overflowEvictsDownToNinetyPercent() {
+        vpnProperties.getClientCache().setMaxSize(100);
+        for (int i = 0; i <= 100; i++) {
+            VpnClient client = client("c" + i, 0);
+            cache.getByUuid(client.getUuid(), () -> Optional.of(client));
+        }
+        
+        // Один проход освобождает запас в 10%, а не одну запись
+        assertEquals(90, cache.getSize());
+        
+        for (int i = 0; i < 10; i++) {
+            VpnClient client = client("d" + i, 0);
+            cache.getByUuid(client.getUuid(), () -> Optional.of(client));
+        }
+        assertEquals(100, cache.getSize());
+    }
+    
+    private static VpnClient client(String uuid, int level) {
+        VpnClient client = new VpnClient();
+        client.setUuid(uuid);
+        client.setKeycloakUserId(UUID.nameUUIDFromBytes(uuid.getBytes()));
+        client.setEmail(uuid + "@example.com");
+        client.setPolicyLevel(level);
+        return client;
+    }
+}
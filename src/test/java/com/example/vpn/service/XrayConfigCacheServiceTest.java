@@ -0,0 +1,100 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class XrayConfigCacheServiceTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private Path configFile;
+    private XrayService xrayService;
+    private XrayConfigCacheService cacheService;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        configFile = tempDir.resolve("config.json");
+        VpnProperties vpnProperties = new VpnProperties();
+        vpnProperties.setConfigPath(configFile.toString());
+        
+        xrayService = mock(XrayService.class);
+        when(xrayService.getActiveApiServer()).thenReturn("127.0.0.1:10085");
+        when(xrayService.renderSettings(anyString())).thenReturn("settings-v1");
+        doAnswer(invocation -> Files.writeString(configFile, "{\"full\":true}"))
+            .when(xrayService).generateConfigFile();
+        doAnswer(invocation -> Files.writeString(configFile, "{\"full\":true,\"clients\":\"updated\"}"))
+            .when(xrayService).writeClientsSection(anyString(), any());
+        when(xrayService.loadXrayClients()).thenReturn(List.of());
+        
+        cacheService = new XrayConfigCacheService(vpnProperties, xrayService, mock(VpnClientService.class));
+    }
+    
+    @Test
+    void unchangedInputsSkipGeneration() throws IOException {
+        cacheService.prepareConfig("clients-a");
+        cacheService.prepareConfig("clients-a");
+        
+        verify(xrayService, times(1)).generateConfigFile();
+        verify(xrayService, never()).writeClientsSection(anyString(), any());
+    }
+    
+    @Test
+    void changedClientsRewriteOnlyClientsSection() throws IOException {
+        cacheService.prepareConfig("clients-a");
+        cacheService.prepareConfig("clients-b");
+        // Файл после частичного обновления тоже попадает в .digest
+        cacheService.prepareConfig("clients-b");
+        
+        verify(xrayService, times(1)).generateConfigFile();
+        verify(xrayService, times(1)).writeClientsSection(anyString(), any());
+    }
+    
+    @Test
+    void changedSettingsRegenerateConfig() throws IOException {
+        cacheService.prepareConfig("clients-a");
+        when(xrayService.renderSettings(anyString())).thenReturn("settings-v2");
+        cacheService.prepareConfig("clients-a");
+        
+        verify(xrayService, times(2)).generateConfigFile();
+    }
+    
+    @Test
+    void externallyEditedFileIsNotTrusted() throws IOException {
+        cacheService.prepareConfig("clients-a");
+        Files.writeString(configFile, "{\"edited\":true}");
+        cacheService.prepareConfig("clients-a");
+        
+        verify(xrayService, times(2)).generateConfigFile();
+    }
+    
+    @Test
+    void missingClientsDigestIsNotCached() throws IOException {
+        cacheService.prepareConfig(null);
+        
+        // Таблицы ещё нет - следующий старт сгенерирует конфиг заново
+        assertFalse(Files.exists(tempDir.resolve("config.json.digest")));
+        
+        cacheService.prepareConfig("clients-a");
+        assertTrue(Files.exists(tempDir.resolve("config.json.digest")));
+        verify(xrayService, times(2)).generateConfigFile();
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.vpn.service;
+
+import com.example.vpn.config.VpnProperties;
+import com.example.vpn.model.PendingClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class XrayHotSwapServiceTest {
+    
+    private static final String OLD_CONFIG = "{\"config\":\"old\"}";
+    private static final String NEW_CONFIG = "{\"config\":\"new\"}";
+    
+    @TempDir
+    Path tempDir;
+    
+    private Path configFile;
+    private Path stagingFile;
+    private VpnProperties vpnProperties;
+    private XrayService xrayService;
+    private XrayGrpcClient xrayGrpcClient;
+    private PendingClientService pendingClientService;
+    private XrayHotSwapService hotSwapService;
+    
+    // Содержимое конфига в момент каждого startXray
+    private final List<String> startedWith = new ArrayList<>();
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        configFile = tempDir.resolve("config.json");
+        stagingFile = tempDir.resolve("config.json.staging");
+        Files.writeString(configFile, OLD_CONFIG);
+        
+        vpnProperties = new VpnProperties();
+        vpnProperties.setConfigPath(configFile.toString());
+        xrayService = mock(XrayService.class);
+        xrayGrpcClient = mock(XrayGrpcClient.class);
+        pendingClientService = new PendingClientService();
+        hotSwapService = new XrayHotSwapService(vpnProperties, xrayService, xrayGrpcClient, pendingClientService);
+        
+        when(xrayService.getActiveApiServer()).thenReturn(vpnProperties.getApiServer());
+        when(xrayService.userInboundTags()).thenReturn(List.of("inbound-443"));
+        doAnswer(invocation -> Files.writeString(configFile, NEW_CONFIG)).when(xrayService).generateConfigFile();
+        doAnswer(invocation -> Files.writeString(Path.of(invocation.<String>getArgument(0)), NEW_CONFIG))
+            .when(xrayService).generateConfigFile(anyString(), anyString());
+        doAnswer(invocation -> startedWith.add(Files.readString(configFile))).when(xrayService).startXray();
+        
+        PendingClient pending = new PendingClient("pending-uuid", "VPN Client", Duration.ofMinutes(5));
+        pending.setPolicyLevel(2);
+        pendingClientService.add(pending);
+    }
+    
+    @Test
+    void restartWithoutHotSwapReAddsPendingUsers() throws IOException {
+        when(xrayGrpcClient.waitForApi(anyString(), any())).thenReturn(true);
+        
+        hotSwapService.reload();
+        
+        var order = inOrder(xrayService, xrayGrpcClient);
+        order.verify(xrayService).generateConfigFile();
+        order.verify(xrayService).stopXray();
+        order.verify(xrayService).startXray();
+        order.verify(xrayGrpcClient).waitForApi(anyString(), any());
+        order.verify(xrayGrpcClient).addUser("pending-uuid", 2);
+    }
+    
+    @Test
+    void failedRestartRestoresConfigAndRollsBackChange() throws IOException {
+        // Новый конфиг не поднялся, прежний - поднялся
+        when(xrayGrpcClient.waitForApi(anyString(), any())).thenReturn(false, true);
+        AtomicBoolean changed = new AtomicBoolean();
+        
+        assertThrows(IOException.class, () -> hotSwapService.reload(() -> changed.set(true), () -> changed.set(false)));
+        
+        assertFalse(changed.get());
+        assertEquals(OLD_CONFIG, Files.readString(configFile));
+        assertEquals(List.of(NEW_CONFIG, OLD_CONFIG), startedWith);
+    }
+    
+    @Test
+    void reusePortSwapPromotesStagingAndDrainsOldProcess() throws Exception {
+        enableHotSwap(VpnProperties.HotSwap.Mode.REUSE_PORT);
+        String oldApi = vpnProperties.getApiServer();
+        String newApi = vpnProperties.getHotSwap().getStagingApiServer();
+        Process staging = mock(Process.class);
+        Process old = mock(Process.class);
+        when(xrayService.launchProcess(stagingFile.toString(), "Xray-staging")).thenReturn(staging);
+        when(xrayService.promote(staging, newApi)).thenReturn(old);
+        when(xrayGrpcClient.waitForApi(eq(newApi), any())).thenReturn(true);
+        when(old.isAlive()).thenReturn(true);
+        
+        hotSwapService.reload();
+        
+        var order = inOrder(xrayService, xrayGrpcClient, old);
+        order.verify(xrayService).validateConfig(stagingFile.toString());
+        order.verify(xrayService).promote(staging, newApi);
+        order.verify(xrayGrpcClient).switchTarget(newApi);
+        order.verify(xrayGrpcClient).addUser("pending-uuid", 2);
+        // Старый процесс снимает inbound и дообслуживает туннели, потом останавливается
+        order.verify(xrayGrpcClient).removeInbound(oldApi, "inbound-443");
+        order.verify(old).waitFor(anyLong(), eq(TimeUnit.MILLISECONDS));
+        order.verify(xrayService).stopProcess(old);
+        
+        assertEquals(NEW_CONFIG, Files.readString(configFile));
+        verify(xrayService, never()).stopXray();
+    }
+    
+    @Test
+    void failedStagingLeavesOldProcessServing() throws Exception {
+        enableHotSwap(VpnProperties.HotSwap.Mode.REUSE_PORT);
+        Process staging = mock(Process.class);
+        when(xrayService.launchProcess(anyString(), anyString())).thenReturn(staging);
+        when(xrayGrpcClient.waitForApi(anyString(), any())).thenReturn(false);
+        AtomicBoolean changed = new AtomicBoolean();
+        
+        assertThrows(IOException.class, () -> hotSwapService.reload(() -> changed.set(true), () -> changed.set(false)));
+        
+        assertFalse(changed.get());
+        verify(xrayService).stopProcess(staging);
+        verify(xrayService, never()).promote(any(), anyString());
+        verify(xrayGrpcClient, never()).removeInbound(anyString(), anyString());
+        assertEquals(OLD_CONFIG, Files.readString(configFile));
+    }
+    
+    @Test
+    void handoffStartsValidatedConfig() throws IOException {
+        enableHotSwap(VpnProperties.HotSwap.Mode.HANDOFF);
+        when(xrayGrpcClient.waitForApi(anyString(), any())).thenReturn(true);
+        
+        hotSwapService.reload();
+        
+        verify(xrayService).validateConfig(stagingFile.toString());
+        assertEquals(List.of(NEW_CONFIG), startedWith);
+        assertFalse(Files.exists(stagingFile));
+        verify(xrayGrpcClient).addUser("pending-uuid", 2);
+    }
+    
+    @Test
+    void failedHandoffRestoresPreviousConfig() throws IOException {
+        enableHotSwap(VpnProperties.HotSwap.Mode.HANDOFF);
+        when(xrayGrpcClient.waitForApi(anyString(), any())).thenReturn(false, true);
+        AtomicBoolean changed = new AtomicBoolean();
+        
+        assertThrows(IOException.class, () -> hotSwapService.reload(() -> changed.set(true), () -> changed.set(false)));
+        
+        // Раньше откатывались только настройки, а Xray продолжал работать с новым конфигом
+        assertFalse(changed.get());
+        assertEquals(OLD_CONFIG, Files.readString(configFile));
+        assertEquals(List.of(NEW_CONFIG, OLD_CONFIG), startedWith);
+        verify(xrayService, times(2)).stopXray();
+        verify(xrayGrpcClient).addUser("pending-uuid", 2);
+    }
+    
+    @Test
+    void invalidHandoffConfigKeepsRunningProcess() throws IOException {
+        enableHotSwap(VpnProperties.HotSwap.Mode.HANDOFF);
+        doAnswer(invocation -> {
+            throw new IOException("Конфиг Xray не прошёл проверку, код выхода: 1");
+        }).when(xrayService).validateConfig(anyString());
+        
+        assertThrows(IOException.class, () -> hotSwapService.reload());
+        
+        verify(xrayService, never()).stopXray();
+        assertEquals(OLD_CONFIG, Files.readString(configFile));
+    }
+    
+    @Test
+    void concurrentReloadIsRejectedWithoutApplyingChange() throws Exception {
+        CountDownLatch inRestart = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(xrayGrpcClient.waitForApi(anyString(), any())).thenAnswer(invocation -> {
+            inRestart.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+            try {
+                hotSwapService.reload();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(inRestart.await(5, TimeUnit.SECONDS));
+        
+        // Второй вызов не должен молча вернуться: его изменение в Xray не попадёт
+        AtomicBoolean changed = new AtomicBoolean();
+        assertThrows(IllegalStateException.class, () -> hotSwapService.reload(() -> changed.set(true), () -> { }));
+        assertFalse(changed.get());
+        
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        verify(xrayService).startXray();
+    }
+    
+    private void enableHotSwap(VpnProperties.HotSwap.Mode mode) {
+        vpnProperties.getHotSwap().setEnabled(true);
+        vpnProperties.getHotSwap().setMode(mode);
+        when(xrayService.isRunning()).thenReturn(true);
+    }
+}